@@ -44,6 +44,31 @@ public class JarInferIntegrationTest {
         .doTest();
   }
 
+  @Test
+  public void jarinferLoadStubsWithoutSharedCacheTest() {
+    compilationHelper
+        .setArgs(
+            Arrays.asList(
+                "-d",
+                temporaryFolder.getRoot().getAbsolutePath(),
+                "-XepOpt:NullAway:AnnotatedPackages=com.uber",
+                "-XepOpt:NullAway:JarInferEnabled=true",
+                "-XepOpt:NullAway:SharedStubxCache=false",
+                "-XepOpt:NullAway:UnannotatedSubPackages=com.uber.nullaway.[a-zA-Z0-9.]+.unannotated"))
+        .addSourceLines(
+            "Test.java",
+            "package com.uber;",
+            "import javax.annotation.Nullable;",
+            "import com.uber.nullaway.jarinfer.toys.unannotated.Toys;",
+            "class Test {",
+            "  void test1(@Nullable String s) {",
+            "    // BUG: Diagnostic contains: passing @Nullable parameter 's'",
+            "    Toys.test1(s, \"let's\", \"try\");",
+            "  }",
+            "}")
+        .doTest();
+  }
+
   @Test
   public void arrayTest() {
     compilationHelper
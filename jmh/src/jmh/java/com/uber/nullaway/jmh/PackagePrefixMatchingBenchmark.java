@@ -0,0 +1,76 @@
+package com.uber.nullaway.jmh;
+
+import com.uber.nullaway.PackagePrefixMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares matching class names against a long {@code AnnotatedPackages} list with {@link
+ * PackagePrefixMatcher} and with the single regular expression it replaced.
+ */
+@State(Scope.Benchmark)
+public class PackagePrefixMatchingBenchmark {
+
+  /** Number of package prefixes; prefixes are spread over 50 teams. */
+  @Param({"10", "1500"})
+  public int prefixCount;
+
+  private Pattern regex;
+
+  private PackagePrefixMatcher matcher;
+
+  private String[] classNames;
+
+  @Setup
+  public void setup() {
+    List<String> prefixes = new ArrayList<>();
+    for (int i = 0; i < prefixCount; i++) {
+      prefixes.add("com.example.team" + (i % 50) + ".service" + (i / 50));
+    }
+    String choiceRegexp =
+        prefixes.stream()
+            .map(input -> input.replaceAll("\\.", "\\\\."))
+            .collect(Collectors.joining("|"));
+    regex = Pattern.compile("^(?:" + choiceRegexp + ")(?:\\..*)?");
+    matcher = PackagePrefixMatcher.create(prefixes);
+    // a mix of classes within listed packages, in unlisted packages sharing a prefix with listed
+    // ones, and from libraries
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      names.add(prefixes.get((i * 7919) % prefixes.size()) + ".impl.Handler" + i);
+      names.add("com.example.team" + (i % 50) + ".unlisted.Model" + i);
+      names.add("com.google.common.collect.ImmutableList" + i);
+      names.add("java.util.concurrent.ConcurrentHashMap" + i);
+    }
+    classNames = names.toArray(new String[0]);
+  }
+
+  @Benchmark
+  public int regex() {
+    int matches = 0;
+    for (String name : classNames) {
+      if (regex.matcher(name).matches()) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+
+  @Benchmark
+  public int trie() {
+    int matches = 0;
+    for (String name : classNames) {
+      if (matcher.matches(name)) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+}
@@ -0,0 +1,46 @@
+package com.uber.nullaway.jmh;
+
+import java.io.IOException;
+
+/**
+ * Compiles a class whose constructor initializes many fields through safe init methods and reads
+ * each of them right after, stressing the checks for reads of fields before initialization.
+ */
+public class LargeConstructorBenchmarkCompiler {
+
+  private static final int NUM_FIELDS = 300;
+
+  private final NullawayJavac nullawayJavac;
+
+  public LargeConstructorBenchmarkCompiler() throws IOException {
+    nullawayJavac =
+        NullawayJavac.createFromSourceString("LargeConstructorBench", generateSource(), "com.uber");
+  }
+
+  public boolean compile() {
+    return nullawayJavac.compile();
+  }
+
+  private static String generateSource() {
+    StringBuilder source = new StringBuilder();
+    source.append("package com.uber.nullaway.testdata;\n\n");
+    source.append("public final class LargeConstructorBench {\n");
+    for (int i = 0; i < NUM_FIELDS; i++) {
+      source.append("  private Object f").append(i).append(";\n");
+    }
+    source.append("\n  public LargeConstructorBench() {\n");
+    for (int i = 0; i < NUM_FIELDS; i++) {
+      source.append("    init").append(i).append("();\n");
+      source.append("    f").append(i).append(".toString();\n");
+      source.append("    f0.hashCode();\n");
+    }
+    source.append("  }\n");
+    for (int i = 0; i < NUM_FIELDS; i++) {
+      source.append("\n  private void init").append(i).append("() {\n");
+      source.append("    f").append(i).append(" = new Object();\n");
+      source.append("  }\n");
+    }
+    source.append("}\n");
+    return source.toString();
+  }
+}
@@ -584,4 +584,284 @@ public final class DFlowBench {
       }
     }
   }
+
+  public static void testLoops(boolean b, int n) {
+    DFlowBench y0 = new DFlowBench();
+    DFlowBench y1 = new DFlowBench();
+    DFlowBench y2 = new DFlowBench();
+    DFlowBench y3 = new DFlowBench();
+    DFlowBench y4 = new DFlowBench();
+    DFlowBench y5 = new DFlowBench();
+    DFlowBench y6 = new DFlowBench();
+    DFlowBench y7 = new DFlowBench();
+    DFlowBench y8 = new DFlowBench();
+    DFlowBench y9 = new DFlowBench();
+    DFlowBench y10 = new DFlowBench();
+    DFlowBench y11 = new DFlowBench();
+    DFlowBench y12 = new DFlowBench();
+    DFlowBench y13 = new DFlowBench();
+    DFlowBench y14 = new DFlowBench();
+    DFlowBench y15 = new DFlowBench();
+    DFlowBench y16 = new DFlowBench();
+    DFlowBench y17 = new DFlowBench();
+    DFlowBench y18 = new DFlowBench();
+    DFlowBench y19 = new DFlowBench();
+    DFlowBench y20 = new DFlowBench();
+    DFlowBench y21 = new DFlowBench();
+    DFlowBench y22 = new DFlowBench();
+    DFlowBench y23 = new DFlowBench();
+    DFlowBench y24 = new DFlowBench();
+    DFlowBench y25 = new DFlowBench();
+    DFlowBench y26 = new DFlowBench();
+    DFlowBench y27 = new DFlowBench();
+    DFlowBench y28 = new DFlowBench();
+    DFlowBench y29 = new DFlowBench();
+    for (int i = 0; i < n; i++) {
+      if (y0.f != null) {
+        y0.f.toString();
+      } else {
+        y0.f = new Object();
+      }
+      if (y1.f != null) {
+        y1.f.toString();
+      } else {
+        y1.f = new Object();
+      }
+      if (y2.f != null) {
+        y2.f.toString();
+      } else {
+        y2.f = new Object();
+      }
+      if (y3.f != null) {
+        y3.f.toString();
+      } else {
+        y3.f = new Object();
+      }
+      if (y4.f != null) {
+        y4.f.toString();
+      } else {
+        y4.f = new Object();
+      }
+      if (y5.f != null) {
+        y5.f.toString();
+      } else {
+        y5.f = new Object();
+      }
+      if (y6.f != null) {
+        y6.f.toString();
+      } else {
+        y6.f = new Object();
+      }
+      if (y7.f != null) {
+        y7.f.toString();
+      } else {
+        y7.f = new Object();
+      }
+      if (y8.f != null) {
+        y8.f.toString();
+      } else {
+        y8.f = new Object();
+      }
+      if (y9.f != null) {
+        y9.f.toString();
+      } else {
+        y9.f = new Object();
+      }
+      if (y10.f != null) {
+        y10.f.toString();
+      } else {
+        y10.f = new Object();
+      }
+      if (y11.f != null) {
+        y11.f.toString();
+      } else {
+        y11.f = new Object();
+      }
+      if (y12.f != null) {
+        y12.f.toString();
+      } else {
+        y12.f = new Object();
+      }
+      if (y13.f != null) {
+        y13.f.toString();
+      } else {
+        y13.f = new Object();
+      }
+      if (y14.f != null) {
+        y14.f.toString();
+      } else {
+        y14.f = new Object();
+      }
+      if (y15.f != null) {
+        y15.f.toString();
+      } else {
+        y15.f = new Object();
+      }
+      if (y16.f != null) {
+        y16.f.toString();
+      } else {
+        y16.f = new Object();
+      }
+      if (y17.f != null) {
+        y17.f.toString();
+      } else {
+        y17.f = new Object();
+      }
+      if (y18.f != null) {
+        y18.f.toString();
+      } else {
+        y18.f = new Object();
+      }
+      if (y19.f != null) {
+        y19.f.toString();
+      } else {
+        y19.f = new Object();
+      }
+      if (y20.f != null) {
+        y20.f.toString();
+      } else {
+        y20.f = new Object();
+      }
+      if (y21.f != null) {
+        y21.f.toString();
+      } else {
+        y21.f = new Object();
+      }
+      if (y22.f != null) {
+        y22.f.toString();
+      } else {
+        y22.f = new Object();
+      }
+      if (y23.f != null) {
+        y23.f.toString();
+      } else {
+        y23.f = new Object();
+      }
+      if (y24.f != null) {
+        y24.f.toString();
+      } else {
+        y24.f = new Object();
+      }
+      if (y25.f != null) {
+        y25.f.toString();
+      } else {
+        y25.f = new Object();
+      }
+      if (y26.f != null) {
+        y26.f.toString();
+      } else {
+        y26.f = new Object();
+      }
+      if (y27.f != null) {
+        y27.f.toString();
+      } else {
+        y27.f = new Object();
+      }
+      if (y28.f != null) {
+        y28.f.toString();
+      } else {
+        y28.f = new Object();
+      }
+      if (y29.f != null) {
+        y29.f.toString();
+      } else {
+        y29.f = new Object();
+      }
+      for (int j = 0; j < n; j++) {
+        if (b) {
+          y0.f = y1.f;
+        }
+        if (b) {
+          y1.f = y2.f;
+        }
+        if (b) {
+          y2.f = y3.f;
+        }
+        if (b) {
+          y3.f = y4.f;
+        }
+        if (b) {
+          y4.f = y5.f;
+        }
+        if (b) {
+          y5.f = y6.f;
+        }
+        if (b) {
+          y6.f = y7.f;
+        }
+        if (b) {
+          y7.f = y8.f;
+        }
+        if (b) {
+          y8.f = y9.f;
+        }
+        if (b) {
+          y9.f = y10.f;
+        }
+        if (b) {
+          y10.f = y11.f;
+        }
+        if (b) {
+          y11.f = y12.f;
+        }
+        if (b) {
+          y12.f = y13.f;
+        }
+        if (b) {
+          y13.f = y14.f;
+        }
+        if (b) {
+          y14.f = y15.f;
+        }
+        if (b) {
+          y15.f = y16.f;
+        }
+        if (b) {
+          y16.f = y17.f;
+        }
+        if (b) {
+          y17.f = y18.f;
+        }
+        if (b) {
+          y18.f = y19.f;
+        }
+        if (b) {
+          y19.f = y20.f;
+        }
+        if (b) {
+          y20.f = y21.f;
+        }
+        if (b) {
+          y21.f = y22.f;
+        }
+        if (b) {
+          y22.f = y23.f;
+        }
+        if (b) {
+          y23.f = y24.f;
+        }
+        if (b) {
+          y24.f = y25.f;
+        }
+        if (b) {
+          y25.f = y26.f;
+        }
+        if (b) {
+          y26.f = y27.f;
+        }
+        if (b) {
+          y27.f = y28.f;
+        }
+        if (b) {
+          y28.f = y29.f;
+        }
+        if (b) {
+          y29.f = y0.f;
+        }
+        while (b && y0.f == null) {
+          y0.f = y29.f;
+        }
+      }
+    }
+  }
 }
@@ -29,4 +29,9 @@ public class BenchmarkCompilationTest {
   public void testDFlowMicro() throws IOException {
     assertTrue(new DataFlowMicroBenchmarkCompiler().compile());
   }
+
+  @Test
+  public void testLargeConstructor() throws IOException {
+    assertTrue(new LargeConstructorBenchmarkCompiler().compile());
+  }
 }
@@ -33,15 +33,18 @@ public class LibraryModelGeneratorCLI {
    * file.
    *
    * @param args Command line arguments for the directory containing source files and the output
-   *     directory.
+   *     directory, optionally followed by {@code --indexed} to write a version 2 astubx file, which
+   *     NullAway looks up per class instead of decoding it up front. Version 2 files need a NullAway
+   *     release that can read them.
    */
   public static void main(String[] args) {
-    if (args.length != 2) {
+    boolean indexed = args.length == 3 && args[2].equals("--indexed");
+    if (args.length != 2 && !indexed) {
       System.out.println(
-          "Incorrect number of command line arguments. Required arguments:  <inputSourceDirectory> <outputDirectory>");
+          "Incorrect number of command line arguments. Required arguments:  <inputSourceDirectory> <outputDirectory> [--indexed]");
       return;
     }
     LibraryModelGenerator libraryModelGenerator = new LibraryModelGenerator();
-    libraryModelGenerator.generateAstubxForLibraryModels(args[0], args[1]);
+    libraryModelGenerator.generateAstubxForLibraryModels(args[0], args[1], indexed);
   }
 }
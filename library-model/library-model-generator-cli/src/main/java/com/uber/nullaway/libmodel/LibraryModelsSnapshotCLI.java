@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2025 Uber Technologies, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.uber.nullaway.libmodel;
+
+import com.uber.nullaway.LibraryModels;
+import com.uber.nullaway.handlers.LibraryModelsSnapshot;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * A CLI tool which merges all {@link LibraryModels} implementations on its classpath into a {@link
+ * LibraryModelsSnapshot}. The output file should be packaged as {@link
+ * LibraryModelsSnapshot#RESOURCE_NAME} in the jar containing the models, so NullAway can load the
+ * merged tables directly instead of instantiating each implementation.
+ *
+ * <p>The main class of the shadow jar of this module is {@link LibraryModelGeneratorCLI}, so the
+ * tool is run by naming its class, with the jar containing the models on the classpath:
+ *
+ * <pre>
+ * java -cp library-model-generator-cli.jar:my-library-models.jar \
+ *     com.uber.nullaway.libmodel.LibraryModelsSnapshotCLI \
+ *     build/snapshot/META-INF/nullaway/library-models.snapshot
+ * </pre>
+ *
+ * <p>The directory {@code build/snapshot} can then be added to the jar containing the models. The
+ * snapshot records a fingerprint of the class file of each model, and NullAway ignores it once any
+ * of those class files changes, so the snapshot should be regenerated whenever the models are
+ * rebuilt.
+ */
+public class LibraryModelsSnapshotCLI {
+  /**
+   * This is the main method of the cli tool. It loads the library models on the classpath and
+   * writes the snapshot. Models providing custom stream specifications cannot be snapshotted and
+   * are left out; NullAway keeps loading those through the service loader.
+   *
+   * @param args Command line argument for the output snapshot file.
+   * @throws IOException if the snapshot cannot be written
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.out.println(
+          "Incorrect number of command line arguments. Required arguments:  <outputFile>");
+      return;
+    }
+    List<LibraryModels> models = new ArrayList<>();
+    for (LibraryModels libraryModels : ServiceLoader.load(LibraryModels.class)) {
+      if (libraryModels.customStreamNullabilitySpecs().isEmpty()) {
+        models.add(libraryModels);
+      } else {
+        System.out.println(
+            "Skipping " + libraryModels.getClass().getName() + ": custom stream specifications");
+      }
+    }
+    Path outputFile = Paths.get(args[0]);
+    Path parent = outputFile.getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    try (OutputStream out = Files.newOutputStream(outputFile)) {
+      LibraryModelsSnapshot.write(models, out);
+    }
+    System.out.println("Wrote snapshot of " + models.size() + " library models to " + outputFile);
+  }
+}
@@ -112,6 +112,19 @@ public class LibraryModelGenerator {
    */
   public static LibraryModelData generateAstubxForLibraryModels(
       String inputSourceDirectory, String outputFile) {
+    return generateAstubxForLibraryModels(inputSourceDirectory, outputFile, false);
+  }
+
+  /**
+   * Parses all the source files within the directory using javaparser.
+   *
+   * @param inputSourceDirectory Directory containing annotated java source files.
+   * @param outputFile absolute path to the output file.
+   * @param indexed whether to write a version 2 astubx file, which NullAway decodes per class when
+   *     needed, instead of a version 1 file. See {@link StubxWriter#writeIndexed}.
+   */
+  public static LibraryModelData generateAstubxForLibraryModels(
+      String inputSourceDirectory, String outputFile, boolean indexed) {
     Map<String, MethodAnnotationsRecord> methodRecords = new LinkedHashMap<>();
     Set<String> nullMarkedClasses = new HashSet<>();
     Map<String, Set<Integer>> nullableUpperBounds = new LinkedHashMap<>();
@@ -140,7 +153,7 @@ public class LibraryModelGenerator {
                 throw new RuntimeException(e);
               }
             });
-    writeToAstubx(outputFile, modelData);
+    writeToAstubx(outputFile, modelData, indexed);
     return modelData;
   }
 
@@ -149,8 +162,10 @@ public class LibraryModelGenerator {
    *
    * @param outputPath path to output astubx file.
    * @param modelData ModelData instance containing the collected annotation information.
+   * @param indexed whether to write a version 2 astubx file.
    */
-  private static void writeToAstubx(String outputPath, LibraryModelData modelData) {
+  private static void writeToAstubx(
+      String outputPath, LibraryModelData modelData, boolean indexed) {
     Map<String, MethodAnnotationsRecord> methodRecords = modelData.methodRecords;
     Map<String, Set<Integer>> nullableUpperBounds = modelData.nullableUpperBounds;
     Set<String> nullMarkedClasses = modelData.nullMarkedClasses;
@@ -165,14 +180,25 @@ public class LibraryModelGenerator {
     try {
       Files.createDirectories(outputPathInstance.getParent());
       try (DataOutputStream dos = new DataOutputStream(Files.newOutputStream(outputPathInstance))) {
-        StubxWriter.write(
-            dos,
-            importedAnnotations,
-            Collections.emptyMap(),
-            Collections.emptyMap(),
-            methodRecords,
-            nullMarkedClasses,
-            nullableUpperBounds);
+        if (indexed) {
+          StubxWriter.writeIndexed(
+              dos,
+              importedAnnotations,
+              Collections.emptyMap(),
+              Collections.emptyMap(),
+              methodRecords,
+              nullMarkedClasses,
+              nullableUpperBounds);
+        } else {
+          StubxWriter.write(
+              dos,
+              importedAnnotations,
+              Collections.emptyMap(),
+              Collections.emptyMap(),
+              methodRecords,
+              nullMarkedClasses,
+              nullableUpperBounds);
+        }
       }
     } catch (IOException e) {
       throw new RuntimeException(e);
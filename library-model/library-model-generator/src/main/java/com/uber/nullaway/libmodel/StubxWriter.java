@@ -1,15 +1,17 @@
 package com.uber.nullaway.libmodel;
 
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /** Simple writer for the astubx format. */
 public final class StubxWriter {
@@ -26,6 +28,12 @@ public final class StubxWriter {
    */
   private static final int VERSION_1_FILE_MAGIC_NUMBER = 481874642;
 
+  /**
+   * The file magic number for version 2 .astubx files, written by {@link #writeIndexed}. It should
+   * be the first four bytes of any compatible version 2 .astubx file.
+   */
+  private static final int VERSION_2_FILE_MAGIC_NUMBER = 1329807701;
+
   /**
    * This method writes the provided list of annotations to a DataOutputStream in the astubx format.
    *
@@ -50,58 +58,24 @@ public final class StubxWriter {
     // File format version/magic number
     out.writeInt(VERSION_1_FILE_MAGIC_NUMBER);
     // Followed by the number of string dictionary entries
-    int numStringEntries = 0;
-    Map<String, Integer> encodingDictionary = new LinkedHashMap<>();
-    List<String> strings = new ArrayList<String>();
-    ImmutableList<Collection<String>> keysets =
-        ImmutableList.of(
+    List<String> strings = new ArrayList<>();
+    Map<String, Integer> encodingDictionary =
+        buildEncodingDictionary(
+            strings,
             importedAnnotations.values(),
             packageAnnotations.keySet(),
             typeAnnotations.keySet(),
             methodRecords.keySet(),
             nullMarkedClasses,
             nullableUpperBounds.keySet());
-    for (Collection<String> keyset : keysets) {
-      for (String key : keyset) {
-        if (encodingDictionary.containsKey(key)) {
-          continue;
-        }
-        strings.add(key);
-        encodingDictionary.put(key, numStringEntries);
-        ++numStringEntries;
-      }
-    }
-    out.writeInt(numStringEntries);
+    out.writeInt(strings.size());
     // Followed by the entries themselves
     for (String s : strings) {
       out.writeUTF(s);
     }
-    // Followed by the number of encoded package annotation records
-    int packageAnnotationSize = 0;
-    for (Map.Entry<String, Set<String>> entry : packageAnnotations.entrySet()) {
-      packageAnnotationSize += entry.getValue().size();
-    }
-    out.writeInt(packageAnnotationSize);
-    // Followed by those records as pairs of ints pointing into the dictionary
-    for (Map.Entry<String, Set<String>> entry : packageAnnotations.entrySet()) {
-      for (String annot : entry.getValue()) {
-        out.writeInt(encodingDictionary.get(entry.getKey()));
-        out.writeInt(encodingDictionary.get(importedAnnotations.get(annot)));
-      }
-    }
-    // Followed by the number of encoded type annotation records
-    int typeAnnotationSize = 0;
-    for (Map.Entry<String, Set<String>> entry : typeAnnotations.entrySet()) {
-      typeAnnotationSize += entry.getValue().size();
-    }
-    out.writeInt(typeAnnotationSize);
-    // Followed by those records as pairs of ints pointing into the dictionary
-    for (Map.Entry<String, Set<String>> entry : typeAnnotations.entrySet()) {
-      for (String annot : entry.getValue()) {
-        out.writeInt(encodingDictionary.get(entry.getKey()));
-        out.writeInt(encodingDictionary.get(importedAnnotations.get(annot)));
-      }
-    }
+    // Followed by the package and type annotation records
+    writeAnnotationRecords(out, packageAnnotations, importedAnnotations, encodingDictionary);
+    writeAnnotationRecords(out, typeAnnotations, importedAnnotations, encodingDictionary);
     // Followed by the number of encoded method return/declaration annotation records
     int methodAnnotationSize = 0;
     int methodArgumentRecordsSize = 0;
@@ -131,7 +105,189 @@ public final class StubxWriter {
         }
       }
     }
-    // Followed by the number of NullMarked Classes
+    // Followed by the null-marked classes and the nullable upper bounds
+    writeClassRecords(out, nullMarkedClasses, nullableUpperBounds, encodingDictionary);
+  }
+
+  /**
+   * Like {@link #write}, but writes a version 2 astubx file. Version 2 files can only be read by
+   * NullAway releases that include {@code IndexedStubxFile}, so they are only written on request,
+   * e.g., with the {@code --indexed} option of {@code LibraryModelGeneratorCLI}.
+   *
+   * <p>Compared to version 1, a version 2 file can be looked up without decoding it first: the
+   * string dictionary starts with a table of offsets, so a string can be decoded when it is first
+   * needed, and method records are grouped by class, with a table of classes sorted by name, so the
+   * records of a class can be found by binary search. All records have a fixed size. The layout
+   * is:
+   *
+   * <ol>
+   *   <li>the magic number
+   *   <li>the number of strings, followed by the offset of each string relative to the start of
+   *       the string data, followed by the size of the string data in bytes, followed by the
+   *       string data, each string as its length in bytes and its UTF-8 encoding
+   *   <li>the number of (package, annotation) records, followed by the records
+   *   <li>the number of (type, annotation) records, followed by the records
+   *   <li>the number of classes with method records, followed by a (class, index of first method
+   *       record, number of method records) entry for each class, sorted by class name
+   *   <li>the number of method records, followed by a (method, argument position, annotation)
+   *       record for each annotation on a method (with argument position -1) or on an argument
+   *   <li>the null-marked classes and the nullable upper bounds, in the same layout as version 1
+   * </ol>
+   *
+   * <p>All strings are written as indexes into the string dictionary. The class of a method record
+   * is the part of its signature before the colon, with {@code $} replaced by {@code .}.
+   *
+   * @param out Output stream.
+   * @param importedAnnotations Mapping of 'custom annotations' to their 'definition classes'.
+   * @param packageAnnotations Map of 'package names' to their 'list of package-level annotations'.
+   * @param typeAnnotations Map of 'type names' to their 'list of type annotations'.
+   * @param methodRecords Map of 'method signatures' to their 'method annotations record'. Method
+   *     annotations record consists of return value annotations and argument annotations. {@link
+   *     MethodAnnotationsRecord}
+   * @exception IOException On output error.
+   */
+  public static void writeIndexed(
+      DataOutputStream out,
+      Map<String, String> importedAnnotations,
+      Map<String, Set<String>> packageAnnotations,
+      Map<String, Set<String>> typeAnnotations,
+      Map<String, MethodAnnotationsRecord> methodRecords,
+      Set<String> nullMarkedClasses,
+      Map<String, Set<Integer>> nullableUpperBounds)
+      throws IOException {
+    // File format version/magic number
+    out.writeInt(VERSION_2_FILE_MAGIC_NUMBER);
+    // Group the method signatures by class, sorted by class name
+    SortedMap<String, List<String>> methodsByClass = new TreeMap<>();
+    for (String methodSig : methodRecords.keySet()) {
+      methodsByClass.computeIfAbsent(classOf(methodSig), k -> new ArrayList<>()).add(methodSig);
+    }
+    // Followed by the number of string dictionary entries
+    List<String> strings = new ArrayList<>();
+    Map<String, Integer> encodingDictionary =
+        buildEncodingDictionary(
+            strings,
+            importedAnnotations.values(),
+            packageAnnotations.keySet(),
+            typeAnnotations.keySet(),
+            methodRecords.keySet(),
+            methodsByClass.keySet(),
+            nullMarkedClasses,
+            nullableUpperBounds.keySet());
+    out.writeInt(strings.size());
+    // Followed by the offset of each entry, and the size of all entries
+    List<byte[]> encodedStrings = new ArrayList<>(strings.size());
+    int offset = 0;
+    for (String s : strings) {
+      byte[] encoded = s.getBytes(StandardCharsets.UTF_8);
+      encodedStrings.add(encoded);
+      out.writeInt(offset);
+      offset += Integer.BYTES + encoded.length;
+    }
+    out.writeInt(offset);
+    // Followed by the entries themselves
+    for (byte[] encoded : encodedStrings) {
+      out.writeInt(encoded.length);
+      out.write(encoded);
+    }
+    // Followed by the package and type annotation records
+    writeAnnotationRecords(out, packageAnnotations, importedAnnotations, encodingDictionary);
+    writeAnnotationRecords(out, typeAnnotations, importedAnnotations, encodingDictionary);
+    // Followed by the number of classes with method records
+    out.writeInt(methodsByClass.size());
+    // Followed by the class index, as triplets of ints (0 points in the dictionary, 1 and 2 give
+    // the range of method records of the class)
+    int numMethodRecords = 0;
+    for (Map.Entry<String, List<String>> entry : methodsByClass.entrySet()) {
+      int numRecordsForClass = 0;
+      for (String methodSig : entry.getValue()) {
+        numRecordsForClass += numRecords(methodRecords.get(methodSig));
+      }
+      out.writeInt(encodingDictionary.get(entry.getKey()));
+      out.writeInt(numMethodRecords);
+      out.writeInt(numRecordsForClass);
+      numMethodRecords += numRecordsForClass;
+    }
+    // Followed by the number of encoded method annotation records
+    out.writeInt(numMethodRecords);
+    // Followed by those records as a triplet of ints ( 0 and 2 point in the dictionary, 1 is the
+    //  argument position, or -1 for annotations on the method)
+    for (List<String> methodSigs : methodsByClass.values()) {
+      for (String methodSig : methodSigs) {
+        MethodAnnotationsRecord record = methodRecords.get(methodSig);
+        int methodSigIndex = encodingDictionary.get(methodSig);
+        for (String annot : record.methodAnnotations()) {
+          out.writeInt(methodSigIndex);
+          out.writeInt(-1);
+          out.writeInt(encodingDictionary.get(importedAnnotations.get(annot)));
+        }
+        for (Map.Entry<Integer, ImmutableSet<String>> argEntry :
+            record.argumentAnnotations().entrySet()) {
+          for (String annot : argEntry.getValue()) {
+            out.writeInt(methodSigIndex);
+            out.writeInt(argEntry.getKey());
+            out.writeInt(encodingDictionary.get(importedAnnotations.get(annot)));
+          }
+        }
+      }
+    }
+    // Followed by the null-marked classes and the nullable upper bounds, as in version 1
+    writeClassRecords(out, nullMarkedClasses, nullableUpperBounds, encodingDictionary);
+  }
+
+  /**
+   * Assigns an index to each distinct string in the given collections, in order of first
+   * occurrence.
+   *
+   * @param strings filled with the distinct strings, in order of their indexes
+   * @param keysets the strings to encode
+   * @return a map from each string to its index
+   */
+  @SafeVarargs
+  private static Map<String, Integer> buildEncodingDictionary(
+      List<String> strings, Collection<String>... keysets) {
+    Map<String, Integer> encodingDictionary = new LinkedHashMap<>();
+    for (Collection<String> keyset : keysets) {
+      for (String key : keyset) {
+        if (encodingDictionary.containsKey(key)) {
+          continue;
+        }
+        encodingDictionary.put(key, strings.size());
+        strings.add(key);
+      }
+    }
+    return encodingDictionary;
+  }
+
+  /** Writes the number of (name, annotation) records, followed by the records. */
+  private static void writeAnnotationRecords(
+      DataOutputStream out,
+      Map<String, Set<String>> annotations,
+      Map<String, String> importedAnnotations,
+      Map<String, Integer> encodingDictionary)
+      throws IOException {
+    int annotationSize = 0;
+    for (Map.Entry<String, Set<String>> entry : annotations.entrySet()) {
+      annotationSize += entry.getValue().size();
+    }
+    out.writeInt(annotationSize);
+    // Followed by those records as pairs of ints pointing into the dictionary
+    for (Map.Entry<String, Set<String>> entry : annotations.entrySet()) {
+      for (String annot : entry.getValue()) {
+        out.writeInt(encodingDictionary.get(entry.getKey()));
+        out.writeInt(encodingDictionary.get(importedAnnotations.get(annot)));
+      }
+    }
+  }
+
+  /** Writes the null-marked class records, followed by the nullable upper bound records. */
+  private static void writeClassRecords(
+      DataOutputStream out,
+      Set<String> nullMarkedClasses,
+      Map<String, Set<Integer>> nullableUpperBounds,
+      Map<String, Integer> encodingDictionary)
+      throws IOException {
+    // The number of NullMarked Classes
     out.writeInt(nullMarkedClasses.size());
     // Followed by the null marked class records from the dictionary
     for (String entry : nullMarkedClasses) {
@@ -150,4 +306,18 @@ public final class StubxWriter {
       }
     }
   }
+
+  /** Returns the name of the class of a method signature, as used by NullAway for lookups. */
+  private static String classOf(String methodSig) {
+    int colon = methodSig.indexOf(':');
+    return (colon < 0 ? methodSig : methodSig.substring(0, colon)).replace('$', '.');
+  }
+
+  private static int numRecords(MethodAnnotationsRecord record) {
+    int numRecords = record.methodAnnotations().size();
+    for (ImmutableSet<String> annotations : record.argumentAnnotations().values()) {
+      numRecords += annotations.size();
+    }
+    return numRecords;
+  }
 }
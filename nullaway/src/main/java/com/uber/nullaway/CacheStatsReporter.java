@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2025 Uber Technologies, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.uber.nullaway;
+
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.tools.javac.api.MultiTaskListener;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Log;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Prints summaries of NullAway's caches and of the work they avoided at the end of a compilation,
+ * with {@code -XepOpt:NullAway:CacheStats}. There is one instance per javac context, which
+ * registers a single task listener; each component adds the summaries it wants printed.
+ */
+public final class CacheStatsReporter {
+
+  private static final Context.Key<CacheStatsReporter> CACHE_STATS_REPORTER_KEY =
+      new Context.Key<>();
+
+  /** Summaries to print, in the order they were first added. */
+  private final Map<String, Supplier<String>> summaries = new LinkedHashMap<>();
+
+  private CacheStatsReporter(Context context) {
+    Log log = Log.instance(context);
+    MultiTaskListener.instance(context)
+        .add(
+            new TaskListener() {
+              @Override
+              public void finished(TaskEvent e) {
+                if (e.getKind() == TaskEvent.Kind.COMPILATION) {
+                  for (Supplier<String> summary : summaries.values()) {
+                    log.printRawLines(Log.WriterKind.NOTICE, summary.get());
+                  }
+                }
+              }
+            });
+  }
+
+  /**
+   * Get the reporter for the given javac context, creating it (and registering its listener) if
+   * needed.
+   *
+   * @param context the javac context
+   * @return the reporter for {@code context}
+   */
+  public static CacheStatsReporter instance(Context context) {
+    CacheStatsReporter reporter = context.get(CACHE_STATS_REPORTER_KEY);
+    if (reporter == null) {
+      reporter = new CacheStatsReporter(context);
+      context.put(CACHE_STATS_REPORTER_KEY, reporter);
+    }
+    return reporter;
+  }
+
+  /**
+   * Adds a summary to print at the end of the compilation. Adding a summary again under the same
+   * key replaces the previous one, so components may register from code that runs more than once.
+   *
+   * @param key identifies the summary
+   * @param summary computes the one-line summary when the compilation finishes
+   */
+  public void addSummary(String key, Supplier<String> summary) {
+    summaries.put(key, summary);
+  }
+}
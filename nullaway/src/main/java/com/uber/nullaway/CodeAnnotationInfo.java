@@ -29,12 +29,14 @@ import static com.uber.nullaway.NullabilityUtil.castToNonNull;
 import com.google.common.base.Preconditions;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableSet;
 import com.google.errorprone.util.ASTHelpers;
 import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.util.Context;
 import com.uber.nullaway.handlers.Handler;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import javax.lang.model.element.ElementKind;
 import org.jspecify.annotations.Nullable;
@@ -48,10 +50,24 @@ public final class CodeAnnotationInfo {
 
   private static final Context.Key<CodeAnnotationInfo> ANNOTATION_INFO_KEY = new Context.Key<>();
 
-  private static final int MAX_CLASS_CACHE_SIZE = 200;
+  /**
+   * Bounded by {@code -XepOpt:NullAway:AnnotationInfoCacheMaxSize}. Created on first use, as the
+   * config is not available when this object is created.
+   */
+  private @Nullable Cache<Symbol.ClassSymbol, ClassCacheRecord> classCache;
+
+  /**
+   * Marking of each package, and of its module, by annotations. Unbounded, as there are far fewer
+   * packages than classes.
+   */
+  private final Map<Symbol.PackageSymbol, PackageCacheRecord> packageCache = new HashMap<>();
+
+  /** Whether each module is annotated {@code @NullMarked}. */
+  private final Map<Symbol, Boolean> moduleCache = new HashMap<>();
 
-  private final Cache<Symbol.ClassSymbol, ClassCacheRecord> classCache =
-      CacheBuilder.newBuilder().maximumSize(MAX_CLASS_CACHE_SIZE).build();
+  private long packageCacheHits = 0;
+
+  private long packageCacheMisses = 0;
 
   private CodeAnnotationInfo() {}
 
@@ -79,20 +95,19 @@ public final class CodeAnnotationInfo {
    *     according to our convention (every possibly null parameter / return / field
    *     annotated @Nullable), false otherwise
    */
-  private static boolean fromAnnotatedPackage(
-      Symbol.ClassSymbol outermostClassSymbol, Config config) {
+  private boolean fromAnnotatedPackage(Symbol.ClassSymbol outermostClassSymbol, Config config) {
     String className = outermostClassSymbol.getQualifiedName().toString();
     Symbol.PackageSymbol enclosingPackage = ASTHelpers.enclosingPackage(outermostClassSymbol);
+    PackageCacheRecord packageRecord =
+        enclosingPackage == null ? null : getPackageRecord(enclosingPackage);
     if (!config.fromExplicitlyAnnotatedPackage(className)
-        && !(enclosingPackage != null && explicitlyNullMarkedPackageOrModule(enclosingPackage))) {
+        && !(packageRecord != null && packageRecord.isNullMarkedPackageOrModule)) {
       // By default, unknown code is unannotated unless @NullMarked or configured as annotated by
       // package name
       return false;
     }
     if (config.fromExplicitlyUnannotatedPackage(className)
-        || (enclosingPackage != null
-            && hasDirectAnnotationWithSimpleName(
-                enclosingPackage, NullabilityUtil.NULLUNMARKED_SIMPLE_NAME))) {
+        || (packageRecord != null && packageRecord.isNullUnmarkedPackage)) {
       // Any code explicitly marked as unannotated in our configuration is unannotated, no matter
       // what. Similarly, any package annotated as @NullUnmarked is unannotated, even if
       // explicitly passed to -XepOpt:NullAway::AnnotatedPackages
@@ -103,16 +118,72 @@ public final class CodeAnnotationInfo {
     return true;
   }
 
-  private static boolean explicitlyNullMarkedPackageOrModule(
-      Symbol.PackageSymbol enclosingPackage) {
+  private PackageCacheRecord getPackageRecord(Symbol.PackageSymbol packageSymbol) {
+    PackageCacheRecord record = packageCache.get(packageSymbol);
+    if (record != null) {
+      packageCacheHits++;
+      return record;
+    }
+    packageCacheMisses++;
+    record =
+        new PackageCacheRecord(
+            explicitlyNullMarkedPackageOrModule(packageSymbol),
+            hasDirectAnnotationWithSimpleName(
+                packageSymbol, NullabilityUtil.NULLUNMARKED_SIMPLE_NAME));
+    packageCache.put(packageSymbol, record);
+    return record;
+  }
+
+  private boolean explicitlyNullMarkedPackageOrModule(Symbol.PackageSymbol enclosingPackage) {
     if (hasDirectAnnotationWithSimpleName(
         enclosingPackage, NullabilityUtil.NULLMARKED_SIMPLE_NAME)) {
       return true;
     }
     Symbol enclosingModule = enclosingPackage.getEnclosingElement();
-    return enclosingModule != null
-        && hasDirectAnnotationWithSimpleName(
-            enclosingModule, NullabilityUtil.NULLMARKED_SIMPLE_NAME);
+    if (enclosingModule == null) {
+      return false;
+    }
+    Boolean moduleNullMarked = moduleCache.get(enclosingModule);
+    if (moduleNullMarked == null) {
+      moduleNullMarked =
+          hasDirectAnnotationWithSimpleName(
+              enclosingModule, NullabilityUtil.NULLMARKED_SIMPLE_NAME);
+      moduleCache.put(enclosingModule, moduleNullMarked);
+    }
+    return moduleNullMarked;
+  }
+
+  private Cache<Symbol.ClassSymbol, ClassCacheRecord> classCache(Config config) {
+    if (classCache == null) {
+      CacheBuilder<Object, Object> builder =
+          CacheBuilder.newBuilder().maximumSize(config.getAnnotationInfoCacheMaxSize());
+      if (config.recordCacheStats()) {
+        builder.recordStats();
+      }
+      classCache = builder.build();
+    }
+    return classCache;
+  }
+
+  /**
+   * Returns a one-line summary of the hits and misses of the class and package caches, for sizing
+   * {@code -XepOpt:NullAway:AnnotationInfoCacheMaxSize}. The class cache counts are only recorded
+   * with {@code -XepOpt:NullAway:CacheStats}.
+   *
+   * @return the summary
+   */
+  public String cacheStatsSummary() {
+    CacheStats classStats =
+        classCache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : classCache.stats();
+    return String.format(
+        Locale.ROOT,
+        "NullAway annotation info caches: classes %d hits, %d misses, %d evictions;"
+            + " packages %d hits, %d misses",
+        classStats.hitCount(),
+        classStats.missCount(),
+        classStats.evictionCount(),
+        packageCacheHits,
+        packageCacheMisses);
   }
 
   /**
@@ -215,7 +286,8 @@ public final class CodeAnnotationInfo {
    */
   private ClassCacheRecord get(
       Symbol.ClassSymbol classSymbol, Config config, @Nullable Handler handler) {
-    ClassCacheRecord record = classCache.getIfPresent(classSymbol);
+    Cache<Symbol.ClassSymbol, ClassCacheRecord> cache = classCache(config);
+    ClassCacheRecord record = cache.getIfPresent(classSymbol);
     if (record != null) {
       return record;
     }
@@ -257,7 +329,7 @@ public final class CodeAnnotationInfo {
     // Don't update the cache if the handler is null, as we may not have full info about classes
     // being null-marked via library models
     if (handler != null) {
-      classCache.put(classSymbol, record);
+      cache.put(classSymbol, record);
     }
     return record;
   }
@@ -311,6 +383,17 @@ public final class CodeAnnotationInfo {
     }
   }
 
+  /** Marking of a package, by annotations on it or on its module. */
+  private static final class PackageCacheRecord {
+    final boolean isNullMarkedPackageOrModule;
+    final boolean isNullUnmarkedPackage;
+
+    PackageCacheRecord(boolean isNullMarkedPackageOrModule, boolean isNullUnmarkedPackage) {
+      this.isNullMarkedPackageOrModule = isNullMarkedPackageOrModule;
+      this.isNullUnmarkedPackage = isNullUnmarkedPackage;
+    }
+  }
+
   /**
    * Immutable record holding the outermost class symbol and the nullness-annotated state for a
    * given (possibly inner) class.
@@ -318,4 +318,69 @@ public interface Config {
    * @return true if a warning should be issued when generic type inference fails
    */
   boolean warnOnGenericInferenceFailure();
+
+  /**
+   * Checks if dataflow should keep nullness stores as bitsets over a per-method numbering of access
+   * paths, rather than as hash tries. Both representations compute the same facts.
+   *
+   * @return true if nullness stores should be bitset-backed
+   */
+  boolean useBitsetNullnessStores();
+
+  /**
+   * Gets the maximum total size of each of the dataflow analysis caches, measured in CFG nodes.
+   *
+   * @return the maximum weight of each dataflow analysis cache
+   */
+  int getDataflowCacheMaxWeight();
+
+  /**
+   * Gets the maximum total size of the cache of control flow graphs, measured in CFG nodes. CFGs
+   * are shared by all analyses of a method, so this is bounded separately from the analyses.
+   *
+   * @return the maximum weight of the CFG cache
+   */
+  int getCfgCacheMaxWeight();
+
+  /**
+   * Checks if hit, miss, eviction and rebuild counts of NullAway's caches (dataflow, expression
+   * nullness, {@link CodeAnnotationInfo} and stubx models), and counts of skipped work, should be
+   * recorded and printed at the end of the compilation by the {@link CacheStatsReporter}.
+   *
+   * @return true if cache statistics should be recorded
+   */
+  boolean recordCacheStats();
+
+  /**
+   * Checks if nullness queries about local variables should first be answered by a backward search
+   * for the variable's reaching definitions, only running forward dataflow over the whole method
+   * when that search gives up.
+   *
+   * @return true if demand-driven queries about locals are enabled
+   */
+  boolean useDemandDrivenLocalQueries();
+
+  /**
+   * Checks if NullAway should decide once per compilation unit whether it contains any annotated
+   * code, and skip all checking within compilation units that do not.
+   *
+   * @return true if compilation units without annotated code should be skipped
+   */
+  boolean skipUnmarkedCompilationUnits();
+
+  /**
+   * Gets the maximum number of classes for which {@link CodeAnnotationInfo} caches whether they are
+   * annotated code.
+   *
+   * @return the maximum size of the class annotation info cache
+   */
+  int getAnnotationInfoCacheMaxSize();
+
+  /**
+   * Checks if models parsed from astubx files may be shared with later compilations in the same
+   * process, e.g., in a Gradle daemon or a Bazel persistent worker.
+   *
+   * @return true if parsed astubx models should be cached for the lifetime of the process
+   */
+  boolean useSharedStubxCache();
 }
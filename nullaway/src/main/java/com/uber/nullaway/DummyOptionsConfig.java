@@ -228,4 +228,44 @@ public class DummyOptionsConfig implements Config {
   public boolean warnOnGenericInferenceFailure() {
     throw new IllegalStateException(ERROR_MESSAGE);
   }
+
+  @Override
+  public boolean useBitsetNullnessStores() {
+    throw new IllegalStateException(ERROR_MESSAGE);
+  }
+
+  @Override
+  public int getDataflowCacheMaxWeight() {
+    throw new IllegalStateException(ERROR_MESSAGE);
+  }
+
+  @Override
+  public int getCfgCacheMaxWeight() {
+    throw new IllegalStateException(ERROR_MESSAGE);
+  }
+
+  @Override
+  public boolean recordCacheStats() {
+    throw new IllegalStateException(ERROR_MESSAGE);
+  }
+
+  @Override
+  public boolean useDemandDrivenLocalQueries() {
+    throw new IllegalStateException(ERROR_MESSAGE);
+  }
+
+  @Override
+  public boolean skipUnmarkedCompilationUnits() {
+    throw new IllegalStateException(ERROR_MESSAGE);
+  }
+
+  @Override
+  public int getAnnotationInfoCacheMaxSize() {
+    throw new IllegalStateException(ERROR_MESSAGE);
+  }
+
+  @Override
+  public boolean useSharedStubxCache() {
+    throw new IllegalStateException(ERROR_MESSAGE);
+  }
 }
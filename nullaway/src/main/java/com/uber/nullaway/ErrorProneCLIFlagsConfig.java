@@ -23,10 +23,8 @@
 package com.uber.nullaway;
 
 import com.google.auto.value.AutoValue;
-import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
 import com.google.errorprone.ErrorProneFlags;
 import com.google.errorprone.util.ASTHelpers;
 import com.sun.tools.javac.code.Symbol;
@@ -36,7 +34,6 @@ import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Optional;
 import java.util.Set;
-import java.util.regex.Pattern;
 import org.jspecify.annotations.Nullable;
 
 /**
@@ -105,6 +102,34 @@ final class ErrorProneCLIFlagsConfig implements Config {
   static final String FL_WARN_ON_GENERIC_INFERENCE_FAILURE =
       EP_FL_NAMESPACE + ":WarnOnGenericInferenceFailure";
 
+  static final String FL_BITSET_NULLNESS_STORES = EP_FL_NAMESPACE + ":BitsetNullnessStores";
+
+  static final String FL_DATAFLOW_CACHE_MAX_WEIGHT = EP_FL_NAMESPACE + ":DataflowCacheMaxWeight";
+
+  static final String FL_CFG_CACHE_MAX_WEIGHT = EP_FL_NAMESPACE + ":CfgCacheMaxWeight";
+
+  static final String FL_CACHE_STATS = EP_FL_NAMESPACE + ":CacheStats";
+
+  static final String FL_DEMAND_DRIVEN_LOCAL_QUERIES =
+      EP_FL_NAMESPACE + ":DemandDrivenLocalQueries";
+
+  static final String FL_SKIP_UNMARKED_COMPILATION_UNITS =
+      EP_FL_NAMESPACE + ":SkipUnmarkedCompilationUnits";
+
+  static final String FL_ANNOTATION_INFO_CACHE_MAX_SIZE =
+      EP_FL_NAMESPACE + ":AnnotationInfoCacheMaxSize";
+
+  static final String FL_SHARED_STUBX_CACHE = EP_FL_NAMESPACE + ":SharedStubxCache";
+
+  /** Default maximum total size, in CFG nodes, of each dataflow analysis cache. */
+  static final int DEFAULT_DATAFLOW_CACHE_MAX_WEIGHT = 100_000;
+
+  /** Default maximum total size, in CFG nodes, of the CFG cache. */
+  static final int DEFAULT_CFG_CACHE_MAX_WEIGHT = 100_000;
+
+  /** Default maximum number of classes whose null-markedness is cached. */
+  static final int DEFAULT_ANNOTATION_INFO_CACHE_MAX_SIZE = 5_000;
+
   static final String ANNOTATED_PACKAGES_ONLY_NULLMARKED_ERROR_MSG =
       "DO NOT report an issue to Error Prone for this crash!  NullAway configuration is "
           + "incorrect.  "
@@ -193,7 +218,7 @@ final class ErrorProneCLIFlagsConfig implements Config {
    * <p>When we see an invocation to a method of a class outside these packages, we optimistically
    * assume all parameters are @Nullable and the return value is @NonNull
    */
-  private final Pattern annotatedPackages;
+  private final PackagePrefixMatcher annotatedPackages;
 
   /**
    * Sub-packages without appropriate nullability annotations.
@@ -201,7 +226,7 @@ final class ErrorProneCLIFlagsConfig implements Config {
    * <p>Used to exclude a particular package that contains unannotated code within a larger,
    * properly annotated, package.
    */
-  private final Pattern unannotatedSubPackages;
+  private final PackagePrefixMatcher unannotatedSubPackages;
 
   /** Source code in these classes will not be analyzed for nullability issues */
   private final @Nullable ImmutableSet<String> sourceClassesToExclude;
@@ -211,7 +236,7 @@ final class ErrorProneCLIFlagsConfig implements Config {
    */
   private final @Nullable ImmutableSet<String> unannotatedClasses;
 
-  private final Pattern fieldAnnotPattern;
+  private final PackagePrefixMatcher fieldAnnotPrefixes;
   private final boolean isExhaustiveOverride;
   private final boolean isSuggestSuppressions;
   private final boolean isAcknowledgeRestrictive;
@@ -225,6 +250,14 @@ final class ErrorProneCLIFlagsConfig implements Config {
   private final boolean jspecifyMode;
   private final boolean legacyAnnotationLocation;
   private final boolean warnOnInferenceFailure;
+  private final boolean bitsetNullnessStores;
+  private final int dataflowCacheMaxWeight;
+  private final int cfgCacheMaxWeight;
+  private final boolean cacheStats;
+  private final boolean demandDrivenLocalQueries;
+  private final boolean skipUnmarkedCompilationUnits;
+  private final int annotationInfoCacheMaxSize;
+  private final boolean sharedStubxCache;
   private final ImmutableSet<MethodClassAndName> knownInitializers;
   private final ImmutableSet<String> excludedClassAnnotations;
   private final ImmutableSet<String> generatedCodeAnnotations;
@@ -264,8 +297,9 @@ final class ErrorProneCLIFlagsConfig implements Config {
         || (annotatedPackagesPassed && onlyNullMarked)) {
       throw new IllegalStateException(ANNOTATED_PACKAGES_ONLY_NULLMARKED_ERROR_MSG);
     }
-    annotatedPackages = getPackagePattern(getFlagStringSet(flags, FL_ANNOTATED_PACKAGES));
-    unannotatedSubPackages = getPackagePattern(getFlagStringSet(flags, FL_UNANNOTATED_SUBPACKAGES));
+    annotatedPackages = PackagePrefixMatcher.create(getFlagStringSet(flags, FL_ANNOTATED_PACKAGES));
+    unannotatedSubPackages =
+        PackagePrefixMatcher.create(getFlagStringSet(flags, FL_UNANNOTATED_SUBPACKAGES));
     sourceClassesToExclude = getFlagStringSet(flags, FL_CLASSES_TO_EXCLUDE);
     unannotatedClasses = getFlagStringSet(flags, FL_UNANNOTATED_CLASSES);
     knownInitializers =
@@ -296,8 +330,8 @@ final class ErrorProneCLIFlagsConfig implements Config {
     acknowledgeAndroidRecent = flags.getBoolean(FL_ACKNOWLEDGE_ANDROID_RECENT).orElse(false);
     jspecifyMode = flags.getBoolean(FL_JSPECIFY_MODE).orElse(false);
     assertsEnabled = flags.getBoolean(FL_ASSERTS_ENABLED).orElse(false);
-    fieldAnnotPattern =
-        getPackagePattern(
+    fieldAnnotPrefixes =
+        PackagePrefixMatcher.create(
             getFlagStringSet(flags, FL_EXCLUDED_FIELD_ANNOT, DEFAULT_EXCLUDED_FIELD_ANNOT));
     castToNonNullMethod = flags.get(FL_CTNN_METHOD).orElse(null);
     legacyAnnotationLocation = flags.getBoolean(FL_LEGACY_ANNOTATION_LOCATION).orElse(false);
@@ -310,6 +344,32 @@ final class ErrorProneCLIFlagsConfig implements Config {
               + " is set ");
     }
     warnOnInferenceFailure = flags.getBoolean(FL_WARN_ON_GENERIC_INFERENCE_FAILURE).orElse(false);
+    bitsetNullnessStores = flags.getBoolean(FL_BITSET_NULLNESS_STORES).orElse(false);
+    dataflowCacheMaxWeight =
+        flags.getInteger(FL_DATAFLOW_CACHE_MAX_WEIGHT).orElse(DEFAULT_DATAFLOW_CACHE_MAX_WEIGHT);
+    if (dataflowCacheMaxWeight <= 0) {
+      throw new IllegalStateException(
+          "Invalid -XepOpt:" + FL_DATAFLOW_CACHE_MAX_WEIGHT + " value. Must be positive.");
+    }
+    cfgCacheMaxWeight =
+        flags.getInteger(FL_CFG_CACHE_MAX_WEIGHT).orElse(DEFAULT_CFG_CACHE_MAX_WEIGHT);
+    if (cfgCacheMaxWeight <= 0) {
+      throw new IllegalStateException(
+          "Invalid -XepOpt:" + FL_CFG_CACHE_MAX_WEIGHT + " value. Must be positive.");
+    }
+    cacheStats = flags.getBoolean(FL_CACHE_STATS).orElse(false);
+    demandDrivenLocalQueries = flags.getBoolean(FL_DEMAND_DRIVEN_LOCAL_QUERIES).orElse(false);
+    skipUnmarkedCompilationUnits =
+        flags.getBoolean(FL_SKIP_UNMARKED_COMPILATION_UNITS).orElse(false);
+    annotationInfoCacheMaxSize =
+        flags
+            .getInteger(FL_ANNOTATION_INFO_CACHE_MAX_SIZE)
+            .orElse(DEFAULT_ANNOTATION_INFO_CACHE_MAX_SIZE);
+    if (annotationInfoCacheMaxSize <= 0) {
+      throw new IllegalStateException(
+          "Invalid -XepOpt:" + FL_ANNOTATION_INFO_CACHE_MAX_SIZE + " value. Must be positive.");
+    }
+    sharedStubxCache = flags.getBoolean(FL_SHARED_STUBX_CACHE).orElse(true);
     autofixSuppressionComment = flags.get(FL_SUPPRESS_COMMENT).orElse("");
     optionalClassPaths =
         new ImmutableSet.Builder<String>()
@@ -386,14 +446,6 @@ final class ErrorProneCLIFlagsConfig implements Config {
     return ImmutableSet.copyOf(combined);
   }
 
-  private static final Pattern getPackagePattern(ImmutableSet<String> packagePrefixes) {
-    // noinspection ConstantConditions
-    String choiceRegexp =
-        Joiner.on("|")
-            .join(Iterables.transform(packagePrefixes, input -> input.replaceAll("\\.", "\\\\.")));
-    return Pattern.compile("^(?:" + choiceRegexp + ")(?:\\..*)?");
-  }
-
   @Override
   public boolean serializationIsActive() {
     return serializationActivationFlag;
@@ -408,12 +460,12 @@ final class ErrorProneCLIFlagsConfig implements Config {
 
   @Override
   public boolean fromExplicitlyAnnotatedPackage(String className) {
-    return annotatedPackages.matcher(className).matches();
+    return annotatedPackages.matches(className);
   }
 
   @Override
   public boolean fromExplicitlyUnannotatedPackage(String className) {
-    return unannotatedSubPackages.matcher(className).matches();
+    return unannotatedSubPackages.matches(className);
   }
 
   @Override
@@ -498,7 +550,7 @@ final class ErrorProneCLIFlagsConfig implements Config {
   public boolean isExcludedFieldAnnotation(String annotationName) {
     return Nullness.isNullableAnnotation(annotationName, this)
         || Nullness.isMonotonicNonNullAnnotation(annotationName)
-        || (fieldAnnotPattern != null && fieldAnnotPattern.matcher(annotationName).matches());
+        || fieldAnnotPrefixes.matches(annotationName);
   }
 
   @Override
@@ -607,6 +659,46 @@ final class ErrorProneCLIFlagsConfig implements Config {
     return warnOnInferenceFailure;
   }
 
+  @Override
+  public boolean useBitsetNullnessStores() {
+    return bitsetNullnessStores;
+  }
+
+  @Override
+  public int getDataflowCacheMaxWeight() {
+    return dataflowCacheMaxWeight;
+  }
+
+  @Override
+  public int getCfgCacheMaxWeight() {
+    return cfgCacheMaxWeight;
+  }
+
+  @Override
+  public boolean recordCacheStats() {
+    return cacheStats;
+  }
+
+  @Override
+  public boolean useDemandDrivenLocalQueries() {
+    return demandDrivenLocalQueries;
+  }
+
+  @Override
+  public boolean skipUnmarkedCompilationUnits() {
+    return skipUnmarkedCompilationUnits;
+  }
+
+  @Override
+  public int getAnnotationInfoCacheMaxSize() {
+    return annotationInfoCacheMaxSize;
+  }
+
+  @Override
+  public boolean useSharedStubxCache() {
+    return sharedStubxCache;
+  }
+
   @AutoValue
   abstract static class MethodClassAndName {
 
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2025 Uber Technologies, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.uber.nullaway;
+
+import com.sun.source.tree.ExpressionTree;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Results of a nullness query on expressions, like {@link NullAway#nullnessFromDataflow}, keyed by
+ * identity, as several matchers may query the same expression. Results computed while a dataflow
+ * analysis is running may be based on a partial fixpoint, so they are not cached.
+ */
+final class ExpressionNullnessCache {
+
+  private final Map<ExpressionTree, Boolean> results = new IdentityHashMap<>();
+
+  /** Number of queries answered from the cache, across all calls to {@link #clear()}. */
+  private long hits = 0;
+
+  /**
+   * Returns the cached result for {@code expr}, or runs the query and caches its result unless a
+   * dataflow analysis is running.
+   *
+   * @param expr the expression
+   * @param query computes the result for {@code expr}
+   * @param dataflowRunning checks if a dataflow analysis is running, after the query returns
+   * @return the result for {@code expr}
+   */
+  boolean get(
+      ExpressionTree expr, Predicate<ExpressionTree> query, BooleanSupplier dataflowRunning) {
+    Boolean cached = results.get(expr);
+    if (cached != null) {
+      hits++;
+      return cached;
+    }
+    boolean result = query.test(expr);
+    if (!dataflowRunning.getAsBoolean()) {
+      results.put(expr, result);
+    }
+    return result;
+  }
+
+  /**
+   * Drops the cached result for an expression, when new information may change it.
+   *
+   * @param expr the expression
+   */
+  void invalidate(ExpressionTree expr) {
+    results.remove(expr);
+  }
+
+  /** Drops all cached results. */
+  void clear() {
+    results.clear();
+  }
+
+  /**
+   * Returns the number of queries answered from the cache.
+   *
+   * @return the number of cache hits
+   */
+  long hits() {
+    return hits;
+  }
+}
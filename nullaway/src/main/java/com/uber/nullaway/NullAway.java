@@ -43,6 +43,7 @@ import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
 import com.google.errorprone.BugPattern;
 import com.google.errorprone.ErrorProneFlags;
 import com.google.errorprone.VisitorState;
@@ -60,6 +61,7 @@ import com.sun.source.tree.AssignmentTree;
 import com.sun.source.tree.BinaryTree;
 import com.sun.source.tree.BlockTree;
 import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.tree.CompoundAssignmentTree;
 import com.sun.source.tree.ConditionalExpressionTree;
 import com.sun.source.tree.EnhancedForLoopTree;
@@ -87,6 +89,7 @@ import com.sun.source.tree.UnaryTree;
 import com.sun.source.tree.VariableTree;
 import com.sun.source.tree.WhileLoopTree;
 import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
 import com.sun.source.util.Trees;
 import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.code.Symbol.ClassSymbol;
@@ -105,9 +108,11 @@ import com.uber.nullaway.handlers.MethodAnalysisContext;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Target;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -168,6 +173,7 @@ public class NullAway extends BugChecker
         BugChecker.ArrayAccessTreeMatcher,
         BugChecker.ReturnTreeMatcher,
         BugChecker.ClassTreeMatcher,
+        BugChecker.CompilationUnitTreeMatcher,
         BugChecker.MethodTreeMatcher,
         BugChecker.VariableTreeMatcher,
         BugChecker.NewClassTreeMatcher,
@@ -219,6 +225,31 @@ public class NullAway extends BugChecker
    */
   private NullMarking nullMarkingForTopLevelClass = NullMarking.FULLY_MARKED;
 
+  /**
+   * Annotated and unannotated source ranges of {@link #topLevelClassTree}, computed the first time
+   * a top-level class with {@link NullMarking#PARTIALLY_MARKED} marking needs them. nulled out in
+   * {@link #matchClass(ClassTree, VisitorState)} and {@link
+   * #matchCompilationUnit(CompilationUnitTree, VisitorState)}
+   */
+  private @Nullable NullMarkedRanges nullMarkedRanges;
+
+  /**
+   * The current top-level class. Set in {@link #matchClass(ClassTree, VisitorState)}, and nulled
+   * out in {@link #matchCompilationUnit(CompilationUnitTree, VisitorState)}, so that the package
+   * and imports of a compilation unit are never checked against the ranges of a class from a
+   * previous one
+   */
+  private @Nullable ClassTree topLevelClassTree;
+
+  /**
+   * Whether nothing in the current compilation unit is annotated code, so that all matchers can
+   * return immediately. Only set with {@code -XepOpt:NullAway:SkipUnmarkedCompilationUnits}; see
+   * {@link #matchCompilationUnit(CompilationUnitTree, VisitorState)}
+   */
+  private boolean skipCompilationUnit = false;
+
+  private long skippedCompilationUnits = 0;
+
   /**
    * We store the CodeAnnotationInfo object in a field for convenience; it is initialized in {@link
    * #matchClass(ClassTree, VisitorState)}
@@ -272,6 +303,15 @@ public class NullAway extends BugChecker
   private final Map<Symbol.ClassSymbol, Multimap<Tree, Element>> initTree2PrevFieldInit =
       new LinkedHashMap<>();
 
+  /**
+   * maps each constructor and initializer to the fields its safe init method calls initialize, by
+   * position, so that {@link #safeInitByCalleeBefore} need not rescan the statements preceding each
+   * field read.
+   *
+   * <p>cached for performance. nulled out in {@link #matchClass(ClassTree, VisitorState)}
+   */
+  private final Map<Tree, SafeInitPrefixTable> safeInitPrefixTables = new LinkedHashMap<>();
+
   /**
    * dynamically computer/overriden nullness facts for certain expressions, such as specific method
    * calls where we can infer a more precise set of facts than those given by the method's
@@ -279,6 +319,19 @@ public class NullAway extends BugChecker
    */
   private final Map<ExpressionTree, Nullness> computedNullnessMap = new LinkedHashMap<>();
 
+  /**
+   * results of {@link #mayBeNullExpr} for expressions that need more than a syntactic check, keyed
+   * by identity, as several matchers may query the same expression. results computed while a
+   * dataflow analysis is running are not cached.
+   *
+   * <p>cached for performance. nulled out in {@link #matchClass(ClassTree, VisitorState)}, and
+   * invalidated per expression by {@link #setComputedNullness(ExpressionTree, Nullness)}
+   */
+  private final ExpressionNullnessCache mayBeNullExprCache = new ExpressionNullnessCache();
+
+  /** results of {@link #nullnessFromDataflow}, cached like {@link #mayBeNullExprCache} */
+  private final ExpressionNullnessCache nullnessFromDataflowCache = new ExpressionNullnessCache();
+
   /** Logic and state for generics checking */
   private final GenericsChecks genericsChecks;
 
@@ -363,6 +416,13 @@ public class NullAway extends BugChecker
   private boolean checkMarkingForPath(VisitorState state) {
     TreePath path = state.getPath();
     Tree currentTree = path.getLeaf();
+    NullMarkedRanges ranges = getNullMarkedRanges(state);
+    if (ranges != null) {
+      Boolean annotated = ranges.isAnnotatedAt(currentTree);
+      if (annotated != null) {
+        return annotated;
+      }
+    }
     // Find the closest class or method symbol, since those are the only ones we have code
     // annotation info for.
     // For the purposes of determining whether we are inside annotated code or not, when matching
@@ -386,6 +446,26 @@ public class NullAway extends BugChecker
     return !codeAnnotationInfo.isSymbolUnannotated(enclosingMarkableSymbol, config, handler);
   }
 
+  /**
+   * Returns the annotated and unannotated ranges of the current top-level class, computing them if
+   * needed, or {@code null} if no top-level class of the current compilation unit has been matched
+   * yet. Trees outside the class fall outside all of its ranges.
+   */
+  private @Nullable NullMarkedRanges getNullMarkedRanges(VisitorState state) {
+    ClassTree topLevelClass = topLevelClassTree;
+    if (topLevelClass == null) {
+      return null;
+    }
+    if (nullMarkedRanges == null) {
+      nullMarkedRanges =
+          NullMarkedRanges.compute(
+              topLevelClass,
+              state,
+              symbol -> !codeAnnotationInfo.isSymbolUnannotated(symbol, config, handler));
+    }
+    return nullMarkedRanges;
+  }
+
   @Override
   public String linkUrl() {
     // add a space to make it clickable from iTerm
@@ -704,6 +784,9 @@ public class NullAway extends BugChecker
 
   @Override
   public Description matchMethod(MethodTree tree, VisitorState state) {
+    if (skipCompilationUnit) {
+      return Description.NO_MATCH;
+    }
     checkForMethodNullMarkedness(tree, state);
     if (!withinAnnotatedCode(state)) {
       return Description.NO_MATCH;
@@ -1375,19 +1458,29 @@ public class NullAway extends BugChecker
    */
   private ImmutableSet<Element> safeInitByCalleeBefore(
       TreePath pathToRead, VisitorState state, TreePath enclosingBlockPath) {
-    Set<Element> safeInitMethods = new LinkedHashSet<>();
     Tree enclosingBlockOrMethod = enclosingBlockPath.getLeaf();
     if (enclosingBlockOrMethod instanceof VariableTree) {
       return ImmutableSet.of();
     }
-    ImmutableSet.Builder<Element> resultBuilder = ImmutableSet.builder();
+    SafeInitPrefixTable table =
+        safeInitPrefixTables.computeIfAbsent(
+            enclosingBlockOrMethod, t -> computeSafeInitPrefixTable(enclosingBlockPath, state));
+    return table.initializedBefore(getStartPos((JCTree) pathToRead.getLeaf()));
+  }
+
+  /**
+   * @param enclosingBlockPath TreePath to a constructor or initializer
+   * @param state visitor state
+   * @return the fields initialized by the safe init methods invoked by the initializer, by the
+   *     start position of each invoking statement
+   */
+  private SafeInitPrefixTable computeSafeInitPrefixTable(
+      TreePath enclosingBlockPath, VisitorState state) {
+    Tree enclosingBlockOrMethod = enclosingBlockPath.getLeaf();
     BlockTree blockTree =
         enclosingBlockOrMethod instanceof BlockTree
             ? (BlockTree) enclosingBlockOrMethod
             : ((MethodTree) enclosingBlockOrMethod).getBody();
-    List<? extends StatementTree> statements = blockTree.getStatements();
-    Tree readExprTree = pathToRead.getLeaf();
-    int readStartPos = getStartPos((JCTree) readExprTree);
     TreePath classTreePath = enclosingBlockPath;
     // look for the parent ClassTree node, which represents the enclosing class / enum / interface
     while (!(classTreePath.getLeaf() instanceof ClassTree)) {
@@ -1399,38 +1492,62 @@ public class NullAway extends BugChecker
       }
     }
     Symbol.ClassSymbol classSymbol = ASTHelpers.getSymbol((ClassTree) classTreePath.getLeaf());
-    for (int i = 0; i < statements.size(); i++) {
-      StatementTree curStmt = statements.get(i);
-      if (getStartPos((JCTree) curStmt) <= readStartPos) {
-        Element privMethodElem = getInvokeOfSafeInitMethod(curStmt, classSymbol, state);
-        if (privMethodElem != null) {
-          safeInitMethods.add(privMethodElem);
+    List<Integer> startPositions = new ArrayList<>();
+    List<Element> safeInitMethods = new ArrayList<>();
+    collectSafeInitInvokes(blockTree, classSymbol, state, startPositions, safeInitMethods);
+    Trees trees = getTreesInstance(state);
+    AccessPathNullnessAnalysis nullnessAnalysis = getNullnessAnalysis(state);
+    Set<Element> initializedThusFar = new LinkedHashSet<>();
+    Set<Element> seenMethods = new LinkedHashSet<>();
+    List<ImmutableSet<Element>> initializedUpTo = new ArrayList<>();
+    ImmutableSet<Element> current = ImmutableSet.of();
+    for (Element safeInitMethod : safeInitMethods) {
+      if (seenMethods.add(safeInitMethod)) {
+        ImmutableSet.Builder<Element> builder = ImmutableSet.builder();
+        addGuaranteedNonNullFromInvokes(
+            state, trees, ImmutableSet.of(safeInitMethod), nullnessAnalysis, builder);
+        if (initializedThusFar.addAll(builder.build())) {
+          current = ImmutableSet.copyOf(initializedThusFar);
         }
-        // Hack: Handling try{...}finally{...} statement, see getSafeInitMethods
-        if (curStmt instanceof TryTree) {
-          TryTree tryTree = (TryTree) curStmt;
-          // ToDo: Should we check initialization inside tryTree.getResources ? What is the scope of
-          // that initialization?
-          if (tryTree.getCatches().size() == 0) {
-            if (tryTree.getBlock() != null) {
-              resultBuilder.addAll(
-                  safeInitByCalleeBefore(
-                      pathToRead, state, new TreePath(enclosingBlockPath, tryTree.getBlock())));
-            }
-            if (tryTree.getFinallyBlock() != null) {
-              resultBuilder.addAll(
-                  safeInitByCalleeBefore(
-                      pathToRead,
-                      state,
-                      new TreePath(enclosingBlockPath, tryTree.getFinallyBlock())));
-            }
+      }
+      initializedUpTo.add(current);
+    }
+    return new SafeInitPrefixTable(startPositions, initializedUpTo);
+  }
+
+  /**
+   * Collects the safe init methods invoked by top-level statements of {@code blockTree}, in source
+   * order, along with the start positions of the invoking statements.
+   */
+  private void collectSafeInitInvokes(
+      BlockTree blockTree,
+      Symbol.ClassSymbol classSymbol,
+      VisitorState state,
+      List<Integer> startPositions,
+      List<Element> safeInitMethods) {
+    for (StatementTree curStmt : blockTree.getStatements()) {
+      Element privMethodElem = getInvokeOfSafeInitMethod(curStmt, classSymbol, state);
+      if (privMethodElem != null) {
+        startPositions.add(getStartPos((JCTree) curStmt));
+        safeInitMethods.add(privMethodElem);
+      }
+      // Hack: Handling try{...}finally{...} statement, see getSafeInitMethods
+      if (curStmt instanceof TryTree) {
+        TryTree tryTree = (TryTree) curStmt;
+        // ToDo: Should we check initialization inside tryTree.getResources ? What is the scope of
+        // that initialization?
+        if (tryTree.getCatches().size() == 0) {
+          if (tryTree.getBlock() != null) {
+            collectSafeInitInvokes(
+                tryTree.getBlock(), classSymbol, state, startPositions, safeInitMethods);
+          }
+          if (tryTree.getFinallyBlock() != null) {
+            collectSafeInitInvokes(
+                tryTree.getFinallyBlock(), classSymbol, state, startPositions, safeInitMethods);
           }
         }
       }
     }
-    addGuaranteedNonNullFromInvokes(
-        state, getTreesInstance(state), safeInitMethods, getNullnessAnalysis(state), resultBuilder);
-    return resultBuilder.build();
   }
 
   private int getStartPos(JCTree tree) {
@@ -1703,12 +1820,102 @@ public class NullAway extends BugChecker
                 classSymbol, NullabilityUtil.NULLUNMARKED_SIMPLE_NAME));
   }
 
+  @Override
+  public Description matchCompilationUnit(CompilationUnitTree tree, VisitorState state) {
+    // no top-level class of this compilation unit has been matched yet
+    topLevelClassTree = null;
+    nullMarkedRanges = null;
+    if (!config.skipUnmarkedCompilationUnits()) {
+      return Description.NO_MATCH;
+    }
+    if (codeAnnotationInfo == null) {
+      codeAnnotationInfo = CodeAnnotationInfo.instance(state.context);
+      registerCacheStats(state);
+    }
+    skipCompilationUnit = isUnmarkedCompilationUnit(tree);
+    if (skipCompilationUnit) {
+      skippedCompilationUnits++;
+    }
+    return Description.NO_MATCH;
+  }
+
+  /**
+   * Checks if no code in a compilation unit is annotated, in which case none of our matchers can
+   * report an error within it. This is the case if every top-level class is excluded (see {@link
+   * #isExcludedClass(Symbol.ClassSymbol)}), and no class or method in the compilation unit is
+   * directly annotated {@code @NullMarked}, since that is the only way for code within an excluded
+   * class to be treated as annotated.
+   */
+  private boolean isUnmarkedCompilationUnit(CompilationUnitTree tree) {
+    for (Tree typeDecl : tree.getTypeDecls()) {
+      if (typeDecl instanceof ClassTree
+          && !isExcludedClass(ASTHelpers.getSymbol((ClassTree) typeDecl))) {
+        return false;
+      }
+    }
+    NullMarkedScopeFinder finder = new NullMarkedScopeFinder();
+    finder.scan(tree.getTypeDecls(), null);
+    return !finder.found;
+  }
+
+  /** Finds a class or method directly annotated {@code @NullMarked}. */
+  private static final class NullMarkedScopeFinder
+      extends TreeScanner<@Nullable Void, @Nullable Void> {
+
+    boolean found = false;
+
+    @Override
+    public @Nullable Void visitClass(ClassTree tree, @Nullable Void unused) {
+      if (found
+          || hasDirectAnnotationWithSimpleName(
+              ASTHelpers.getSymbol(tree), NullabilityUtil.NULLMARKED_SIMPLE_NAME)) {
+        found = true;
+        return null;
+      }
+      return super.visitClass(tree, unused);
+    }
+
+    @Override
+    public @Nullable Void visitMethod(MethodTree tree, @Nullable Void unused) {
+      if (found
+          || hasDirectAnnotationWithSimpleName(
+              ASTHelpers.getSymbol(tree), NullabilityUtil.NULLMARKED_SIMPLE_NAME)) {
+        found = true;
+        return null;
+      }
+      return super.visitMethod(tree, unused);
+    }
+  }
+
+  /**
+   * Adds this checker's summaries to the {@link CacheStatsReporter} of the compilation, with
+   * {@code -XepOpt:NullAway:CacheStats}. Called once, when {@link #codeAnnotationInfo} is set.
+   */
+  private void registerCacheStats(VisitorState state) {
+    if (!config.recordCacheStats()) {
+      return;
+    }
+    CacheStatsReporter reporter = CacheStatsReporter.instance(state.context);
+    reporter.addSummary("exprNullness", this::exprNullnessCacheStatsSummary);
+    reporter.addSummary("annotationInfo", codeAnnotationInfo::cacheStatsSummary);
+    if (config.skipUnmarkedCompilationUnits()) {
+      reporter.addSummary(
+          "skippedCompilationUnits",
+          () ->
+              String.format(
+                  Locale.ROOT,
+                  "NullAway: skipped %d compilation units with no annotated code",
+                  skippedCompilationUnits));
+    }
+  }
+
   @Override
   public Description matchClass(ClassTree tree, VisitorState state) {
     // Ensure codeAnnotationInfo is initialized here since it requires access to the Context,
     // which is not available in the constructor
     if (codeAnnotationInfo == null) {
       codeAnnotationInfo = CodeAnnotationInfo.instance(state.context);
+      registerCacheStats(state);
     }
     if (!checkedJDKVersionForJSpecifyMode) {
       checkedJDKVersionForJSpecifyMode = true;
@@ -1721,6 +1928,10 @@ public class NullAway extends BugChecker
         throw new IllegalStateException(msg);
       }
     }
+    if (skipCompilationUnit) {
+      nullMarkingForTopLevelClass = NullMarking.FULLY_UNMARKED;
+      return Description.NO_MATCH;
+    }
     // Check if the class is excluded according to the filter
     // if so, set the flag to match within the class to false
     // NOTE: for this mechanism to work, we rely on the enclosing ClassTree
@@ -1749,9 +1960,14 @@ public class NullAway extends BugChecker
       handler.onMatchTopLevelClass(this, tree, state, classSymbol);
       getNullnessAnalysis(state).invalidateCaches();
       initTree2PrevFieldInit.clear();
+      safeInitPrefixTables.clear();
       class2Entities.clear();
       class2ConstructorUninit.clear();
+      nullMarkedRanges = null;
+      topLevelClassTree = tree;
       computedNullnessMap.clear();
+      mayBeNullExprCache.clear();
+      nullnessFromDataflowCache.clear();
       genericsChecks.clearCache();
       EnclosingEnvironmentNullness.instance(state.context).clear();
     } else if (classAnnotationIntroducesPartialMarking(classSymbol)) {
@@ -2648,6 +2864,13 @@ public class NullAway extends BugChecker
       default:
         break;
     }
+    return mayBeNullExprCache.get(
+        expr,
+        e -> mayBeNullExprUncached(state, e),
+        () -> getNullnessAnalysis(state).isDataflowRunning());
+  }
+
+  private boolean mayBeNullExprUncached(VisitorState state, ExpressionTree expr) {
     // the logic here is to avoid doing dataflow analysis whenever possible
     Symbol exprSymbol = ASTHelpers.getSymbol(expr);
     boolean exprMayBeNull;
@@ -2746,14 +2969,31 @@ public class NullAway extends BugChecker
   }
 
   public boolean nullnessFromDataflow(VisitorState state, ExpressionTree expr) {
-    Nullness nullness =
-        getNullnessAnalysis(state).getNullness(new TreePath(state.getPath(), expr), state.context);
-    if (nullness == null) {
-      // this may be unsound, like for field initializers
-      // figure out if we care
-      return false;
-    }
-    return NullabilityUtil.nullnessToBool(nullness);
+    AccessPathNullnessAnalysis nullnessAnalysis = getNullnessAnalysis(state);
+    return nullnessFromDataflowCache.get(
+        expr,
+        e -> {
+          Nullness nullness =
+              nullnessAnalysis.getNullness(new TreePath(state.getPath(), e), state.context);
+          // this may be unsound for a null result, like for field initializers
+          // figure out if we care
+          return nullness != null && NullabilityUtil.nullnessToBool(nullness);
+        },
+        nullnessAnalysis::isDataflowRunning);
+  }
+
+  /**
+   * Returns a one-line summary of how many repeated {@link #mayBeNullExpr} and {@link
+   * #nullnessFromDataflow} queries were answered from their caches, for all top-level classes.
+   *
+   * @return the summary
+   */
+  private String exprNullnessCacheStatsSummary() {
+    return String.format(
+        Locale.ROOT,
+        "NullAway expression nullness caches: mayBeNullExpr %d hits, nullnessFromDataflow %d hits",
+        mayBeNullExprCache.hits(),
+        nullnessFromDataflowCache.hits());
   }
 
   public AccessPathNullnessAnalysis getNullnessAnalysis(VisitorState state) {
@@ -2869,6 +3109,37 @@ public class NullAway extends BugChecker
    */
   public void setComputedNullness(ExpressionTree e, Nullness nullness) {
     computedNullnessMap.put(e, nullness);
+    // cached results for e may not reflect the new information
+    mayBeNullExprCache.invalidate(e);
+    nullnessFromDataflowCache.invalidate(e);
+  }
+
+  /**
+   * The fields initialized by the safe init methods a constructor or initializer invokes, as a
+   * function of position within it: a read of a field is preceded by all invoking statements that
+   * start before the read.
+   */
+  private static final class SafeInitPrefixTable {
+
+    /** Start positions of the statements invoking safe init methods, in increasing order. */
+    private final int[] startPositions;
+
+    /** Element {@code i} holds the fields initialized by statements {@code 0} to {@code i}. */
+    private final ImmutableList<ImmutableSet<Element>> initializedUpTo;
+
+    SafeInitPrefixTable(List<Integer> startPositions, List<ImmutableSet<Element>> initializedUpTo) {
+      this.startPositions = Ints.toArray(startPositions);
+      this.initializedUpTo = ImmutableList.copyOf(initializedUpTo);
+    }
+
+    /** Returns the fields initialized by invoking statements starting at or before {@code pos}. */
+    ImmutableSet<Element> initializedBefore(int pos) {
+      int index = Arrays.binarySearch(startPositions, pos);
+      // for a miss, binarySearch returns -(insertion point) - 1; the last statement starting before
+      // pos is just before the insertion point
+      int last = index >= 0 ? index : -index - 2;
+      return last >= 0 ? initializedUpTo.get(last) : ImmutableSet.of();
+    }
   }
 
   @AutoValue
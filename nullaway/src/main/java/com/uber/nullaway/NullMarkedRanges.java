@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2025 Uber Technologies, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.uber.nullaway;
+
+import com.google.errorprone.VisitorState;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.tree.JCTree;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The source ranges of a top-level class that are annotated and unannotated code, where a position
+ * is in annotated code if its innermost enclosing class or method is. Used for top-level classes
+ * with mixed null-markedness, to decide whether a tree is within annotated code by looking up its
+ * start position, instead of walking up its path to the nearest class or method.
+ */
+final class NullMarkedRanges {
+
+  private static final byte OUTSIDE = 0;
+  private static final byte MARKED = 1;
+  private static final byte UNMARKED = 2;
+
+  /**
+   * Start positions of the ranges, in increasing order. Each range extends to the start of the next
+   * one.
+   */
+  private final int[] starts;
+
+  /** For each range, one of {@link #OUTSIDE}, {@link #MARKED} or {@link #UNMARKED}. */
+  private final byte[] states;
+
+  private NullMarkedRanges(int[] starts, byte[] states) {
+    this.starts = starts;
+    this.states = states;
+  }
+
+  /**
+   * Computes the ranges for a top-level class.
+   *
+   * @param topLevelClass the top-level class
+   * @param state visitor state, for end positions
+   * @param isAnnotated checks if a class or method symbol is annotated code
+   * @return the ranges
+   */
+  static NullMarkedRanges compute(
+      ClassTree topLevelClass, VisitorState state, Predicate<Symbol> isAnnotated) {
+    Scanner scanner = new Scanner(state, isAnnotated);
+    scanner.scan(topLevelClass, null);
+    int[] starts = new int[scanner.ranges.size()];
+    byte[] states = new byte[scanner.ranges.size()];
+    int i = 0;
+    for (Map.Entry<Integer, Byte> range : scanner.ranges.entrySet()) {
+      starts[i] = range.getKey();
+      states[i] = range.getValue();
+      i++;
+    }
+    return new NullMarkedRanges(starts, states);
+  }
+
+  /**
+   * Checks if the code at {@code tree} is annotated.
+   *
+   * @param tree a tree within the top-level class
+   * @return whether the innermost class or method enclosing {@code tree} is annotated code, or
+   *     {@code null} if this cannot be determined from the position of {@code tree} alone
+   */
+  @Nullable Boolean isAnnotatedAt(Tree tree) {
+    int pos = ((JCTree) tree).getStartPosition();
+    if (pos < 0) {
+      return null;
+    }
+    int index = Arrays.binarySearch(starts, pos);
+    if (index < 0) {
+      // the range containing pos is the one just before the insertion point
+      index = -index - 2;
+    }
+    if (index < 0 || states[index] == OUTSIDE) {
+      return null;
+    }
+    return states[index] == MARKED;
+  }
+
+  private static final class Scanner extends TreeScanner<@Nullable Void, @Nullable Void> {
+
+    private final VisitorState state;
+
+    private final Predicate<Symbol> isAnnotated;
+
+    /** Maps the start of each range to its state; built like a paint-over of nested ranges. */
+    final TreeMap<Integer, Byte> ranges = new TreeMap<>();
+
+    private byte current = OUTSIDE;
+
+    private int currentStart = -1;
+
+    Scanner(VisitorState state, Predicate<Symbol> isAnnotated) {
+      this.state = state;
+      this.isAnnotated = isAnnotated;
+    }
+
+    @Override
+    public @Nullable Void visitClass(ClassTree tree, @Nullable Void unused) {
+      enter(tree, ASTHelpers.getSymbol(tree));
+      return null;
+    }
+
+    @Override
+    public @Nullable Void visitMethod(MethodTree tree, @Nullable Void unused) {
+      enter(tree, ASTHelpers.getSymbol(tree));
+      return null;
+    }
+
+    private void enter(Tree tree, Symbol symbol) {
+      int start = ((JCTree) tree).getStartPosition();
+      int end = state.getEndPosition(tree);
+      if (start < 0 || end <= start || start == currentStart) {
+        // a synthetic tree (e.g., a default constructor) without a range of its own; it belongs to
+        // the range of its enclosing class
+        scanChildren(tree);
+        return;
+      }
+      byte enclosing = current;
+      int enclosingStart = currentStart;
+      current = isAnnotated.test(symbol) ? MARKED : UNMARKED;
+      currentStart = start;
+      ranges.put(start, current);
+      scanChildren(tree);
+      // put after the children, so that the enclosing state is restored even if the last child
+      // ends at the same position
+      ranges.put(end, enclosing);
+      current = enclosing;
+      currentStart = enclosingStart;
+    }
+
+    private void scanChildren(Tree tree) {
+      if (tree instanceof ClassTree) {
+        super.visitClass((ClassTree) tree, null);
+      } else {
+        super.visitMethod((MethodTree) tree, null);
+      }
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2025 Uber Technologies, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.uber.nullaway;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Matches qualified names against a list of dotted prefixes, as passed to {@code
+ * -XepOpt:NullAway:AnnotatedPackages} and similar flags. A name matches a prefix if it is equal to
+ * the prefix, or starts with the prefix followed by a dot.
+ *
+ * <p>Plain prefixes are stored in a trie of their dot-separated segments, so a lookup takes time
+ * proportional to the number of segments of the name, regardless of the number of prefixes.
+ * Prefixes are also allowed to be regular expressions in which dots match only dots (e.g., {@code
+ * com.uber.[a-z]+.unannotated}); any such prefixes are matched with a single regular expression, as
+ * all prefixes used to be.
+ */
+public final class PackagePrefixMatcher {
+
+  /** Prefixes without any regular expression syntax other than (escaped) dots. */
+  private static final Pattern PLAIN_PREFIX = Pattern.compile("[\\w.]*");
+
+  private static final class Node {
+    final Map<String, Node> children = new HashMap<>();
+
+    /** Whether the path from the root to this node spells out a whole prefix. */
+    boolean isPrefixEnd = false;
+  }
+
+  private final Node root = new Node();
+
+  private final @Nullable Pattern regexPrefixes;
+
+  private PackagePrefixMatcher(Iterable<String> prefixes) {
+    List<String> regexes = new ArrayList<>();
+    boolean empty = true;
+    for (String prefix : prefixes) {
+      empty = false;
+      if (PLAIN_PREFIX.matcher(prefix).matches()) {
+        add(prefix);
+      } else {
+        regexes.add(prefix);
+      }
+    }
+    if (empty) {
+      // the regular expression for an empty list of prefixes matched the empty prefix
+      add("");
+    }
+    this.regexPrefixes = regexes.isEmpty() ? null : toPattern(regexes);
+  }
+
+  /**
+   * Creates a matcher for the given prefixes.
+   *
+   * @param prefixes the prefixes, as passed to the flag
+   * @return a matcher for {@code prefixes}
+   */
+  public static PackagePrefixMatcher create(Iterable<String> prefixes) {
+    return new PackagePrefixMatcher(prefixes);
+  }
+
+  /**
+   * The single regular expression that all prefixes used to be matched with. Only used for prefixes
+   * that are regular expressions themselves.
+   */
+  private static Pattern toPattern(Iterable<String> prefixes) {
+    String choiceRegexp =
+        Joiner.on("|")
+            .join(Iterables.transform(prefixes, input -> input.replaceAll("\\.", "\\\\.")));
+    return Pattern.compile("^(?:" + choiceRegexp + ")(?:\\..*)?");
+  }
+
+  private void add(String prefix) {
+    Node node = root;
+    for (String segment : prefix.split("\\.", -1)) {
+      node = node.children.computeIfAbsent(segment, s -> new Node());
+    }
+    node.isPrefixEnd = true;
+  }
+
+  /**
+   * Checks if a name matches any of the prefixes.
+   *
+   * @param name a qualified name, e.g., of a class or an annotation
+   * @return true if {@code name} matches one of the prefixes
+   */
+  public boolean matches(String name) {
+    return matchesPlainPrefix(name)
+        || (regexPrefixes != null && regexPrefixes.matcher(name).matches());
+  }
+
+  private boolean matchesPlainPrefix(String name) {
+    Node node = root;
+    int start = 0;
+    while (true) {
+      int dot = name.indexOf('.', start);
+      node = node.children.get(dot < 0 ? name.substring(start) : name.substring(start, dot));
+      if (node == null) {
+        return false;
+      }
+      if (node.isPrefixEnd) {
+        return true;
+      }
+      if (dot < 0) {
+        return false;
+      }
+      start = dot + 1;
+    }
+  }
+}
@@ -40,7 +40,9 @@ import com.uber.nullaway.NullabilityUtil;
 import com.uber.nullaway.annotations.JacocoIgnoreGenerated;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import javax.lang.model.element.Element;
@@ -120,6 +122,9 @@ public final class AccessPath implements MapKey {
    */
   private final @Nullable MapKey mapGetArg;
 
+  /** Cached, since access paths are hashed on every store lookup and update. */
+  private final int hashCode;
+
   private AccessPath(@Nullable Element root, ImmutableList<AccessPathElement> elements) {
     this(root, elements, null);
   }
@@ -131,6 +136,11 @@ public final class AccessPath implements MapKey {
     this.root = root;
     this.elements = elements;
     this.mapGetArg = mapGetArg;
+    int result = 1;
+    result = 31 * result + (root != null ? root.hashCode() : 0);
+    result = 31 * result + elements.hashCode();
+    result = 31 * result + (mapGetArg != null ? mapGetArg.hashCode() : 0);
+    this.hashCode = result;
   }
 
   /**
@@ -143,15 +153,30 @@ public final class AccessPath implements MapKey {
     return new AccessPath(node.getElement(), ImmutableList.of());
   }
 
+  /**
+   * Like {@link #fromLocal(LocalVariableNode)}, but returns the access path interned in {@code
+   * apContext}, without allocating if the local has been seen before.
+   *
+   * @param node the local
+   * @param apContext the current access path context information (see {@link
+   *     AccessPath.AccessPathContext}).
+   * @return access path representing the local
+   */
+  static AccessPath fromLocal(LocalVariableNode node, AccessPathContext apContext) {
+    return apContext.internLocal(node.getElement());
+  }
+
   /**
    * Construct the access path of a variable declaration.
    *
    * @param node the variable declaration
+   * @param apContext the current access path context information (see {@link
+   *     AccessPath.AccessPathContext}).
    * @return access path representing the variable declaration
    */
-  static AccessPath fromVarDecl(VariableDeclarationNode node) {
+  static AccessPath fromVarDecl(VariableDeclarationNode node, AccessPathContext apContext) {
     Element elem = TreeUtils.elementFromDeclaration(node.getTree());
-    return new AccessPath(elem, ImmutableList.of());
+    return apContext.internLocal(elem);
   }
 
   /**
@@ -328,7 +353,7 @@ public final class AccessPath implements MapKey {
   public static @Nullable AccessPath getAccessPathForNode(
       Node node, VisitorState state, AccessPathContext apContext) {
     if (node instanceof LocalVariableNode) {
-      return fromLocal((LocalVariableNode) node);
+      return fromLocal((LocalVariableNode) node, apContext);
     } else if (node instanceof FieldAccessNode) {
       return fromFieldAccess((FieldAccessNode) node, apContext);
     } else if (node instanceof MethodInvocationNode) {
@@ -409,7 +434,9 @@ public final class AccessPath implements MapKey {
       FieldAccessNode fieldAccess = (FieldAccessNode) node;
       if (fieldAccess.isStatic()) {
         // this is the root
-        result = new AccessPath(fieldAccess.getElement(), ImmutableList.copyOf(elements), mapKey);
+        result =
+            apContext.intern(
+                new AccessPath(fieldAccess.getElement(), ImmutableList.copyOf(elements), mapKey));
       } else {
         // instance field access
         elements.push(new FieldOrMethodCallElement(fieldAccess.getElement()));
@@ -445,7 +472,7 @@ public final class AccessPath implements MapKey {
         Symbol.MethodSymbol symbol = ASTHelpers.getSymbol(invocation.getTree());
         if (symbol.isStatic()) {
           // a zero-argument static method call can be the root of an access path
-          return new AccessPath(symbol, ImmutableList.copyOf(elements), mapKey);
+          return apContext.intern(new AccessPath(symbol, ImmutableList.copyOf(elements), mapKey));
         } else {
           accessPathElement = new FieldOrMethodCallElement(accessNode.getMethod());
         }
@@ -524,9 +551,12 @@ public final class AccessPath implements MapKey {
           buildAccessPathRecursive(
               stripCasts(accessNode.getReceiver()), elements, apContext, mapKey);
     } else if (node instanceof LocalVariableNode) {
+      Element localElement = ((LocalVariableNode) node).getElement();
       result =
-          new AccessPath(
-              ((LocalVariableNode) node).getElement(), ImmutableList.copyOf(elements), mapKey);
+          elements.isEmpty() && mapKey == null
+              ? apContext.internLocal(localElement)
+              : apContext.intern(
+                  new AccessPath(localElement, ImmutableList.copyOf(elements), mapKey));
     } else if (node instanceof ClassNameNode) {
       // It is useful to make an access path if elements.size() > 1 and elements.getFirst() is
       // "this".  In this case, we may have an access of a field of an enclosing class from a nested
@@ -536,12 +566,13 @@ public final class AccessPath implements MapKey {
       if (elements.size() > 1
           && elements.getFirst().getJavaElement().getSimpleName().contentEquals("this")) {
         Element rootElement = elements.pop().getJavaElement();
-        result = new AccessPath(rootElement, ImmutableList.copyOf(elements), mapKey);
+        result =
+            apContext.intern(new AccessPath(rootElement, ImmutableList.copyOf(elements), mapKey));
       } else {
         result = null;
       }
     } else if (node instanceof ThisNode || node instanceof SuperNode) {
-      result = new AccessPath(null, ImmutableList.copyOf(elements), mapKey);
+      result = apContext.intern(new AccessPath(null, ImmutableList.copyOf(elements), mapKey));
     } else {
       // don't handle any other cases
       result = null;
@@ -584,6 +615,11 @@ public final class AccessPath implements MapKey {
       return false;
     }
     AccessPath that = (AccessPath) o;
+    // access paths built through an AccessPathContext are interned, so equal paths are usually
+    // caught by the identity check above, and most unequal ones by this check
+    if (hashCode != that.hashCode) {
+      return false;
+    }
     return Objects.equals(root, that.root)
         && elements.equals(that.elements)
         && Objects.equals(mapGetArg, that.mapGetArg);
@@ -591,11 +627,7 @@ public final class AccessPath implements MapKey {
 
   @Override
   public int hashCode() {
-    int result = 1;
-    result = 31 * result + (root != null ? root.hashCode() : 0);
-    result = 31 * result + elements.hashCode();
-    result = 31 * result + (mapGetArg != null ? mapGetArg.hashCode() : 0);
-    return result;
+    return hashCode;
   }
 
   /**
@@ -745,11 +777,24 @@ public final class AccessPath implements MapKey {
    * Represents a per-javac instance of an AccessPath context options.
    *
    * <p>This includes, for example, data on known structurally immutable types.
+   *
+   * <p>The context also interns the access paths built through it, so that equal access paths
+   * computed while analyzing a top-level class are the same object. The intern tables are cleared
+   * along with the other dataflow caches, via {@link #clearInternedAccessPaths()}.
    */
   public static final class AccessPathContext {
 
     private final ImmutableSet<String> immutableTypes;
 
+    /** Canonical instances of the access paths seen since the tables were last cleared. */
+    private final Map<AccessPath, AccessPath> internedPaths = new HashMap<>();
+
+    /**
+     * Canonical access paths for locals, keyed by the local's element, so looking one up does not
+     * require allocating a candidate {@link AccessPath} first.
+     */
+    private final Map<Element, AccessPath> internedLocals = new HashMap<>();
+
     private AccessPathContext(ImmutableSet<String> immutableTypes) {
       this.immutableTypes = immutableTypes;
     }
@@ -758,6 +803,31 @@ public final class AccessPath implements MapKey {
       return type.isPrimitive() || immutableTypes.contains(type.tsym.toString());
     }
 
+    /** Returns the canonical instance of {@code accessPath}. */
+    AccessPath intern(AccessPath accessPath) {
+      AccessPath existing = internedPaths.putIfAbsent(accessPath, accessPath);
+      return existing == null ? accessPath : existing;
+    }
+
+    /** Returns the canonical access path for the local (or parameter) {@code element}. */
+    AccessPath internLocal(Element element) {
+      AccessPath result = internedLocals.get(element);
+      if (result == null) {
+        result = intern(new AccessPath(element, ImmutableList.of()));
+        internedLocals.put(element, result);
+      }
+      return result;
+    }
+
+    /**
+     * Clears the intern tables. Should be called whenever we move to a new top-level class, to
+     * avoid leaking memory.
+     */
+    void clearInternedAccessPaths() {
+      internedPaths.clear();
+      internedLocals.clear();
+    }
+
     public static Builder builder() {
       return new AccessPathContext.Builder();
     }
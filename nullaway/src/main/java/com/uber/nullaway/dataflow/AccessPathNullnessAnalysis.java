@@ -19,21 +19,31 @@
 package com.uber.nullaway.dataflow;
 
 import static com.uber.nullaway.NullabilityUtil.castToNonNull;
+import static com.uber.nullaway.NullabilityUtil.findEnclosingMethodOrLambdaOrInitializer;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.errorprone.VisitorState;
 import com.google.errorprone.dataflow.nullnesspropagation.NullnessAnalysis;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.Tree;
 import com.sun.source.util.TreePath;
+import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.util.Context;
+import com.uber.nullaway.CacheStatsReporter;
 import com.uber.nullaway.Config;
 import com.uber.nullaway.NullAway;
 import com.uber.nullaway.Nullness;
 import com.uber.nullaway.handlers.Handler;
 import com.uber.nullaway.handlers.contract.ContractNullnessStoreInitializer;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Predicate;
 import javax.lang.model.element.Element;
@@ -63,6 +73,30 @@ public final class AccessPathNullnessAnalysis {
 
   private @Nullable AccessPathNullnessPropagation contractNullnessPropagation;
 
+  /**
+   * Results of the {@link TriviallyNonNullLocals} pre-pass, for the methods, lambdas and
+   * initializers of the current top-level class.
+   */
+  private final Map<Tree, TriviallyNonNullLocals> triviallyNonNullLocals = new HashMap<>();
+
+  /** Methods of previous top-level classes all of whose nullness queries the pre-pass answered. */
+  private long methodsSkippedByPrepass = 0;
+
+  /**
+   * Per class of the current top-level class, the fields left non-null at exit by each of its
+   * methods and initializer blocks.
+   */
+  private final Map<Symbol.ClassSymbol, FieldInitSummary> fieldInitSummaries = new HashMap<>();
+
+  private final ControlFlowGraphProvider cfgProvider;
+
+  /** Whether to try a {@link BackwardLocalNullnessQuery} before running forward dataflow. */
+  private final boolean demandDrivenLocalQueries;
+
+  private long backwardQueriesAnswered = 0;
+
+  private long backwardQueriesAbandoned = 0;
+
   // Use #instance to instantiate
   private AccessPathNullnessAnalysis(VisitorState state, NullAway analysis) {
     Config config = analysis.getConfig();
@@ -78,7 +112,13 @@ public final class AccessPathNullnessAnalysis {
             apContext,
             analysis,
             new CoreNullnessStoreInitializer(analysis.getGenericsChecks()));
-    this.dataFlow = new DataFlow(config.assertsEnabled(), handler);
+    this.cfgProvider = ControlFlowGraphProvider.instance(state.context, config, handler);
+    this.demandDrivenLocalQueries = config.useDemandDrivenLocalQueries();
+    this.dataFlow =
+        new DataFlow(cfgProvider, config.getDataflowCacheMaxWeight(), config.recordCacheStats());
+    if (config.recordCacheStats()) {
+      registerCacheStats(CacheStatsReporter.instance(state.context));
+    }
 
     if (config.checkContracts()) {
       this.contractNullnessPropagation =
@@ -87,6 +127,27 @@ public final class AccessPathNullnessAnalysis {
     }
   }
 
+  private void registerCacheStats(CacheStatsReporter reporter) {
+    reporter.addSummary("dataflow", dataFlow::cacheStatsSummary);
+    reporter.addSummary(
+        "dataflowPrepass",
+        () ->
+            String.format(
+                Locale.ROOT,
+                "NullAway dataflow pre-pass: %d methods checked without running dataflow",
+                methodsSkippedByPrepass + countMethodsSkippedByPrepass()));
+    if (demandDrivenLocalQueries) {
+      reporter.addSummary(
+          "demandDrivenLocalQueries",
+          () ->
+              String.format(
+                  Locale.ROOT,
+                  "NullAway demand-driven local queries: %d answered, %d fell back to dataflow",
+                  backwardQueriesAnswered,
+                  backwardQueriesAbandoned));
+    }
+  }
+
   /**
    * Get the per-Javac instance of the analysis.
    *
@@ -112,9 +173,71 @@ public final class AccessPathNullnessAnalysis {
    * @return nullness info for expression, from dataflow
    */
   public @Nullable Nullness getNullness(TreePath exprPath, Context context) {
+    TreePath enclosingPath = findEnclosingMethodOrLambdaOrInitializer(exprPath);
+    if (enclosingPath != null) {
+      // answer queries about locals that are non-null by their declaration alone without running
+      // the dataflow fixpoint over the whole method
+      TriviallyNonNullLocals locals =
+          triviallyNonNullLocals.computeIfAbsent(
+              enclosingPath.getLeaf(), TriviallyNonNullLocals::scan);
+      if (locals.isTriviallyNonNullRead(exprPath.getLeaf())) {
+        locals.answeredQueries++;
+        return Nullness.NONNULL;
+      }
+      locals.neededDataflow = true;
+      if (demandDrivenLocalQueries) {
+        Nullness nullness = backwardLocalQuery(exprPath.getLeaf(), enclosingPath);
+        if (nullness != null) {
+          return nullness;
+        }
+      }
+    }
     return dataFlow.expressionDataflow(exprPath, context, nullnessPropagation, false);
   }
 
+  /**
+   * Tries to answer a query about a read of a local with a {@link BackwardLocalNullnessQuery}, which
+   * only scans the blocks between the read and the local's definitions. Not worth it if forward
+   * dataflow has already been run over the enclosing code.
+   *
+   * @return the nullness of the read, or {@code null} if forward dataflow must be run instead
+   */
+  private @Nullable Nullness backwardLocalQuery(Tree expr, TreePath enclosingPath) {
+    if (!BackwardLocalNullnessQuery.isLocalRead(expr)
+        || dataFlow.hasCachedResult(enclosingPath, nullnessPropagation)) {
+      return null;
+    }
+    Nullness nullness =
+        BackwardLocalNullnessQuery.nullnessOfRead(
+            cfgProvider.getControlFlowGraph(enclosingPath), expr);
+    if (nullness != null) {
+      backwardQueriesAnswered++;
+    } else {
+      backwardQueriesAbandoned++;
+    }
+    return nullness;
+  }
+
+  /**
+   * Checks if a dataflow analysis is currently running, in which case nullness facts obtained from
+   * it may not be final.
+   *
+   * @return true if a dataflow analysis is running
+   */
+  public boolean isDataflowRunning() {
+    return dataFlow.isAnalysisRunning();
+  }
+
+  private long countMethodsSkippedByPrepass() {
+    long count = 0;
+    for (TriviallyNonNullLocals locals : triviallyNonNullLocals.values()) {
+      if (locals.answeredQueries > 0 && !locals.neededDataflow) {
+        count++;
+      }
+    }
+    return count;
+  }
+
   /**
    * Get the nullness info for an expression from the current running dataflow analysis (so it may
    * not be the final result).
@@ -148,6 +271,15 @@ public final class AccessPathNullnessAnalysis {
    * @return fields guaranteed to be nonnull at exit of method (or initializer block)
    */
   public Set<Element> getNonnullFieldsOfReceiverAtExit(TreePath path, Context context) {
+    FieldInitSummary summary = fieldInitSummary(path);
+    if (summary == null) {
+      return computeNonnullFieldsOfReceiverAtExit(path, context);
+    }
+    return summary.nonnullFieldsOfReceiverAtExit(
+        path.getLeaf(), () -> computeNonnullFieldsOfReceiverAtExit(path, context));
+  }
+
+  private Set<Element> computeNonnullFieldsOfReceiverAtExit(TreePath path, Context context) {
     NullnessStore nullnessResult = dataFlow.finalResult(path, context, nullnessPropagation);
     if (nullnessResult == null) {
       // this case can occur if the method always throws an exception
@@ -304,6 +436,15 @@ public final class AccessPathNullnessAnalysis {
    * @return fields guaranteed to be nonnull at exit of static method (or initializer block)
    */
   public Set<Element> getNonnullStaticFieldsAtExit(TreePath path, Context context) {
+    FieldInitSummary summary = fieldInitSummary(path);
+    if (summary == null) {
+      return computeNonnullStaticFieldsAtExit(path, context);
+    }
+    return summary.nonnullStaticFieldsAtExit(
+        path.getLeaf(), () -> computeNonnullStaticFieldsAtExit(path, context));
+  }
+
+  private Set<Element> computeNonnullStaticFieldsAtExit(TreePath path, Context context) {
     NullnessStore nullnessResult = dataFlow.finalResult(path, context, nullnessPropagation);
     if (nullnessResult == null) {
       // this case can occur if the method always throws an exception
@@ -313,6 +454,24 @@ public final class AccessPathNullnessAnalysis {
     return getNonnullStaticFields(nullnessResult);
   }
 
+  /**
+   * Returns the field initialization summary of the class declaring the method or initializer
+   * block which is the leaf of {@code path}, or {@code null} if there is no such class (e.g., for a
+   * lambda).
+   */
+  private @Nullable FieldInitSummary fieldInitSummary(TreePath path) {
+    Tree leaf = path.getLeaf();
+    Symbol.ClassSymbol classSymbol = null;
+    if (leaf instanceof MethodTree) {
+      classSymbol = ASTHelpers.getSymbol((MethodTree) leaf).enclClass();
+    } else if (leaf instanceof BlockTree && path.getParentPath().getLeaf() instanceof ClassTree) {
+      classSymbol = ASTHelpers.getSymbol((ClassTree) path.getParentPath().getLeaf());
+    }
+    return classSymbol == null
+        ? null
+        : fieldInitSummaries.computeIfAbsent(classSymbol, c -> new FieldInitSummary());
+  }
+
   private Set<Element> getNonnullStaticFields(NullnessStore nullnessResult) {
     Set<AccessPath> nonnullAccessPaths = nullnessResult.getAccessPathsWithValue(Nullness.NONNULL);
     Set<Element> result = new LinkedHashSet<>();
@@ -381,6 +540,10 @@ public final class AccessPathNullnessAnalysis {
 
   /** invalidate all caches */
   public void invalidateCaches() {
+    methodsSkippedByPrepass += countMethodsSkippedByPrepass();
+    triviallyNonNullLocals.clear();
+    fieldInitSummaries.clear();
     dataFlow.invalidateCaches();
+    apContext.clearInternedAccessPaths();
   }
 }
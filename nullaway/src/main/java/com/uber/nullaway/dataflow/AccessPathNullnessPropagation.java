@@ -213,8 +213,11 @@ public class AccessPathNullnessPropagation
   @Override
   public NullnessStore initialStore(
       UnderlyingAST underlyingAST, List<LocalVariableNode> parameters) {
-    return nullnessStoreInitializer.getInitialStore(
-        underlyingAST, parameters, handler, state.context, state.getTypes(), config);
+    NullnessStore store =
+        nullnessStoreInitializer.getInitialStore(
+            underlyingAST, parameters, handler, state.context, state.getTypes(), config);
+    // all stores of this analysis run are derived from the initial one, and so share its numbering
+    return config.useBitsetNullnessStores() ? store.withDenseAccessPathNumbering() : store;
   }
 
   @Override
@@ -613,7 +616,8 @@ public class AccessPathNullnessPropagation
                 "expected call to next(), instead saw "
                     + state.getSourceForNode(methodInv.getTree()));
           }
-          updates.set(AccessPath.replaceMapKey(mapGetPath, AccessPath.fromLocal(lhs)), NONNULL);
+          updates.set(
+              AccessPath.replaceMapKey(mapGetPath, AccessPath.fromLocal(lhs, apContext)), NONNULL);
         }
       }
     }
@@ -710,7 +714,7 @@ public class AccessPathNullnessPropagation
     Nullness nullness =
         hasPrimitiveType(node) || hasNonNullConstantValue(node)
             ? NONNULL
-            : values.valueOfLocalVariable(node, defaultAssumption);
+            : values.valueOfLocalVariable(node, defaultAssumption, apContext);
     return new RegularTransferResult<>(nullness, values);
   }
 
@@ -1300,12 +1304,12 @@ public class AccessPathNullnessPropagation
 
     @Override
     public void set(LocalVariableNode node, Nullness value) {
-      values.put(AccessPath.fromLocal(node), value);
+      values.put(AccessPath.fromLocal(node, apContext), value);
     }
 
     @Override
     public void set(VariableDeclarationNode node, Nullness value) {
-      values.put(AccessPath.fromVarDecl(node), value);
+      values.put(AccessPath.fromVarDecl(node, apContext), value);
     }
 
     @Override
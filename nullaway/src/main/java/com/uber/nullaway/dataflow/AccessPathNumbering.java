@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2025 Uber Technologies, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.uber.nullaway.dataflow;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A dense numbering of the access paths appearing in the stores of a single dataflow analysis run,
+ * i.e., of a single method, lambda or initializer. Numbers are handed out in order of first use,
+ * and index the bitsets of bitset-backed {@link NullnessStore}s.
+ */
+final class AccessPathNumbering {
+
+  private final Map<AccessPath, Integer> numbers = new HashMap<>();
+
+  private final List<AccessPath> paths = new ArrayList<>();
+
+  /** Returns the number of {@code path}, assigning it the next free number if it has none yet. */
+  int numberOf(AccessPath path) {
+    Integer number = numbers.get(path);
+    if (number == null) {
+      number = paths.size();
+      numbers.put(path, number);
+      paths.add(path);
+    }
+    return number;
+  }
+
+  /** Returns the number of {@code path}, or {@code -1} if it has not been numbered. */
+  int lookup(AccessPath path) {
+    Integer number = numbers.get(path);
+    return number == null ? -1 : number;
+  }
+
+  /** Returns the access path with the given number. */
+  AccessPath pathAt(int number) {
+    return paths.get(number);
+  }
+}
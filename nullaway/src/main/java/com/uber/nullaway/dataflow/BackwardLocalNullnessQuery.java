@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2025 Uber Technologies, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.uber.nullaway.dataflow;
+
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.code.Symbol;
+import com.uber.nullaway.Nullness;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.lang.model.element.ElementKind;
+import org.checkerframework.nullaway.dataflow.cfg.ControlFlowGraph;
+import org.checkerframework.nullaway.dataflow.cfg.block.Block;
+import org.checkerframework.nullaway.dataflow.cfg.block.ExceptionBlock;
+import org.checkerframework.nullaway.dataflow.cfg.node.ArrayAccessNode;
+import org.checkerframework.nullaway.dataflow.cfg.node.AssignmentNode;
+import org.checkerframework.nullaway.dataflow.cfg.node.FieldAccessNode;
+import org.checkerframework.nullaway.dataflow.cfg.node.LocalVariableNode;
+import org.checkerframework.nullaway.dataflow.cfg.node.MethodAccessNode;
+import org.checkerframework.nullaway.dataflow.cfg.node.MethodInvocationNode;
+import org.checkerframework.nullaway.dataflow.cfg.node.Node;
+import org.checkerframework.nullaway.dataflow.cfg.node.NullLiteralNode;
+import org.checkerframework.nullaway.dataflow.cfg.node.VariableDeclarationNode;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A demand-driven alternative to running {@link AccessPathNullnessPropagation} over a whole method,
+ * for queries about a single read of a local variable. Starting at the read, the query walks the
+ * CFG backward, block by block, and stops on each path at the nearest node that determines the
+ * local's value in the dataflow store: an assignment to the local, or a dereference of it (after
+ * which dataflow considers it non-null). The local's nullness at the read is then the least upper
+ * bound of the values of these definitions, exactly as the forward analysis would compute it.
+ *
+ * <p>The query gives up, returning {@code null} so that the caller falls back to the forward
+ * analysis, whenever it cannot be sure to agree with it: when a definition's value is not evident
+ * (e.g., the result of a method call), when the local is used in a way that dataflow may refine
+ * (a comparison, an {@code instanceof} test, an argument to a method that handlers may model as a
+ * null check, ...), when the walk reaches the method entry (parameters, and locals captured by a
+ * lambda, get their value from the initial store) or crosses an exceptional edge, and when it
+ * visits more than {@link #MAX_VISITED_BLOCKS} blocks.
+ */
+final class BackwardLocalNullnessQuery {
+
+  /** Maximum number of blocks a query may scan before it gives up. */
+  static final int MAX_VISITED_BLOCKS = 64;
+
+  private int remainingBlocks = MAX_VISITED_BLOCKS;
+
+  /** Set once the query has given up. */
+  private boolean gaveUp = false;
+
+  private BackwardLocalNullnessQuery() {}
+
+  /**
+   * Checks if {@code expr} is a read of a local variable, for which a query may succeed. This does
+   * not need the CFG, so it can be used to avoid building one for other expressions.
+   */
+  static boolean isLocalRead(Tree expr) {
+    if (!(expr instanceof IdentifierTree)) {
+      return false;
+    }
+    Symbol symbol = ASTHelpers.getSymbol(expr);
+    return symbol != null && symbol.getKind() == ElementKind.LOCAL_VARIABLE;
+  }
+
+  /**
+   * Computes the nullness of the local variable read by {@code expr}.
+   *
+   * @param cfg the CFG of the method, lambda or initializer containing {@code expr}
+   * @param expr an expression for which {@link #isLocalRead(Tree)} holds
+   * @return the nullness forward dataflow would compute for {@code expr}, or {@code null} if the
+   *     query gave up
+   */
+  static @Nullable Nullness nullnessOfRead(ControlFlowGraph cfg, Tree expr) {
+    Set<Node> nodes = cfg.getNodesCorrespondingToTree(expr);
+    if (nodes == null || nodes.size() != 1) {
+      // e.g., a read in a finally block, which is duplicated in the CFG
+      return null;
+    }
+    Node node = nodes.iterator().next();
+    if (!(node instanceof LocalVariableNode) || node.getType().getKind().isPrimitive()) {
+      return null;
+    }
+    return new BackwardLocalNullnessQuery().valueBefore((LocalVariableNode) node);
+  }
+
+  /** Returns the value of the local read by {@code read} in the store just before {@code read}. */
+  private @Nullable Nullness valueBefore(LocalVariableNode read) {
+    Block start = read.getBlock();
+    if (start == null) {
+      return null;
+    }
+    Symbol local = (Symbol) read.getElement();
+    List<Node> startNodes = start.getNodes();
+    int readIndex = 0;
+    while (readIndex < startNodes.size() && startNodes.get(readIndex) != read) {
+      readIndex++;
+    }
+    if (readIndex == startNodes.size()) {
+      return null;
+    }
+    Nullness result = null;
+    Nullness definition = scanBackward(startNodes, readIndex - 1, local);
+    if (gaveUp) {
+      return null;
+    }
+    if (definition != null) {
+      return definition;
+    }
+    // the start block itself may be reached again through a loop, in which case it is scanned in
+    // full, so it is not marked as visited yet
+    Set<Block> visited = new HashSet<>();
+    Deque<Block> worklist = new ArrayDeque<>();
+    if (!addPredecessors(start, visited, worklist)) {
+      return null;
+    }
+    while (!worklist.isEmpty()) {
+      Block block = worklist.pop();
+      if (--remainingBlocks < 0) {
+        return null;
+      }
+      List<Node> nodes = block.getNodes();
+      definition = scanBackward(nodes, nodes.size() - 1, local);
+      if (gaveUp) {
+        return null;
+      }
+      if (definition != null) {
+        result = result == null ? definition : result.leastUpperBound(definition);
+      } else if (!addPredecessors(block, visited, worklist)) {
+        return null;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Queues the predecessors of {@code block} that have not been visited yet.
+   *
+   * @return false if the local's value may flow into {@code block} from the method entry or along
+   *     an exceptional edge, in which case the query gives up
+   */
+  private static boolean addPredecessors(Block block, Set<Block> visited, Deque<Block> worklist) {
+    for (Block predecessor : block.getPredecessors()) {
+      if (predecessor.getType() == Block.BlockType.SPECIAL_BLOCK) {
+        // only the entry block can precede another block
+        return false;
+      }
+      if (predecessor instanceof ExceptionBlock
+          && ((ExceptionBlock) predecessor).getSuccessor() != block) {
+        // the store along an exceptional edge is the one before the throwing node
+        return false;
+      }
+      if (visited.add(predecessor)) {
+        worklist.push(predecessor);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Scans {@code nodes} backward from index {@code from}, for the nearest definition of {@code
+   * local}.
+   *
+   * @return the value of the definition, or {@code null} if there is none or the query gave up
+   */
+  private @Nullable Nullness scanBackward(List<Node> nodes, int from, Symbol local) {
+    for (int i = from; i >= 0 && !gaveUp; i--) {
+      Node node = nodes.get(i);
+      Nullness definition = definitionValue(node, local);
+      if (definition != null || gaveUp) {
+        return definition;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the value {@code node} gives {@code local} in the store, or {@code null} if it does not
+   * change it. Gives up if {@code node} may change it in a way this query does not model.
+   */
+  private @Nullable Nullness definitionValue(Node node, Symbol local) {
+    if (node instanceof AssignmentNode) {
+      AssignmentNode assignment = (AssignmentNode) node;
+      Node target = assignment.getTarget();
+      if (isRead(target, local)) {
+        return assignedValue(assignment.getExpression());
+      }
+      if ((target instanceof FieldAccessNode
+              && isRead(((FieldAccessNode) target).getReceiver(), local))
+          || (target instanceof ArrayAccessNode
+              && isRead(((ArrayAccessNode) target).getArray(), local))) {
+        return Nullness.NONNULL;
+      }
+      // the local being assigned somewhere else does not change its own value
+      return null;
+    }
+    if (node instanceof MethodInvocationNode) {
+      MethodInvocationNode invocation = (MethodInvocationNode) node;
+      if (isRead(invocation.getTarget().getReceiver(), local)) {
+        Symbol.MethodSymbol callee = ASTHelpers.getSymbol(invocation.getTree());
+        if (callee == null || callee.isStatic() || usesLocal(invocation.getArguments(), local)) {
+          gaveUp = true;
+          return null;
+        }
+        return Nullness.NONNULL;
+      }
+    } else if (node instanceof FieldAccessNode) {
+      FieldAccessNode fieldAccess = (FieldAccessNode) node;
+      if (isRead(fieldAccess.getReceiver(), local)) {
+        if (fieldAccess.isStatic()) {
+          gaveUp = true;
+          return null;
+        }
+        return Nullness.NONNULL;
+      }
+    } else if (node instanceof ArrayAccessNode) {
+      if (isRead(((ArrayAccessNode) node).getArray(), local)) {
+        return Nullness.NONNULL;
+      }
+    } else if (node instanceof MethodAccessNode || node instanceof LocalVariableNode) {
+      // neither changes the store; a dereferencing call is handled at its invocation node
+      return null;
+    }
+    // any other use of the local, and in particular any declaration of it, may refine its value
+    if (usesLocal(node.getOperands(), local)
+        || (node instanceof VariableDeclarationNode
+            && ASTHelpers.getSymbol(((VariableDeclarationNode) node).getTree()) == local)) {
+      gaveUp = true;
+    }
+    return null;
+  }
+
+  /** Returns the value that assigning {@code rhs} stores, or gives up if it is not evident. */
+  private @Nullable Nullness assignedValue(Node rhs) {
+    if (rhs instanceof NullLiteralNode) {
+      return Nullness.NULL;
+    }
+    Tree rhsTree = rhs.getTree();
+    if (rhsTree instanceof ExpressionTree
+        && TriviallyNonNullLocals.isTriviallyNonNull((ExpressionTree) rhsTree)) {
+      return Nullness.NONNULL;
+    }
+    if (rhs instanceof LocalVariableNode && !rhs.getType().getKind().isPrimitive()) {
+      // a copy of another local; find that local's value before the copy, sharing the budget
+      Nullness value = valueBefore((LocalVariableNode) rhs);
+      if (value != null) {
+        return value;
+      }
+    }
+    gaveUp = true;
+    return null;
+  }
+
+  private static boolean isRead(Node node, Symbol local) {
+    return node instanceof LocalVariableNode && ((LocalVariableNode) node).getElement() == local;
+  }
+
+  private static boolean usesLocal(Iterable<Node> nodes, Symbol local) {
+    for (Node node : nodes) {
+      if (isRead(node, local)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2025 Uber Technologies, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.uber.nullaway.dataflow;
+
+import static com.uber.nullaway.NullabilityUtil.castToNonNull;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.util.TreePath;
+import com.sun.tools.javac.processing.JavacProcessingEnvironment;
+import com.sun.tools.javac.util.Context;
+import com.uber.nullaway.Config;
+import com.uber.nullaway.dataflow.cfg.NullAwayCFGBuilder;
+import com.uber.nullaway.handlers.Handler;
+import java.util.HashSet;
+import java.util.Set;
+import javax.annotation.processing.ProcessingEnvironment;
+import org.checkerframework.nullaway.dataflow.cfg.ControlFlowGraph;
+import org.checkerframework.nullaway.dataflow.cfg.UnderlyingAST;
+
+/**
+ * Builds and caches the control flow graphs of methods, lambdas and initializers. There is one
+ * instance per javac context, so every NullAway analysis over a given method (the main nullness
+ * propagation, the contract checking propagation, ...) shares one CFG, built by a single run of
+ * {@link NullAwayCFGBuilder} and thus a single pass of the handlers' CFG rewrites.
+ *
+ * <p>CFGs built by Error Prone's own dataflow cannot be shared here: they come from a differently
+ * shaded copy of the Checker Framework dataflow library, and lack the handlers' rewrites.
+ */
+public final class ControlFlowGraphProvider {
+
+  private static final Context.Key<ControlFlowGraphProvider> CFG_PROVIDER_KEY =
+      new Context.Key<>();
+
+  private final ProcessingEnvironment env;
+
+  private final boolean assertsEnabled;
+
+  private final Handler handler;
+
+  private final boolean recordStats;
+
+  /**
+   * Keyed by the path to the method, lambda or initializer. Bounded by the total number of CFG
+   * nodes; see {@code -XepOpt:NullAway:CfgCacheMaxWeight}.
+   */
+  private final LoadingCache<TreePath, ControlFlowGraph> cfgCache;
+
+  /**
+   * Paths of all CFGs built since the cache was last invalidated, to count CFGs that are rebuilt
+   * after being evicted. Only maintained when recording statistics.
+   */
+  private final Set<TreePath> builtCfgs = new HashSet<>();
+
+  private long rebuilds = 0;
+
+  private ControlFlowGraphProvider(Context context, Config config, Handler handler) {
+    this.env = JavacProcessingEnvironment.instance(context);
+    this.assertsEnabled = config.assertsEnabled();
+    this.handler = handler;
+    this.recordStats = config.recordCacheStats();
+    // a single segment, so that the whole weight budget is available to any one entry; the cache
+    // is only accessed from the javac thread
+    long maxWeight = config.getCfgCacheMaxWeight();
+    CacheBuilder<TreePath, ControlFlowGraph> builder =
+        CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumWeight(maxWeight)
+            .weigher((TreePath path, ControlFlowGraph cfg) -> DataFlow.cacheWeight(cfg, maxWeight));
+    if (recordStats) {
+      builder.recordStats();
+    }
+    this.cfgCache =
+        builder.build(
+            new CacheLoader<TreePath, ControlFlowGraph>() {
+              @Override
+              public ControlFlowGraph load(TreePath codePath) {
+                if (recordStats && !builtCfgs.add(codePath)) {
+                  rebuilds++;
+                }
+                return build(codePath);
+              }
+            });
+  }
+
+  /**
+   * Get the CFG provider for the given javac context, creating it if needed. We ensure there is one
+   * instance per context (as opposed to using static fields) to avoid memory leaks.
+   *
+   * @param context the javac context
+   * @param config NullAway config, for the cache and CFG building options
+   * @param handler the handler, which may rewrite CFGs while they are being built
+   * @return the CFG provider for {@code context}
+   */
+  public static ControlFlowGraphProvider instance(
+      Context context, Config config, Handler handler) {
+    ControlFlowGraphProvider provider = context.get(CFG_PROVIDER_KEY);
+    if (provider == null) {
+      provider = new ControlFlowGraphProvider(context, config, handler);
+      context.put(CFG_PROVIDER_KEY, provider);
+    }
+    return provider;
+  }
+
+  /**
+   * Returns the CFG for the method, lambda or initializer which is the leaf of {@code codePath},
+   * building it if it is not cached.
+   *
+   * @param codePath path to a method, lambda or initializer
+   * @return the CFG
+   */
+  public ControlFlowGraph getControlFlowGraph(TreePath codePath) {
+    return cfgCache.getUnchecked(codePath);
+  }
+
+  /** Clear the cached CFGs. */
+  public void invalidateCaches() {
+    cfgCache.invalidateAll();
+    builtCfgs.clear();
+  }
+
+  /** Statistics of the CFG cache; all zero unless statistics are being recorded. */
+  CacheStats stats() {
+    return cfgCache.stats();
+  }
+
+  /** Number of CFGs built again after having been evicted. */
+  long rebuildCount() {
+    return rebuilds;
+  }
+
+  private ControlFlowGraph build(TreePath codePath) {
+    TreePath bodyPath;
+    UnderlyingAST ast;
+    if (codePath.getLeaf() instanceof LambdaExpressionTree) {
+      LambdaExpressionTree lambdaExpressionTree = (LambdaExpressionTree) codePath.getLeaf();
+      MethodTree enclMethod = ASTHelpers.findEnclosingNode(codePath, MethodTree.class);
+      ClassTree enclClass = castToNonNull(ASTHelpers.findEnclosingNode(codePath, ClassTree.class));
+      ast = new UnderlyingAST.CFGLambda(lambdaExpressionTree, enclClass, enclMethod);
+      bodyPath = new TreePath(codePath, lambdaExpressionTree.getBody());
+    } else if (codePath.getLeaf() instanceof MethodTree) {
+      MethodTree method = (MethodTree) codePath.getLeaf();
+      ClassTree enclClass = castToNonNull(ASTHelpers.findEnclosingNode(codePath, ClassTree.class));
+      ast = new UnderlyingAST.CFGMethod(method, enclClass);
+      BlockTree body = method.getBody();
+      if (body == null) {
+        throw new IllegalStateException(
+            "trying to compute CFG for method " + method + ", which has no body");
+      }
+      bodyPath = new TreePath(codePath, body);
+    } else {
+      // must be an initializer per findEnclosingMethodOrLambdaOrInitializer
+      ast =
+          new UnderlyingAST.CFGStatement(
+              codePath.getLeaf(), (ClassTree) codePath.getParentPath().getLeaf());
+      bodyPath = codePath;
+    }
+
+    return NullAwayCFGBuilder.build(bodyPath, ast, assertsEnabled, !assertsEnabled, env, handler);
+  }
+}
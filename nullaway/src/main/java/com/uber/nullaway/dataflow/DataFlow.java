@@ -18,7 +18,6 @@
 
 package com.uber.nullaway.dataflow;
 
-import static com.uber.nullaway.NullabilityUtil.castToNonNull;
 import static com.uber.nullaway.NullabilityUtil.findEnclosingMethodOrLambdaOrInitializer;
 
 import com.google.auto.value.AutoValue;
@@ -26,22 +25,21 @@ import com.google.common.base.Preconditions;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
-import com.google.errorprone.util.ASTHelpers;
+import com.google.common.cache.Weigher;
 import com.sun.source.tree.BlockTree;
-import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.ExpressionTree;
 import com.sun.source.tree.LambdaExpressionTree;
 import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.Tree;
 import com.sun.source.tree.VariableTree;
 import com.sun.source.util.TreePath;
-import com.sun.tools.javac.processing.JavacProcessingEnvironment;
 import com.sun.tools.javac.util.Context;
 import com.uber.nullaway.NullabilityUtil;
-import com.uber.nullaway.dataflow.cfg.NullAwayCFGBuilder;
-import com.uber.nullaway.handlers.Handler;
-import javax.annotation.processing.ProcessingEnvironment;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 import org.checkerframework.nullaway.dataflow.analysis.AbstractValue;
 import org.checkerframework.nullaway.dataflow.analysis.Analysis;
 import org.checkerframework.nullaway.dataflow.analysis.AnalysisResult;
@@ -50,7 +48,6 @@ import org.checkerframework.nullaway.dataflow.analysis.ForwardTransferFunction;
 import org.checkerframework.nullaway.dataflow.analysis.Store;
 import org.checkerframework.nullaway.dataflow.analysis.TransferFunction;
 import org.checkerframework.nullaway.dataflow.cfg.ControlFlowGraph;
-import org.checkerframework.nullaway.dataflow.cfg.UnderlyingAST;
 import org.jspecify.annotations.Nullable;
 
 /**
@@ -58,92 +55,107 @@ import org.jspecify.annotations.Nullable;
  *
  * <p>Modified from Error Prone code for more aggressive caching, and to avoid static state. See
  * {@link com.google.errorprone.dataflow.DataFlow}
+ *
+ * <p>Instances, like the rest of NullAway's per-compilation state, are confined to the thread
+ * running Error Prone. Building CFGs and running the transfer functions both go through javac's
+ * symbol table and type utilities, which complete symbols lazily and are not thread-safe, and
+ * through handlers with unsynchronized caches of their own; so analyses of different methods cannot
+ * be run on other threads. This rules out both running whole classes in parallel and precomputing
+ * results in the background while the matcher scans the class, since the matcher uses the same
+ * javac state. Separate compilations in one JVM (e.g., in a build daemon) can run in parallel, as
+ * all state is keyed by the javac {@link Context}.
+ *
+ * <p>Analyses are run lazily, on the first query about a method. Eagerly analyzing every method of
+ * a class, even on this thread, would only add work: methods without nullness queries, or whose
+ * queries are answered without dataflow (see {@link AccessPathNullnessAnalysis}), never need a
+ * fixpoint.
  */
 public final class DataFlow {
 
   /*
-   * We cache both the control flow graph and the analyses that are run on it.
+   * We cache both the control flow graph (in the shared ControlFlowGraphProvider) and the analyses
+   * that are run on it.
    *
    * Unlike in Error Prone's core analyses, sometimes we do not complete all analyses on a CFG
-   * before moving on to the next one.  So, here we set a reasonable maximum size to avoid leaks,
-   * and also expose an API method to clear the caches.
+   * before moving on to the next one.  So, here we bound the total size of the cached analyses (in
+   * CFG nodes, see -XepOpt:NullAway:DataflowCacheMaxWeight; the CFG cache has its own bound,
+   * -XepOpt:NullAway:CfgCacheMaxWeight) to avoid leaks, and also expose an API method to clear the
+   * caches.  Bounding by node count rather than by number of entries keeps all CFGs of a class with
+   * many small lambdas cached, while still evicting the results for huge methods.
    */
-  private static final int MAX_CACHE_SIZE = 50;
 
-  private final boolean assertsEnabled;
+  private final ControlFlowGraphProvider cfgProvider;
 
-  private final Handler handler;
+  private final LoadingCache<AnalysisParams, Analysis<?, ?, ?>> analysisCache;
 
-  DataFlow(boolean assertsEnabled, Handler handler) {
-    this.assertsEnabled = assertsEnabled;
-    this.handler = handler;
-  }
+  /**
+   * The analyses that have already been run to completion, keyed by their {@link AnalysisParams}.
+   * Used to avoid re-running analyses needlessly. We store the {@link Analysis} object itself, so
+   * that an analysis evicted from {@link #analysisCache} and then re-created is run again.
+   */
+  private final Cache<AnalysisParams, Analysis<?, ?, ?>> alreadyRunAnalyses;
 
-  private final LoadingCache<AnalysisParams, Analysis<?, ?, ?>> analysisCache =
-      CacheBuilder.newBuilder()
-          .maximumSize(MAX_CACHE_SIZE)
-          .build(
-              new CacheLoader<AnalysisParams, Analysis<?, ?, ?>>() {
-                @Override
-                public Analysis<?, ?, ?> load(AnalysisParams key) {
-                  ForwardTransferFunction<?, ?> transfer = key.transferFunction();
-
-                  @SuppressWarnings({"unchecked", "rawtypes"})
-                  Analysis<?, ?, ?> analysis = new ForwardAnalysisImpl<>(transfer);
-                  return analysis;
-                }
-              });
+  /**
+   * The CFGs and analyses of the analyses currently being performed. These are looked up before
+   * the caches, as queries about a running analysis (see {@link #expressionDataflow}) must see the
+   * very same objects even if the caches have evicted them in the meantime.
+   */
+  private final Map<TreePath, ControlFlowGraph> runningCfgs = new HashMap<>();
+
+  private final Map<AnalysisParams, Analysis<?, ?, ?>> runningAnalyses = new HashMap<>();
 
   /**
-   * Set of {@link AnalysisParams} for which the analysis has already been run to completion. Used
-   * to avoid re-running analyses needlessly
+   * Creates the analysis caches.
+   *
+   * @param cfgProvider provider of the CFGs the analyses run on
+   * @param maxCacheWeight the maximum total weight, in CFG nodes, of each of the analysis caches
+   * @param recordStats whether to record hit, miss and eviction counts
    */
-  private final Cache<AnalysisParams, Boolean> alreadyRunAnalyses =
-      CacheBuilder.newBuilder().maximumSize(MAX_CACHE_SIZE).build();
-
-  private final LoadingCache<CfgParams, ControlFlowGraph> cfgCache =
-      CacheBuilder.newBuilder()
-          .maximumSize(MAX_CACHE_SIZE)
-          .build(
-              new CacheLoader<CfgParams, ControlFlowGraph>() {
-                @Override
-                public ControlFlowGraph load(CfgParams key) {
-                  TreePath codePath = key.codePath();
-                  TreePath bodyPath;
-                  UnderlyingAST ast;
-                  ProcessingEnvironment env = key.environment();
-                  if (codePath.getLeaf() instanceof LambdaExpressionTree) {
-                    LambdaExpressionTree lambdaExpressionTree =
-                        (LambdaExpressionTree) codePath.getLeaf();
-                    MethodTree enclMethod =
-                        ASTHelpers.findEnclosingNode(codePath, MethodTree.class);
-                    ClassTree enclClass =
-                        castToNonNull(ASTHelpers.findEnclosingNode(codePath, ClassTree.class));
-                    ast = new UnderlyingAST.CFGLambda(lambdaExpressionTree, enclClass, enclMethod);
-                    bodyPath = new TreePath(codePath, lambdaExpressionTree.getBody());
-                  } else if (codePath.getLeaf() instanceof MethodTree) {
-                    MethodTree method = (MethodTree) codePath.getLeaf();
-                    ClassTree enclClass =
-                        castToNonNull(ASTHelpers.findEnclosingNode(codePath, ClassTree.class));
-                    ast = new UnderlyingAST.CFGMethod(method, enclClass);
-                    BlockTree body = method.getBody();
-                    if (body == null) {
-                      throw new IllegalStateException(
-                          "trying to compute CFG for method " + method + ", which has no body");
-                    }
-                    bodyPath = new TreePath(codePath, body);
-                  } else {
-                    // must be an initializer per findEnclosingMethodOrLambdaOrInitializer
-                    ast =
-                        new UnderlyingAST.CFGStatement(
-                            codePath.getLeaf(), (ClassTree) codePath.getParentPath().getLeaf());
-                    bodyPath = codePath;
+  DataFlow(ControlFlowGraphProvider cfgProvider, long maxCacheWeight, boolean recordStats) {
+    this.cfgProvider = cfgProvider;
+    this.analysisCache =
+        newCacheBuilder(maxCacheWeight, recordStats)
+            .build(
+                new CacheLoader<AnalysisParams, Analysis<?, ?, ?>>() {
+                  @Override
+                  public Analysis<?, ?, ?> load(AnalysisParams key) {
+                    ForwardTransferFunction<?, ?> transfer = key.transferFunction();
+
+                    @SuppressWarnings({"unchecked", "rawtypes"})
+                    Analysis<?, ?, ?> analysis = new ForwardAnalysisImpl<>(transfer);
+                    return analysis;
                   }
+                });
+    this.alreadyRunAnalyses = newCacheBuilder(maxCacheWeight, recordStats).build();
+  }
 
-                  return NullAwayCFGBuilder.build(
-                      bodyPath, ast, assertsEnabled, !assertsEnabled, env, handler);
-                }
-              });
+  private static CacheBuilder<AnalysisParams, Analysis<?, ?, ?>> newCacheBuilder(
+      long maxWeight, boolean recordStats) {
+    // a single segment, so that the whole weight budget is available to any one entry; the caches
+    // are only accessed from the javac thread
+    Weigher<AnalysisParams, Analysis<?, ?, ?>> weigher =
+        (params, analysis) -> cacheWeight(params.cfg(), maxWeight);
+    CacheBuilder<AnalysisParams, Analysis<?, ?, ?>> builder =
+        CacheBuilder.newBuilder().concurrencyLevel(1).maximumWeight(maxWeight).weigher(weigher);
+    if (recordStats) {
+      builder.recordStats();
+    }
+    return builder;
+  }
+
+  /**
+   * Returns the weight of a cache entry for the given CFG: its number of nodes, capped at half the
+   * maximum weight of the cache. Without the cap, the entry for a method whose CFG is heavier than
+   * the whole cache would be evicted as soon as it is inserted, and every query on that method
+   * would build the CFG and run the analysis again.
+   *
+   * @param cfg the CFG
+   * @param maxWeight the maximum weight of the cache
+   * @return the weight of the entry, at least 1
+   */
+  static int cacheWeight(ControlFlowGraph cfg, long maxWeight) {
+    return (int) Math.max(1, Math.min(cfg.getAllNodes().size(), maxWeight / 2));
+  }
 
   /**
    * Run the {@code transfer} dataflow analysis over the method, lambda or initializer which is the
@@ -155,23 +167,34 @@ public final class DataFlow {
    * analysis result is the same.
    *
    * @param path path to method, lambda or initializer
-   * @param context Javac context
    * @param transfer transfer functions
    * @param performAnalysis whether dataflow analysis should be initiated via a call to {@code
    *     performAnalysis}. If the analysis is already running, this parameter should be {@code
    *     false}; dataflow cannot be run recursively.
    */
   private <A extends AbstractValue<A>, S extends Store<S>, T extends ForwardTransferFunction<A, S>>
-      Result<A, S, T> dataflow(
-          TreePath path, Context context, T transfer, boolean performAnalysis) {
-    ProcessingEnvironment env = JavacProcessingEnvironment.instance(context);
-    ControlFlowGraph cfg = cfgCache.getUnchecked(CfgParams.create(path, env));
+      Result<A, S, T> dataflow(TreePath path, T transfer, boolean performAnalysis) {
+    ControlFlowGraph runningCfg = runningCfgs.get(path);
+    ControlFlowGraph cfg =
+        runningCfg != null ? runningCfg : cfgProvider.getControlFlowGraph(path);
     AnalysisParams aparams = AnalysisParams.create(transfer, cfg);
+    Analysis<?, ?, ?> runningAnalysis = runningAnalyses.get(aparams);
     @SuppressWarnings("unchecked")
-    Analysis<A, S, T> analysis = (Analysis<A, S, T>) analysisCache.getUnchecked(aparams);
-    if (performAnalysis && alreadyRunAnalyses.getIfPresent(aparams) == null) {
-      analysis.performAnalysis(cfg);
-      alreadyRunAnalyses.put(aparams, Boolean.TRUE);
+    Analysis<A, S, T> analysis =
+        (Analysis<A, S, T>)
+            (runningAnalysis != null ? runningAnalysis : analysisCache.getUnchecked(aparams));
+    if (performAnalysis && alreadyRunAnalyses.getIfPresent(aparams) != analysis) {
+      boolean pinnedCfg = runningCfgs.putIfAbsent(path, cfg) == null;
+      runningAnalyses.put(aparams, analysis);
+      try {
+        analysis.performAnalysis(cfg);
+      } finally {
+        runningAnalyses.remove(aparams);
+        if (pinnedCfg) {
+          runningCfgs.remove(path);
+        }
+      }
+      alreadyRunAnalyses.put(aparams, analysis);
     }
 
     return new Result<>() {
@@ -187,6 +210,25 @@ public final class DataFlow {
     };
   }
 
+  /**
+   * Checks if the results of the {@code transfer} analysis over the method, lambda or initializer
+   * which is the leaf of {@code path} are cached, so that queries about it need not run dataflow.
+   *
+   * @param path path to method, lambda or initializer
+   * @param transfer transfer functions
+   * @return true if the analysis has been run and its results are still cached
+   */
+  boolean hasCachedResult(TreePath path, ForwardTransferFunction<?, ?> transfer) {
+    AnalysisParams aparams = AnalysisParams.create(transfer, cfgProvider.getControlFlowGraph(path));
+    Analysis<?, ?, ?> analysis = alreadyRunAnalyses.getIfPresent(aparams);
+    return analysis != null && analysisCache.getIfPresent(aparams) == analysis;
+  }
+
+  /** Returns true if some analysis is currently being run to its fixpoint. */
+  boolean isAnalysisRunning() {
+    return !runningAnalyses.isEmpty();
+  }
+
   /**
    * Get the control flow graph (GFG) for a given expression.
    *
@@ -205,8 +247,7 @@ public final class DataFlow {
       throw new IllegalArgumentException(
           "Cannot get CFG for node outside a method, lambda, or initializer");
     }
-    return dataflow(enclosingMethodOrLambdaOrInitializer, context, transfer, true)
-        .getControlFlowGraph();
+    return dataflow(enclosingMethodOrLambdaOrInitializer, transfer, true).getControlFlowGraph();
   }
 
   /**
@@ -232,7 +273,6 @@ public final class DataFlow {
                   Preconditions.checkNotNull(
                       findEnclosingMethodOrLambdaOrInitializer(exprPath),
                       "expression is not inside a method, lambda or initializer block!"),
-                  context,
                   transfer,
                   false)
               .getAnalysis();
@@ -265,7 +305,7 @@ public final class DataFlow {
         "Leaf of methodPath must be of type MethodTree, LambdaExpressionTree, BlockTree, or VariableTree, but was %s",
         leaf.getClass().getName());
 
-    return dataflow(path, context, transfer, true).getAnalysis().getRegularExitStore();
+    return dataflow(path, transfer, true).getAnalysis().getRegularExitStore();
   }
 
   public <A extends AbstractValue<A>, S extends Store<S>, T extends ForwardTransferFunction<A, S>>
@@ -281,7 +321,7 @@ public final class DataFlow {
    */
   public <A extends AbstractValue<A>, S extends Store<S>, T extends ForwardTransferFunction<A, S>>
       @Nullable S resultBefore(TreePath exprPath, Context context, T transfer) {
-    AnalysisResult<A, S> analysisResult = resultFor(exprPath, context, transfer);
+    AnalysisResult<A, S> analysisResult = resultFor(exprPath, transfer);
     return analysisResult == null ? null : analysisResult.getStoreBefore(exprPath.getLeaf());
   }
 
@@ -293,11 +333,11 @@ public final class DataFlow {
         "Leaf of exprPath must be of type ExpressionTree, but was %s",
         leaf.getClass().getName());
 
-    return resultFor(exprPath, context, transfer);
+    return resultFor(exprPath, transfer);
   }
 
   private <A extends AbstractValue<A>, S extends Store<S>, T extends ForwardTransferFunction<A, S>>
-      @Nullable AnalysisResult<A, S> resultFor(TreePath exprPath, Context context, T transfer) {
+      @Nullable AnalysisResult<A, S> resultFor(TreePath exprPath, T transfer) {
     TreePath enclosingPath = NullabilityUtil.findEnclosingMethodOrLambdaOrInitializer(exprPath);
     if (enclosingPath == null) {
       throw new RuntimeException("expression is not inside a method, lambda or initializer block!");
@@ -315,32 +355,37 @@ public final class DataFlow {
     // *before* any unboxing operations (like invoking intValue() on an Integer).  This is
     // important,
     // e.g., for actually checking that the unboxing operation is legal.
-    return dataflow(enclosingPath, context, transfer, true).getAnalysis().getResult();
+    return dataflow(enclosingPath, transfer, true).getAnalysis().getResult();
   }
 
   /** clear the CFG and analysis caches */
   public void invalidateCaches() {
-    cfgCache.invalidateAll();
+    cfgProvider.invalidateCaches();
     analysisCache.invalidateAll();
     alreadyRunAnalyses.invalidateAll();
   }
 
-  @AutoValue
-  abstract static class CfgParams {
-    // Should not be used for hashCode or equals
-    private @Nullable ProcessingEnvironment environment;
-
-    private static CfgParams create(TreePath codePath, ProcessingEnvironment environment) {
-      CfgParams cp = new AutoValue_DataFlow_CfgParams(codePath);
-      cp.environment = environment;
-      return cp;
-    }
-
-    ProcessingEnvironment environment() {
-      return castToNonNull(environment);
-    }
-
-    abstract TreePath codePath();
+  /**
+   * Returns a one-line summary of the cache statistics recorded so far, for all top-level classes.
+   * Evictions only count entries evicted for exceeding the maximum weight, not invalidations.
+   * Counts are all zero unless statistics are being recorded.
+   *
+   * @return summary of hits, misses, evictions and CFG rebuilds
+   */
+  public String cacheStatsSummary() {
+    CacheStats cfgStats = cfgProvider.stats();
+    CacheStats analysisStats = analysisCache.stats();
+    return String.format(
+        Locale.ROOT,
+        "NullAway dataflow caches: CFGs: %d hits, %d misses, %d evictions, %d rebuilds;"
+            + " analyses: %d hits, %d misses, %d evictions",
+        cfgStats.hitCount(),
+        cfgStats.missCount(),
+        cfgStats.evictionCount(),
+        cfgProvider.rebuildCount(),
+        analysisStats.hitCount(),
+        analysisStats.missCount(),
+        analysisStats.evictionCount());
   }
 
   @AutoValue
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2025 Uber Technologies, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.uber.nullaway.dataflow;
+
+import com.google.common.collect.ImmutableSet;
+import com.sun.source.tree.Tree;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import javax.lang.model.element.Element;
+
+/**
+ * For a single class, the fields that each of its constructors, initializer blocks and
+ * (initializer or helper) methods leaves non-null at exit, as computed by dataflow. Field
+ * initialization checking asks for these facts about the same members many times over (once per
+ * constructor for each safe init method it calls, once per field read before initialization, ...);
+ * the summary computes each of them once.
+ */
+public final class FieldInitSummary {
+
+  private final Map<Tree, ImmutableSet<Element>> receiverFieldsAtExit = new HashMap<>();
+
+  private final Map<Tree, ImmutableSet<Element>> staticFieldsAtExit = new HashMap<>();
+
+  /**
+   * Returns the instance fields of the receiver that {@code member} leaves non-null at exit.
+   *
+   * @param member a method or initializer block of the class
+   * @param compute computes the fields, if they are not known yet
+   * @return the fields
+   */
+  ImmutableSet<Element> nonnullFieldsOfReceiverAtExit(Tree member, Supplier<Set<Element>> compute) {
+    return lookup(receiverFieldsAtExit, member, compute);
+  }
+
+  /**
+   * Returns the static fields that {@code member} leaves non-null at exit.
+   *
+   * @param member a static method or initializer block of the class
+   * @param compute computes the fields, if they are not known yet
+   * @return the fields
+   */
+  ImmutableSet<Element> nonnullStaticFieldsAtExit(Tree member, Supplier<Set<Element>> compute) {
+    return lookup(staticFieldsAtExit, member, compute);
+  }
+
+  private static ImmutableSet<Element> lookup(
+      Map<Tree, ImmutableSet<Element>> cache, Tree member, Supplier<Set<Element>> compute) {
+    ImmutableSet<Element> fields = cache.get(member);
+    if (fields == null) {
+      // not computeIfAbsent, as computing may run dataflow, which may ask for other summaries
+      fields = ImmutableSet.copyOf(compute.get());
+      cache.put(member, fields);
+    }
+    return fields;
+  }
+}
@@ -17,19 +17,15 @@
 package com.uber.nullaway.dataflow;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.collect.Sets.intersection;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 import com.google.errorprone.VisitorState;
 import com.uber.nullaway.Nullness;
 import com.uber.nullaway.dataflow.AccessPath.IteratorContentsKey;
-import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.Modifier;
@@ -43,15 +39,21 @@ import org.jspecify.annotations.Nullable;
 
 /**
  * Highly based on {@link com.google.errorprone.dataflow.LocalStore}, but for {@link AccessPath}s.
+ *
+ * <p>By default, contents are kept in a {@link PersistentHashMap}, so that deriving a store from
+ * another one (via {@link #toBuilder()}) only allocates the trie nodes on the paths to the updated
+ * access paths, and joins can reuse whatever the two stores share. Alternatively, stores of an
+ * analysis run can keep their contents as bitsets over a per-run numbering of access paths (see
+ * {@code NullnessStoreContents.Bitsets} and {@code withDenseAccessPathNumbering()}).
  */
 public class NullnessStore implements Store<NullnessStore> {
 
-  private static final NullnessStore EMPTY = new NullnessStore(ImmutableMap.of());
+  private static final NullnessStore EMPTY = new NullnessStore(NullnessStoreContents.Trie.EMPTY);
 
-  private final ImmutableMap<AccessPath, Nullness> contents;
+  private final NullnessStoreContents contents;
 
-  private NullnessStore(Map<AccessPath, Nullness> contents) {
-    this.contents = ImmutableMap.copyOf(contents);
+  private NullnessStore(NullnessStoreContents contents) {
+    this.contents = contents;
   }
 
   /**
@@ -63,15 +65,33 @@ public class NullnessStore implements Store<NullnessStore> {
     return EMPTY;
   }
 
+  /**
+   * Returns a store with the same facts as this one, kept as bitsets over a fresh numbering of
+   * access paths. Stores derived from the result share its numbering, so that joining and
+   * comparing them are word-parallel operations. Meant to be applied to the initial store of an
+   * analysis run.
+   *
+   * @return a bitset-backed copy of this store
+   */
+  NullnessStore withDenseAccessPathNumbering() {
+    NullnessStoreContents numbered = NullnessStoreContents.Bitsets.empty();
+    for (Map.Entry<AccessPath, Nullness> entry : contents) {
+      numbered = numbered.put(entry.getKey(), entry.getValue());
+    }
+    return new NullnessStore(numbered);
+  }
+
   /**
    * Get the nullness for a local variable.
    *
    * @param node node representing local variable
    * @param defaultValue default value if we have no fact
+   * @param apContext the current access path context information
    * @return fact associated with local
    */
-  public Nullness valueOfLocalVariable(LocalVariableNode node, Nullness defaultValue) {
-    return contents.getOrDefault(AccessPath.fromLocal(node), defaultValue);
+  public Nullness valueOfLocalVariable(
+      LocalVariableNode node, Nullness defaultValue, AccessPath.AccessPathContext apContext) {
+    return valueOrDefault(AccessPath.fromLocal(node, apContext), defaultValue);
   }
 
   /**
@@ -87,7 +107,7 @@ public class NullnessStore implements Store<NullnessStore> {
     if (path == null) {
       return defaultValue;
     }
-    return contents.getOrDefault(path, defaultValue);
+    return valueOrDefault(path, defaultValue);
   }
 
   /**
@@ -106,23 +126,27 @@ public class NullnessStore implements Store<NullnessStore> {
     if (accessPath == null) {
       return defaultValue;
     }
-    return contents.getOrDefault(accessPath, defaultValue);
+    return valueOrDefault(accessPath, defaultValue);
+  }
+
+  private Nullness valueOrDefault(AccessPath accessPath, Nullness defaultValue) {
+    Nullness value = contents.get(accessPath);
+    return value == null ? defaultValue : value;
   }
 
   /**
    * Get all access paths in this store with a particular nullness value.
    *
+   * <p>The iteration order of the result follows the hash codes of the access paths, which depend
+   * on identity hash codes of symbols and so may differ between runs. Callers only test membership
+   * or build other stores or sets from the result; anything reported to the user must not depend
+   * on this order.
+   *
    * @param value a nullness value
    * @return all access paths in this store that have the given nullness value
    */
   public Set<AccessPath> getAccessPathsWithValue(Nullness value) {
-    Set<AccessPath> result = new LinkedHashSet<>();
-    for (Map.Entry<AccessPath, Nullness> entry : contents.entrySet()) {
-      if (value.equals(entry.getValue())) {
-        result.add(entry.getKey());
-      }
-    }
-    return result;
+    return contents.pathsWithValue(value);
   }
 
   /**
@@ -131,7 +155,8 @@ public class NullnessStore implements Store<NullnessStore> {
    * returns {@code null}.
    */
   public @Nullable AccessPath getMapGetIteratorContentsAccessPath(LocalVariableNode iteratorVar) {
-    for (AccessPath accessPath : contents.keySet()) {
+    for (Map.Entry<AccessPath, Nullness> entry : contents) {
+      AccessPath accessPath = entry.getKey();
       MapKey mapGetArg = accessPath.getMapGetArg();
       if (mapGetArg instanceof IteratorContentsKey) {
         IteratorContentsKey iteratorContentsKey = (IteratorContentsKey) mapGetArg;
@@ -150,10 +175,7 @@ public class NullnessStore implements Store<NullnessStore> {
    * @return The {@link Nullness} value of the access path.
    */
   public Nullness getNullnessOfAccessPath(AccessPath accessPath) {
-    if (contents == null) {
-      return Nullness.NULLABLE;
-    }
-    return contents.getOrDefault(accessPath, Nullness.NULLABLE);
+    return valueOrDefault(accessPath, Nullness.NULLABLE);
   }
 
   public Builder toBuilder() {
@@ -167,19 +189,20 @@ public class NullnessStore implements Store<NullnessStore> {
 
   @Override
   public NullnessStore leastUpperBound(NullnessStore other) {
-    NullnessStore.Builder result = NullnessStore.empty().toBuilder();
-    for (AccessPath ap : intersection(contents.keySet(), other.contents.keySet())) {
-      Nullness apContents = contents.get(ap);
-      if (apContents == null) {
-        throw new RuntimeException("null contents for " + ap);
-      }
-      Nullness otherAPContents = other.contents.get(ap);
-      if (otherAPContents == null) {
-        throw new RuntimeException("null other contents for " + ap);
-      }
-      result.contents.put(ap, apContents.leastUpperBound(otherAPContents));
+    if (this == other) {
+      return this;
     }
-    return result.build();
+    // the join only keeps access paths present in both stores
+    NullnessStoreContents joined = contents.leastUpperBound(other.contents);
+    // when one store subsumes the other, return it directly, so that the fixpoint loop's
+    // convergence check (an equals() call against the previous store) succeeds by identity
+    if (joined == contents) {
+      return this;
+    }
+    if (joined == other.contents) {
+      return other;
+    }
+    return new NullnessStore(joined);
   }
 
   @Override
@@ -189,13 +212,20 @@ public class NullnessStore implements Store<NullnessStore> {
 
   @Override
   public boolean equals(@Nullable Object o) {
+    if (this == o) {
+      return true;
+    }
     if (!(o instanceof NullnessStore)) {
       return false;
     }
     NullnessStore other = (NullnessStore) o;
+    // for tries, cheap when the two stores share most of their contents, as shared subtrees are
+    // compared by identity and subtrees with different cached hash codes are rejected without being
+    // visited; for bitsets over the same numbering, a comparison of a few words
     return contents.equals(other.contents);
   }
 
+  /** Constant time for tries, as the backing map caches its hash code. */
   @Override
   public int hashCode() {
     return contents.hashCode();
@@ -233,8 +263,9 @@ public class NullnessStore implements Store<NullnessStore> {
    */
   public NullnessStore uprootAccessPaths(
       Map<LocalVariableNode, LocalVariableNode> localVarTranslations) {
-    NullnessStore.Builder nullnessBuilder = NullnessStore.empty().toBuilder();
-    for (AccessPath ap : contents.keySet()) {
+    NullnessStore.Builder nullnessBuilder = emptyLike().toBuilder();
+    for (Map.Entry<AccessPath, Nullness> entry : contents) {
+      AccessPath ap = entry.getKey();
       Element element = ap.getRoot();
       if (element == null) {
         // Access path is rooted at the receiver, so we don't need to uproot it
@@ -244,7 +275,7 @@ public class NullnessStore implements Store<NullnessStore> {
         if (element.equals(fromVar.getElement())) {
           LocalVariableNode toVar = localVarTranslations.get(fromVar);
           AccessPath newAP = AccessPath.switchRoot(ap, toVar.getElement());
-          nullnessBuilder.setInformation(newAP, contents.get(ap));
+          nullnessBuilder.setInformation(newAP, entry.getValue());
         }
       }
     }
@@ -258,10 +289,19 @@ public class NullnessStore implements Store<NullnessStore> {
    * @return NullnessStore containing only AccessPaths that pass the predicate
    */
   public NullnessStore filterAccessPaths(Predicate<AccessPath> pred) {
-    return new NullnessStore(
-        contents.entrySet().stream()
-            .filter(e -> pred.test(e.getKey()))
-            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+    NullnessStore.Builder nullnessBuilder = emptyLike().toBuilder();
+    for (Map.Entry<AccessPath, Nullness> entry : contents) {
+      if (pred.test(entry.getKey())) {
+        nullnessBuilder.setInformation(entry.getKey(), entry.getValue());
+      }
+    }
+    return nullnessBuilder.build();
+  }
+
+  /** Returns an empty store with the same representation (and numbering) as this one. */
+  private NullnessStore emptyLike() {
+    NullnessStoreContents empty = contents.emptyLike();
+    return empty == NullnessStoreContents.Trie.EMPTY ? EMPTY : new NullnessStore(empty);
   }
 
   /**
@@ -317,11 +357,13 @@ public class NullnessStore implements Store<NullnessStore> {
 
   /** class for building up instances of the store. */
   public static final class Builder {
-    private final Map<AccessPath, Nullness> contents;
+    private final NullnessStore prototype;
 
-    Builder(NullnessStore prototype) {
+    private NullnessStoreContents contents;
 
-      contents = new HashMap<>(prototype.contents);
+    Builder(NullnessStore prototype) {
+      this.prototype = prototype;
+      this.contents = prototype.contents;
     }
 
     /**
@@ -335,7 +377,7 @@ public class NullnessStore implements Store<NullnessStore> {
      * @return the new builder
      */
     public NullnessStore.Builder setInformation(AccessPath ap, Nullness value) {
-      contents.put(checkNotNull(ap), checkNotNull(value));
+      contents = contents.put(checkNotNull(ap), checkNotNull(value));
       return this;
     }
 
@@ -345,7 +387,8 @@ public class NullnessStore implements Store<NullnessStore> {
      * @return a store constructed from everything added to the builder
      */
     public NullnessStore build() {
-      return new NullnessStore(contents);
+      // avoid allocating a new store if no update changed anything
+      return contents == prototype.contents ? prototype : new NullnessStore(contents);
     }
   }
 }
@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) 2025 Uber Technologies, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.uber.nullaway.dataflow;
+
+import com.uber.nullaway.Nullness;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The persistent map from access paths to nullness facts backing a {@link NullnessStore}.
+ *
+ * <p>There are two representations: a {@link Trie} (the default), and {@link Bitsets} over a dense
+ * {@link AccessPathNumbering}, selected with {@code -XepOpt:NullAway:BitsetNullnessStores=true}.
+ * The two can be mixed (e.g., when a handler joins a store it built from {@link
+ * NullnessStore#empty()} with one from the analysis), in which case the operations fall back to
+ * entry-by-entry implementations.
+ */
+abstract class NullnessStoreContents implements Iterable<Map.Entry<AccessPath, Nullness>> {
+
+  /** Returns the fact for {@code path}, or {@code null} if there is none. */
+  abstract @Nullable Nullness get(AccessPath path);
+
+  /** Returns contents mapping {@code path} to {@code value}; {@code this} if nothing changed. */
+  abstract NullnessStoreContents put(AccessPath path, Nullness value);
+
+  /**
+   * Returns the contents holding the facts for the access paths present in both {@code this} and
+   * {@code other}, joined with {@link Nullness#leastUpperBound(Nullness)}. Returns {@code this} or
+   * {@code other} when the result is equal to either.
+   */
+  abstract NullnessStoreContents leastUpperBound(NullnessStoreContents other);
+
+  /** Returns the number of access paths with a fact. */
+  abstract int size();
+
+  /** Returns empty contents of the same representation as {@code this}. */
+  abstract NullnessStoreContents emptyLike();
+
+  /** Returns all access paths mapped to {@code value}. */
+  Set<AccessPath> pathsWithValue(Nullness value) {
+    Set<AccessPath> result = new LinkedHashSet<>();
+    for (Map.Entry<AccessPath, Nullness> entry : this) {
+      if (value.equals(entry.getValue())) {
+        result.add(entry.getKey());
+      }
+    }
+    return result;
+  }
+
+  /** Entry-by-entry join, for contents of different representations. */
+  final NullnessStoreContents slowLeastUpperBound(NullnessStoreContents other) {
+    NullnessStoreContents result = emptyLike();
+    for (Map.Entry<AccessPath, Nullness> entry : this) {
+      Nullness otherValue = other.get(entry.getKey());
+      if (otherValue != null) {
+        result = result.put(entry.getKey(), entry.getValue().leastUpperBound(otherValue));
+      }
+    }
+    if (slowEquals(result)) {
+      return this;
+    }
+    if (other.slowEquals(result)) {
+      return other;
+    }
+    return result;
+  }
+
+  /** Entry-by-entry equality, for contents of different representations. */
+  final boolean slowEquals(NullnessStoreContents other) {
+    if (size() != other.size()) {
+      return false;
+    }
+    for (Map.Entry<AccessPath, Nullness> entry : this) {
+      if (!entry.getValue().equals(other.get(entry.getKey()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Same contract as {@link Map#equals(Object)}, across both representations. */
+  @Override
+  public abstract boolean equals(@Nullable Object o);
+
+  /** Same contract as {@link Map#hashCode()}, across both representations. */
+  @Override
+  public abstract int hashCode();
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    boolean first = true;
+    for (Map.Entry<AccessPath, Nullness> entry : this) {
+      if (!first) {
+        sb.append(", ");
+      }
+      first = false;
+      sb.append(entry.getKey()).append('=').append(entry.getValue());
+    }
+    return sb.append('}').toString();
+  }
+
+  /** Contents kept in a {@link PersistentHashMap}. */
+  static final class Trie extends NullnessStoreContents {
+
+    static final Trie EMPTY = new Trie(PersistentHashMap.empty());
+
+    private final PersistentHashMap<AccessPath, Nullness> map;
+
+    private Trie(PersistentHashMap<AccessPath, Nullness> map) {
+      this.map = map;
+    }
+
+    @Override
+    @Nullable Nullness get(AccessPath path) {
+      return map.get(path);
+    }
+
+    @Override
+    NullnessStoreContents put(AccessPath path, Nullness value) {
+      PersistentHashMap<AccessPath, Nullness> updated = map.put(path, value);
+      return updated == map ? this : new Trie(updated);
+    }
+
+    @Override
+    NullnessStoreContents leastUpperBound(NullnessStoreContents other) {
+      if (!(other instanceof Trie)) {
+        return slowLeastUpperBound(other);
+      }
+      Trie otherTrie = (Trie) other;
+      // subtrees shared by the two maps are kept as-is
+      PersistentHashMap<AccessPath, Nullness> joined =
+          map.intersect(otherTrie.map, Nullness::leastUpperBound);
+      if (joined == map) {
+        return this;
+      }
+      if (joined == otherTrie.map) {
+        return other;
+      }
+      return new Trie(joined);
+    }
+
+    @Override
+    int size() {
+      return map.size();
+    }
+
+    @Override
+    NullnessStoreContents emptyLike() {
+      return EMPTY;
+    }
+
+    @Override
+    public Iterator<Map.Entry<AccessPath, Nullness>> iterator() {
+      return map.iterator();
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o instanceof Trie) {
+        return map.equals(((Trie) o).map);
+      }
+      return o instanceof NullnessStoreContents && slowEquals((NullnessStoreContents) o);
+    }
+
+    @Override
+    public int hashCode() {
+      return map.hashCode();
+    }
+  }
+
+  /**
+   * Contents kept as bitsets indexed by the {@link AccessPathNumbering} of the current analysis
+   * run.
+   *
+   * <p>A fact is encoded in two bits, whether the path can be null and whether it can be non-null:
+   * {@link Nullness#NULLABLE} sets both, {@link Nullness#NULL} and {@link Nullness#NONNULL} one
+   * each, and {@link Nullness#BOTTOM} neither. A third bitset records which paths have a fact at
+   * all, so that "no fact" stays distinct from {@code NULLABLE}. With this encoding, the join of
+   * two stores over the same numbering is a bitwise or of the nullness bits, masked by the bitwise
+   * and of the presence bits, and equality is a comparison of the three arrays.
+   *
+   * <p>The arrays never have trailing zero words, so equal contents have equal arrays.
+   */
+  static final class Bitsets extends NullnessStoreContents {
+
+    private static final long[] NO_WORDS = new long[0];
+
+    private final AccessPathNumbering numbering;
+
+    private final long[] present;
+
+    private final long[] canBeNull;
+
+    private final long[] canBeNonNull;
+
+    private final int size;
+
+    /** Lazily computed, as it is only needed when stores are hashed. */
+    private int hash;
+
+    private Bitsets(
+        AccessPathNumbering numbering, long[] present, long[] canBeNull, long[] canBeNonNull) {
+      this.numbering = numbering;
+      this.present = present;
+      this.canBeNull = canBeNull;
+      this.canBeNonNull = canBeNonNull;
+      int count = 0;
+      for (long word : present) {
+        count += Long.bitCount(word);
+      }
+      this.size = count;
+    }
+
+    /** Returns empty contents numbering access paths with a fresh {@link AccessPathNumbering}. */
+    static Bitsets empty() {
+      return new Bitsets(new AccessPathNumbering(), NO_WORDS, NO_WORDS, NO_WORDS);
+    }
+
+    @Override
+    @Nullable Nullness get(AccessPath path) {
+      int number = numbering.lookup(path);
+      if (number < 0) {
+        return null;
+      }
+      int word = number >>> 6;
+      long bit = 1L << number;
+      if (word >= present.length || (present[word] & bit) == 0) {
+        return null;
+      }
+      return decode((canBeNull[word] & bit) != 0, (canBeNonNull[word] & bit) != 0);
+    }
+
+    @Override
+    NullnessStoreContents put(AccessPath path, Nullness value) {
+      int number = numbering.numberOf(path);
+      int word = number >>> 6;
+      long bit = 1L << number;
+      boolean nullBit = value == Nullness.NULLABLE || value == Nullness.NULL;
+      boolean nonNullBit = value == Nullness.NULLABLE || value == Nullness.NONNULL;
+      if (word < present.length
+          && (present[word] & bit) != 0
+          && ((canBeNull[word] & bit) != 0) == nullBit
+          && ((canBeNonNull[word] & bit) != 0) == nonNullBit) {
+        return this;
+      }
+      int length = Math.max(present.length, word + 1);
+      long[] newPresent = Arrays.copyOf(present, length);
+      long[] newCanBeNull = Arrays.copyOf(canBeNull, length);
+      long[] newCanBeNonNull = Arrays.copyOf(canBeNonNull, length);
+      newPresent[word] |= bit;
+      newCanBeNull[word] = nullBit ? newCanBeNull[word] | bit : newCanBeNull[word] & ~bit;
+      newCanBeNonNull[word] =
+          nonNullBit ? newCanBeNonNull[word] | bit : newCanBeNonNull[word] & ~bit;
+      return new Bitsets(numbering, newPresent, newCanBeNull, newCanBeNonNull);
+    }
+
+    @Override
+    NullnessStoreContents leastUpperBound(NullnessStoreContents other) {
+      if (!(other instanceof Bitsets) || ((Bitsets) other).numbering != numbering) {
+        return slowLeastUpperBound(other);
+      }
+      Bitsets that = (Bitsets) other;
+      int length = Math.min(present.length, that.present.length);
+      long[] newPresent = new long[length];
+      int used = 0;
+      for (int i = 0; i < length; i++) {
+        newPresent[i] = present[i] & that.present[i];
+        if (newPresent[i] != 0) {
+          used = i + 1;
+        }
+      }
+      long[] newCanBeNull = new long[used];
+      long[] newCanBeNonNull = new long[used];
+      for (int i = 0; i < used; i++) {
+        newCanBeNull[i] = (canBeNull[i] | that.canBeNull[i]) & newPresent[i];
+        newCanBeNonNull[i] = (canBeNonNull[i] | that.canBeNonNull[i]) & newPresent[i];
+      }
+      if (used < length) {
+        newPresent = Arrays.copyOf(newPresent, used);
+      }
+      if (sameBits(newPresent, newCanBeNull, newCanBeNonNull)) {
+        return this;
+      }
+      if (that.sameBits(newPresent, newCanBeNull, newCanBeNonNull)) {
+        return that;
+      }
+      return new Bitsets(numbering, newPresent, newCanBeNull, newCanBeNonNull);
+    }
+
+    private boolean sameBits(long[] otherPresent, long[] otherCanBeNull, long[] otherCanBeNonNull) {
+      return Arrays.equals(present, otherPresent)
+          && Arrays.equals(canBeNull, otherCanBeNull)
+          && Arrays.equals(canBeNonNull, otherCanBeNonNull);
+    }
+
+    @Override
+    int size() {
+      return size;
+    }
+
+    @Override
+    NullnessStoreContents emptyLike() {
+      return new Bitsets(numbering, NO_WORDS, NO_WORDS, NO_WORDS);
+    }
+
+    @Override
+    Set<AccessPath> pathsWithValue(Nullness value) {
+      Set<AccessPath> result = new LinkedHashSet<>();
+      for (int i = 0; i < present.length; i++) {
+        long word = present[i];
+        switch (value) {
+          case NULLABLE:
+            word &= canBeNull[i] & canBeNonNull[i];
+            break;
+          case NULL:
+            word &= canBeNull[i] & ~canBeNonNull[i];
+            break;
+          case NONNULL:
+            word &= ~canBeNull[i] & canBeNonNull[i];
+            break;
+          default:
+            word &= ~canBeNull[i] & ~canBeNonNull[i];
+            break;
+        }
+        while (word != 0) {
+          result.add(numbering.pathAt((i << 6) + Long.numberOfTrailingZeros(word)));
+          word &= word - 1;
+        }
+      }
+      return result;
+    }
+
+    @Override
+    public Iterator<Map.Entry<AccessPath, Nullness>> iterator() {
+      return new Iterator<Map.Entry<AccessPath, Nullness>>() {
+        private int wordIndex = 0;
+        private long remaining = present.length == 0 ? 0 : present[0];
+
+        @Override
+        public boolean hasNext() {
+          while (remaining == 0 && wordIndex + 1 < present.length) {
+            wordIndex++;
+            remaining = present[wordIndex];
+          }
+          return remaining != 0;
+        }
+
+        @Override
+        public Map.Entry<AccessPath, Nullness> next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          int bitIndex = Long.numberOfTrailingZeros(remaining);
+          long bit = remaining & -remaining;
+          remaining &= remaining - 1;
+          Nullness value =
+              decode(
+                  (canBeNull[wordIndex] & bit) != 0, (canBeNonNull[wordIndex] & bit) != 0);
+          return new AbstractMap.SimpleImmutableEntry<>(
+              numbering.pathAt((wordIndex << 6) + bitIndex), value);
+        }
+      };
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o instanceof Bitsets && ((Bitsets) o).numbering == numbering) {
+        Bitsets that = (Bitsets) o;
+        return sameBits(that.present, that.canBeNull, that.canBeNonNull);
+      }
+      return o instanceof NullnessStoreContents && slowEquals((NullnessStoreContents) o);
+    }
+
+    @Override
+    public int hashCode() {
+      int h = hash;
+      if (h == 0 && size != 0) {
+        for (Map.Entry<AccessPath, Nullness> entry : this) {
+          h += entry.getKey().hashCode() ^ entry.getValue().hashCode();
+        }
+        hash = h;
+      }
+      return h;
+    }
+
+    private static Nullness decode(boolean nullBit, boolean nonNullBit) {
+      if (nullBit) {
+        return nonNullBit ? Nullness.NULLABLE : Nullness.NULL;
+      }
+      return nonNullBit ? Nullness.NONNULL : Nullness.BOTTOM;
+    }
+  }
+}
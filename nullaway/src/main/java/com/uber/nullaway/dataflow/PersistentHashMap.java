@@ -0,0 +1,640 @@
+/*
+ * Copyright (c) 2025 Uber Technologies, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.uber.nullaway.dataflow;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.BinaryOperator;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A persistent (immutable) hash array mapped trie, used as the backing representation of {@link
+ * NullnessStore}.
+ *
+ * <p>Maps are never mutated. {@link #put(Object, Object)} returns a new map sharing every subtree
+ * that is not on the path to the updated key, so a single update costs O(log n) time and allocation
+ * rather than a copy of the whole map. The shape of the trie is canonical for a given key set,
+ * which lets {@link #equals(Object)} and {@link #intersect(PersistentHashMap, BinaryOperator)} skip
+ * any subtrees that two maps share by reference. Each node also caches the sum of the hash codes of
+ * the entries below it, so {@link #hashCode()} is O(1) and unequal subtrees are usually told apart
+ * without visiting them.
+ *
+ * <p>Neither keys nor values may be {@code null}.
+ */
+final class PersistentHashMap<K, V> implements Iterable<Map.Entry<K, V>> {
+
+  /** Number of hash bits consumed at each level of the trie. */
+  private static final int BITS = 5;
+
+  private static final int MASK = (1 << BITS) - 1;
+
+  private static final PersistentHashMap<Object, Object> EMPTY =
+      new PersistentHashMap<>(new Branch<>(0, newNodeArray(0), 0, 0));
+
+  /** The root is always a branch, even when it holds zero or one entries. */
+  private final Branch<K, V> root;
+
+  private PersistentHashMap(Branch<K, V> root) {
+    this.root = root;
+  }
+
+  /** Returns the empty map. */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  static <K, V> PersistentHashMap<K, V> empty() {
+    return (PersistentHashMap) EMPTY;
+  }
+
+  /** Returns the number of entries in the map. */
+  int size() {
+    return root.size;
+  }
+
+  boolean isEmpty() {
+    return root.size == 0;
+  }
+
+  /**
+   * Returns the value mapped to {@code key}, or {@code null} if there is none.
+   *
+   * @param key the key to look up
+   * @return the mapped value, or {@code null}
+   */
+  @Nullable V get(Object key) {
+    return root.find(hash(key), 0, key);
+  }
+
+  /**
+   * Returns a map with {@code key} mapped to {@code value}. If {@code key} is already mapped to an
+   * equal value, returns {@code this}.
+   *
+   * @param key the key
+   * @param value the value
+   * @return the updated map
+   */
+  PersistentHashMap<K, V> put(K key, V value) {
+    checkNotNull(key);
+    checkNotNull(value);
+    Node<K, V> newRoot = root.put(0, new Leaf<>(hash(key), key, value));
+    return newRoot == root ? this : new PersistentHashMap<>((Branch<K, V>) newRoot);
+  }
+
+  /**
+   * Returns a map containing only the keys present in both {@code this} and {@code other}, each
+   * mapped to the result of combining its two values with {@code merge}.
+   *
+   * <p>{@code merge} must be commutative and idempotent (as any lattice join is). This is what
+   * allows subtrees shared by the two maps to be reused as-is, without visiting their entries.
+   *
+   * @param other the other map
+   * @param merge function combining the two values mapped to a common key
+   * @return the intersected map; {@code this} or {@code other} if the result is equal to either
+   */
+  PersistentHashMap<K, V> intersect(PersistentHashMap<K, V> other, BinaryOperator<V> merge) {
+    Node<K, V> result = intersect(root, other.root, 0, merge);
+    if (result == root) {
+      return this;
+    }
+    if (result == other.root) {
+      return other;
+    }
+    if (result == null) {
+      return empty();
+    }
+    // intersecting two branches at the root level always yields a branch, as we never collapse
+    // the root
+    return new PersistentHashMap<>((Branch<K, V>) result);
+  }
+
+  @Override
+  public Iterator<Map.Entry<K, V>> iterator() {
+    return new EntryIterator<>(root);
+  }
+
+  @Override
+  public boolean equals(@Nullable Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof PersistentHashMap)) {
+      return false;
+    }
+    return nodesEqual(root, ((PersistentHashMap<?, ?>) o).root);
+  }
+
+  /** Same contract as {@link Map#hashCode()}. */
+  @Override
+  public int hashCode() {
+    return root.entriesHash;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    boolean first = true;
+    for (Map.Entry<K, V> entry : this) {
+      if (!first) {
+        sb.append(", ");
+      }
+      first = false;
+      sb.append(entry.getKey()).append('=').append(entry.getValue());
+    }
+    return sb.append('}').toString();
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode();
+    // spread higher bits downward, since the low bits pick the slot at the top of the trie
+    return h ^ (h >>> 16);
+  }
+
+  private static int bitpos(int hash, int shift) {
+    return 1 << ((hash >>> shift) & MASK);
+  }
+
+  private static int index(int bitmap, int bit) {
+    return Integer.bitCount(bitmap & (bit - 1));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> Node<K, V>[] newNodeArray(int length) {
+    return (Node<K, V>[]) new Node<?, ?>[length];
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> Leaf<K, V>[] newLeafArray(int length) {
+    return (Leaf<K, V>[]) new Leaf<?, ?>[length];
+  }
+
+  /**
+   * Builds the smallest subtree holding two nodes with distinct hashes, starting at the level given
+   * by {@code shift}.
+   */
+  private static <K, V> Branch<K, V> pair(
+      int shift, int hash1, Node<K, V> node1, int hash2, Node<K, V> node2) {
+    int bit1 = bitpos(hash1, shift);
+    int bit2 = bitpos(hash2, shift);
+    Node<K, V>[] children;
+    if (bit1 == bit2) {
+      children = newNodeArray(1);
+      children[0] = pair(shift + BITS, hash1, node1, hash2, node2);
+    } else {
+      children = newNodeArray(2);
+      boolean firstIsLower = Integer.compareUnsigned(bit1, bit2) < 0;
+      children[0] = firstIsLower ? node1 : node2;
+      children[1] = firstIsLower ? node2 : node1;
+    }
+    return new Branch<>(
+        bit1 | bit2,
+        children,
+        node1.size() + node2.size(),
+        node1.entriesHash() + node2.entriesHash());
+  }
+
+  /**
+   * Intersects two subtrees rooted at the same level. Returns {@code null} if the intersection is
+   * empty, and {@code a} or {@code b} when the intersection is equal to either.
+   */
+  private static <K, V> @Nullable Node<K, V> intersect(
+      Node<K, V> a, Node<K, V> b, int shift, BinaryOperator<V> merge) {
+    if (a == b) {
+      return a;
+    }
+    if (a instanceof Branch && b instanceof Branch) {
+      return intersectBranches((Branch<K, V>) a, (Branch<K, V>) b, shift, merge);
+    }
+    // at least one side is a leaf or a collision node, so the result can be computed by looking up
+    // each of its (few) entries in the other side
+    if (b instanceof Leaf) {
+      return intersectLeaf((Leaf<K, V>) b, a, shift, merge);
+    }
+    if (a instanceof Leaf) {
+      return intersectLeaf((Leaf<K, V>) a, b, shift, merge);
+    }
+    Collision<K, V> collision = (Collision<K, V>) (a instanceof Collision ? a : b);
+    Node<K, V> other = collision == a ? b : a;
+    List<Leaf<K, V>> kept = new ArrayList<>(collision.leaves.length);
+    boolean changed = false;
+    for (Leaf<K, V> leaf : collision.leaves) {
+      Leaf<K, V> merged = intersectLeaf(leaf, other, shift, merge);
+      if (merged != null) {
+        kept.add(merged);
+      }
+      changed |= merged != leaf;
+    }
+    if (!changed) {
+      return collision;
+    }
+    switch (kept.size()) {
+      case 0:
+        return null;
+      case 1:
+        return kept.get(0);
+      default:
+        return new Collision<>(collision.hash, kept.toArray(newLeafArray(0)));
+    }
+  }
+
+  private static <K, V> @Nullable Leaf<K, V> intersectLeaf(
+      Leaf<K, V> leaf, Node<K, V> other, int shift, BinaryOperator<V> merge) {
+    V otherValue = other.find(leaf.hash, shift, leaf.key);
+    if (otherValue == null) {
+      return null;
+    }
+    V merged = merge.apply(leaf.value, otherValue);
+    if (merged.equals(leaf.value)) {
+      return leaf;
+    }
+    if (other instanceof Leaf && merged.equals(otherValue)) {
+      return (Leaf<K, V>) other;
+    }
+    return new Leaf<>(leaf.hash, leaf.key, merged);
+  }
+
+  private static <K, V> @Nullable Node<K, V> intersectBranches(
+      Branch<K, V> a, Branch<K, V> b, int shift, BinaryOperator<V> merge) {
+    int common = a.bitmap & b.bitmap;
+    Node<K, V>[] children = newNodeArray(Integer.bitCount(common));
+    int bitmap = 0;
+    int count = 0;
+    int size = 0;
+    int entriesHash = 0;
+    boolean sameAsA = common == a.bitmap;
+    boolean sameAsB = common == b.bitmap;
+    for (int remaining = common; remaining != 0; remaining &= remaining - 1) {
+      int bit = Integer.lowestOneBit(remaining);
+      Node<K, V> childA = a.children[index(a.bitmap, bit)];
+      Node<K, V> childB = b.children[index(b.bitmap, bit)];
+      Node<K, V> child = intersect(childA, childB, shift + BITS, merge);
+      sameAsA &= child == childA;
+      sameAsB &= child == childB;
+      if (child != null) {
+        bitmap |= bit;
+        children[count++] = child;
+        size += child.size();
+        entriesHash += child.entriesHash();
+      }
+    }
+    if (sameAsA) {
+      return a;
+    }
+    if (sameAsB) {
+      return b;
+    }
+    if (shift > 0) {
+      if (count == 0) {
+        return null;
+      }
+      // keep the trie canonical: a subtree holding a single leaf or collision node is that node
+      if (count == 1 && !(children[0] instanceof Branch)) {
+        return children[0];
+      }
+    }
+    if (count < children.length) {
+      Node<K, V>[] trimmed = newNodeArray(count);
+      System.arraycopy(children, 0, trimmed, 0, count);
+      children = trimmed;
+    }
+    return new Branch<>(bitmap, children, size, entriesHash);
+  }
+
+  /** Structural equality; relies on the trie shape being canonical. */
+  private static boolean nodesEqual(Node<?, ?> a, Node<?, ?> b) {
+    if (a == b) {
+      return true;
+    }
+    if (a.size() != b.size() || a.entriesHash() != b.entriesHash()) {
+      return false;
+    }
+    if (a instanceof Branch && b instanceof Branch) {
+      Branch<?, ?> branchA = (Branch<?, ?>) a;
+      Branch<?, ?> branchB = (Branch<?, ?>) b;
+      if (branchA.bitmap != branchB.bitmap) {
+        return false;
+      }
+      for (int i = 0; i < branchA.children.length; i++) {
+        if (!nodesEqual(branchA.children[i], branchB.children[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (a instanceof Leaf && b instanceof Leaf) {
+      return a.equals(b);
+    }
+    if (a instanceof Collision && b instanceof Collision) {
+      Collision<?, ?> collisionA = (Collision<?, ?>) a;
+      Collision<?, ?> collisionB = (Collision<?, ?>) b;
+      if (collisionA.hash != collisionB.hash) {
+        return false;
+      }
+      for (Leaf<?, ?> leaf : collisionA.leaves) {
+        if (!leaf.value.equals(collisionB.findInCollision(leaf.key))) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  private abstract static class Node<K, V> {
+
+    /** Returns the number of entries in this subtree. */
+    abstract int size();
+
+    /** Returns the sum of the {@link Map.Entry#hashCode()}s of the entries in this subtree. */
+    abstract int entriesHash();
+
+    /** Looks up {@code key}, whose hash is {@code hash}, in this subtree at level {@code shift}. */
+    abstract @Nullable V find(int hash, int shift, Object key);
+
+    /**
+     * Returns this subtree with {@code leaf} added, or {@code this} if it already holds an equal
+     * entry.
+     */
+    abstract Node<K, V> put(int shift, Leaf<K, V> leaf);
+  }
+
+  private static final class Leaf<K, V> extends Node<K, V> implements Map.Entry<K, V> {
+
+    final int hash;
+    final K key;
+    final V value;
+    final int entryHash;
+
+    Leaf(int hash, K key, V value) {
+      this.hash = hash;
+      this.key = key;
+      this.value = value;
+      // undo the spreading done in hash(Object) to recover key.hashCode()
+      this.entryHash = (hash ^ (hash >>> 16)) ^ value.hashCode();
+    }
+
+    @Override
+    int size() {
+      return 1;
+    }
+
+    @Override
+    int entriesHash() {
+      return entryHash;
+    }
+
+    @Override
+    @Nullable V find(int hash, int shift, Object key) {
+      return this.hash == hash && this.key.equals(key) ? value : null;
+    }
+
+    @Override
+    Node<K, V> put(int shift, Leaf<K, V> leaf) {
+      if (hash != leaf.hash) {
+        return pair(shift, hash, this, leaf.hash, leaf);
+      }
+      if (key.equals(leaf.key)) {
+        return value.equals(leaf.value) ? this : leaf;
+      }
+      Leaf<K, V>[] leaves = newLeafArray(2);
+      leaves[0] = this;
+      leaves[1] = leaf;
+      return new Collision<>(hash, leaves);
+    }
+
+    @Override
+    public K getKey() {
+      return key;
+    }
+
+    @Override
+    public V getValue() {
+      return value;
+    }
+
+    @Override
+    public V setValue(V value) {
+      throw new UnsupportedOperationException();
+    }
+
+    /** Same contract as {@link Map.Entry#equals(Object)}. */
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> that = (Map.Entry<?, ?>) o;
+      return key.equals(that.getKey()) && value.equals(that.getValue());
+    }
+
+    /** Same contract as {@link Map.Entry#hashCode()}. */
+    @Override
+    public int hashCode() {
+      return entryHash;
+    }
+
+    @Override
+    public String toString() {
+      return key + "=" + value;
+    }
+  }
+
+  /** A set of at least two entries whose keys have the same (full) hash. */
+  private static final class Collision<K, V> extends Node<K, V> {
+
+    final int hash;
+    final Leaf<K, V>[] leaves;
+    final int entriesHash;
+
+    Collision(int hash, Leaf<K, V>[] leaves) {
+      this.hash = hash;
+      this.leaves = leaves;
+      int sum = 0;
+      for (Leaf<K, V> leaf : leaves) {
+        sum += leaf.entryHash;
+      }
+      this.entriesHash = sum;
+    }
+
+    @Override
+    int size() {
+      return leaves.length;
+    }
+
+    @Override
+    int entriesHash() {
+      return entriesHash;
+    }
+
+    @Override
+    @Nullable V find(int hash, int shift, Object key) {
+      return this.hash == hash ? findInCollision(key) : null;
+    }
+
+    @Nullable V findInCollision(Object key) {
+      for (Leaf<K, V> leaf : leaves) {
+        if (leaf.key.equals(key)) {
+          return leaf.value;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    Node<K, V> put(int shift, Leaf<K, V> leaf) {
+      if (hash != leaf.hash) {
+        return pair(shift, hash, this, leaf.hash, leaf);
+      }
+      for (int i = 0; i < leaves.length; i++) {
+        if (leaves[i].key.equals(leaf.key)) {
+          if (leaves[i].value.equals(leaf.value)) {
+            return this;
+          }
+          Leaf<K, V>[] newLeaves = leaves.clone();
+          newLeaves[i] = leaf;
+          return new Collision<>(hash, newLeaves);
+        }
+      }
+      Leaf<K, V>[] newLeaves = newLeafArray(leaves.length + 1);
+      System.arraycopy(leaves, 0, newLeaves, 0, leaves.length);
+      newLeaves[leaves.length] = leaf;
+      return new Collision<>(hash, newLeaves);
+    }
+  }
+
+  /**
+   * An inner node of the trie. Bit {@code i} of {@code bitmap} is set iff the subtree for hash
+   * fragment {@code i} at this level is non-empty, and {@code children} holds those subtrees in
+   * order.
+   */
+  private static final class Branch<K, V> extends Node<K, V> {
+
+    final int bitmap;
+    final Node<K, V>[] children;
+    final int size;
+    final int entriesHash;
+
+    Branch(int bitmap, Node<K, V>[] children, int size, int entriesHash) {
+      this.bitmap = bitmap;
+      this.children = children;
+      this.size = size;
+      this.entriesHash = entriesHash;
+    }
+
+    @Override
+    int size() {
+      return size;
+    }
+
+    @Override
+    int entriesHash() {
+      return entriesHash;
+    }
+
+    @Override
+    @Nullable V find(int hash, int shift, Object key) {
+      int bit = bitpos(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return null;
+      }
+      return children[index(bitmap, bit)].find(hash, shift + BITS, key);
+    }
+
+    @Override
+    Node<K, V> put(int shift, Leaf<K, V> leaf) {
+      int bit = bitpos(leaf.hash, shift);
+      int idx = index(bitmap, bit);
+      if ((bitmap & bit) == 0) {
+        Node<K, V>[] newChildren = newNodeArray(children.length + 1);
+        System.arraycopy(children, 0, newChildren, 0, idx);
+        newChildren[idx] = leaf;
+        System.arraycopy(children, idx, newChildren, idx + 1, children.length - idx);
+        return new Branch<>(bitmap | bit, newChildren, size + 1, entriesHash + leaf.entryHash);
+      }
+      Node<K, V> child = children[idx];
+      Node<K, V> newChild = child.put(shift + BITS, leaf);
+      if (newChild == child) {
+        return this;
+      }
+      Node<K, V>[] newChildren = children.clone();
+      newChildren[idx] = newChild;
+      return new Branch<>(
+          bitmap,
+          newChildren,
+          size - child.size() + newChild.size(),
+          entriesHash - child.entriesHash() + newChild.entriesHash());
+    }
+  }
+
+  /** Depth-first iterator over the entries of a trie. */
+  private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+    private final ArrayDeque<Node<K, V>> stack = new ArrayDeque<>();
+
+    private @Nullable Leaf<K, V> next;
+
+    EntryIterator(Node<K, V> root) {
+      stack.push(root);
+      advance();
+    }
+
+    private void advance() {
+      next = null;
+      while (!stack.isEmpty()) {
+        Node<K, V> node = stack.pop();
+        if (node instanceof Leaf) {
+          next = (Leaf<K, V>) node;
+          return;
+        }
+        Node<K, V>[] children =
+            node instanceof Branch
+                ? ((Branch<K, V>) node).children
+                : ((Collision<K, V>) node).leaves;
+        for (int i = children.length - 1; i >= 0; i--) {
+          stack.push(children[i]);
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Map.Entry<K, V> next() {
+      Leaf<K, V> result = next;
+      if (result == null) {
+        throw new NoSuchElementException();
+      }
+      advance();
+      return result;
+    }
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2025 Uber Technologies, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.uber.nullaway.dataflow;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.AssignmentTree;
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.CaseTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.ForLoopTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.ParenthesizedTree;
+import com.sun.source.tree.StatementTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TypeCastTree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.code.Symbol;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.lang.model.element.ElementKind;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The local variables of a method (or lambda, or initializer block) that dataflow would always find
+ * to be non-null, determined by a quick syntactic scan of the body. Used to answer nullness queries
+ * about such locals without running the dataflow fixpoint over the method.
+ *
+ * <p>A local qualifies if it is declared by a plain declaration statement (not as a parameter,
+ * for-each variable, catch parameter, pattern binding, etc.), every write to it (its initializer
+ * and all assignments) stores an expression that is non-null by its syntactic kind alone (see
+ * {@link #isTriviallyNonNull(ExpressionTree)}), and it is never compared with {@code ==} or {@code
+ * !=} (even within parentheses, a cast or an assignment), since dataflow would then give it the
+ * value {@code null} in one branch of the comparison.
+ * Handlers only ever refine locals to non-null in dataflow, so they cannot invalidate this.
+ */
+final class TriviallyNonNullLocals {
+
+  /** Kinds of expressions that can never evaluate to {@code null}. */
+  private static final ImmutableSet<Tree.Kind> NON_NULL_KINDS =
+      ImmutableSet.of(
+          Tree.Kind.NEW_CLASS,
+          Tree.Kind.NEW_ARRAY,
+          Tree.Kind.LAMBDA_EXPRESSION,
+          Tree.Kind.MEMBER_REFERENCE,
+          Tree.Kind.STRING_LITERAL,
+          // string concatenation, or arithmetic on boxed values
+          Tree.Kind.PLUS);
+
+  private final Set<Symbol> locals;
+
+  /**
+   * Whether a query about this method could not be answered from {@link #locals}. Used to count the
+   * methods for which the pre-pass avoided dataflow.
+   */
+  boolean neededDataflow = false;
+
+  /** Number of queries answered from {@link #locals}. */
+  int answeredQueries = 0;
+
+  private TriviallyNonNullLocals(Set<Symbol> locals) {
+    this.locals = locals;
+  }
+
+  /**
+   * Scans the method, lambda or initializer {@code code}.
+   *
+   * @param code a method, lambda or initializer block, as found by {@link
+   *     com.uber.nullaway.NullabilityUtil#findEnclosingMethodOrLambdaOrInitializer}
+   * @return the trivially non-null locals of {@code code}
+   */
+  static TriviallyNonNullLocals scan(Tree code) {
+    Tree body;
+    if (code instanceof MethodTree) {
+      body = ((MethodTree) code).getBody();
+    } else if (code instanceof LambdaExpressionTree) {
+      body = ((LambdaExpressionTree) code).getBody();
+    } else if (code instanceof BlockTree) {
+      body = code;
+    } else {
+      // field initializer; there are no locals to speak of
+      body = null;
+    }
+    if (!(body instanceof BlockTree)) {
+      return new TriviallyNonNullLocals(ImmutableSet.of());
+    }
+    Scanner scanner = new Scanner();
+    scanner.scan(body, null);
+    scanner.candidates.removeAll(scanner.disqualified);
+    return new TriviallyNonNullLocals(scanner.candidates);
+  }
+
+  /** Returns true if the local read by {@code expr} is trivially non-null. */
+  boolean isTriviallyNonNullRead(Tree expr) {
+    if (locals.isEmpty() || !(expr instanceof IdentifierTree)) {
+      return false;
+    }
+    Symbol symbol = ASTHelpers.getSymbol(expr);
+    return symbol != null && locals.contains(symbol);
+  }
+
+  /**
+   * Checks if an expression can never evaluate to {@code null}, based only on its kind (e.g., an
+   * object creation or a string literal) or on being a compile-time constant.
+   */
+  static boolean isTriviallyNonNull(ExpressionTree expr) {
+    expr = stripParenthesesAndCasts(expr);
+    return NON_NULL_KINDS.contains(expr.getKind()) || ASTHelpers.constValue(expr) != null;
+  }
+
+  /** Strips any parentheses and casts around {@code expr}. */
+  private static ExpressionTree stripParenthesesAndCasts(ExpressionTree expr) {
+    while (expr instanceof ParenthesizedTree || expr instanceof TypeCastTree) {
+      expr =
+          expr instanceof ParenthesizedTree
+              ? ((ParenthesizedTree) expr).getExpression()
+              : ((TypeCastTree) expr).getExpression();
+    }
+    return expr;
+  }
+
+  private static @Nullable Symbol localVariable(ExpressionTree expr) {
+    Tree tree = stripParenthesesAndCasts(expr);
+    if (!(tree instanceof IdentifierTree)) {
+      return null;
+    }
+    Symbol symbol = ASTHelpers.getSymbol(tree);
+    return symbol != null && symbol.getKind() == ElementKind.LOCAL_VARIABLE ? symbol : null;
+  }
+
+  private static final class Scanner extends TreeScanner<@Nullable Void, @Nullable Void> {
+
+    /** Locals declared by plain declaration statements, with a trivially non-null initializer. */
+    final Set<Symbol> candidates = new HashSet<>();
+
+    final Set<Symbol> disqualified = new HashSet<>();
+
+    private void declareAll(List<? extends StatementTree> statements) {
+      for (StatementTree statement : statements) {
+        if (statement instanceof VariableTree) {
+          VariableTree declaration = (VariableTree) statement;
+          Symbol symbol = ASTHelpers.getSymbol(declaration);
+          ExpressionTree initializer = declaration.getInitializer();
+          if (symbol != null && (initializer == null || isTriviallyNonNull(initializer))) {
+            candidates.add(symbol);
+          } else if (symbol != null) {
+            disqualified.add(symbol);
+          }
+        }
+      }
+    }
+
+    @Override
+    public @Nullable Void visitBlock(BlockTree tree, @Nullable Void unused) {
+      declareAll(tree.getStatements());
+      return super.visitBlock(tree, unused);
+    }
+
+    @Override
+    public @Nullable Void visitCase(CaseTree tree, @Nullable Void unused) {
+      List<? extends StatementTree> statements = tree.getStatements();
+      if (statements != null) {
+        declareAll(statements);
+      }
+      return super.visitCase(tree, unused);
+    }
+
+    @Override
+    public @Nullable Void visitForLoop(ForLoopTree tree, @Nullable Void unused) {
+      declareAll(tree.getInitializer());
+      return super.visitForLoop(tree, unused);
+    }
+
+    @Override
+    public @Nullable Void visitAssignment(AssignmentTree tree, @Nullable Void unused) {
+      Symbol local = localVariable(tree.getVariable());
+      if (local != null && !isTriviallyNonNull(tree.getExpression())) {
+        disqualified.add(local);
+      }
+      return super.visitAssignment(tree, unused);
+    }
+
+    @Override
+    public @Nullable Void visitBinary(BinaryTree tree, @Nullable Void unused) {
+      if (tree.getKind() == Tree.Kind.EQUAL_TO || tree.getKind() == Tree.Kind.NOT_EQUAL_TO) {
+        Symbol left = comparedLocal(tree.getLeftOperand());
+        if (left != null) {
+          disqualified.add(left);
+        }
+        Symbol right = comparedLocal(tree.getRightOperand());
+        if (right != null) {
+          disqualified.add(right);
+        }
+      }
+      return super.visitBinary(tree, unused);
+    }
+
+    /**
+     * Returns the local whose nullness dataflow may refine when {@code operand} is compared, if
+     * any. Parentheses do not appear in the CFG, and dataflow refines the variable of an assignment
+     * operand, as in {@code (x = e) == null}. Casts are also looked through, to be conservative.
+     */
+    private @Nullable Symbol comparedLocal(ExpressionTree operand) {
+      ExpressionTree expr = stripParenthesesAndCasts(operand);
+      if (expr instanceof AssignmentTree) {
+        expr = ((AssignmentTree) expr).getVariable();
+      }
+      return localVariable(expr);
+    }
+
+    @Override
+    public @Nullable Void visitLambdaExpression(
+        LambdaExpressionTree tree, @Nullable Void unused) {
+      // lambdas cannot write the enclosing method's locals, and their own locals are only relevant
+      // to queries within the lambda, which scan the lambda separately
+      return null;
+    }
+
+    @Override
+    public @Nullable Void visitClass(ClassTree tree, @Nullable Void unused) {
+      // same as for lambdas
+      return null;
+    }
+  }
+}
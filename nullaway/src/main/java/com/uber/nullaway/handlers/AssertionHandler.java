@@ -24,6 +24,7 @@ package com.uber.nullaway.handlers;
 
 import static com.uber.nullaway.Nullness.NONNULL;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.errorprone.VisitorState;
 import com.google.errorprone.util.ASTHelpers;
 import com.sun.tools.javac.code.Symbol;
@@ -43,6 +44,11 @@ public class AssertionHandler extends BaseNoOpHandler {
     this.methodNameUtil = methodNameUtil;
   }
 
+  @Override
+  public ImmutableSet<String> onRegisterDataflowMethodInvocationNames() {
+    return MethodNameUtil.ASSERTION_METHOD_NAMES;
+  }
+
   @Override
   public NullnessHint onDataflowVisitMethodInvocation(
       MethodInvocationNode node,
@@ -159,6 +159,11 @@ public abstract class BaseNoOpHandler implements Handler {
     return NullnessHint.UNKNOWN;
   }
 
+  @Override
+  public @Nullable ImmutableSet<String> onRegisterDataflowMethodInvocationNames() {
+    return null;
+  }
+
   @Override
   public NullnessHint onDataflowVisitFieldAccess(
       FieldAccessNode node,
@@ -26,6 +26,7 @@ import static com.uber.nullaway.handlers.AccessPathPredicates.FALSE_AP_PREDICATE
 import static com.uber.nullaway.handlers.AccessPathPredicates.TRUE_AP_PREDICATE;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.errorprone.VisitorState;
 import com.sun.source.tree.ClassTree;
@@ -39,6 +40,7 @@ import com.sun.source.util.TreePath;
 import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.code.Types;
 import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Name;
 import com.uber.nullaway.ErrorMessage;
 import com.uber.nullaway.NullAway;
 import com.uber.nullaway.Nullness;
@@ -47,8 +49,14 @@ import com.uber.nullaway.dataflow.AccessPathNullnessAnalysis;
 import com.uber.nullaway.dataflow.AccessPathNullnessPropagation;
 import com.uber.nullaway.dataflow.NullnessStore;
 import com.uber.nullaway.dataflow.cfg.NullAwayCFGBuilder;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Predicate;
 import org.checkerframework.nullaway.dataflow.cfg.UnderlyingAST;
 import org.checkerframework.nullaway.dataflow.cfg.node.FieldAccessNode;
@@ -64,24 +72,155 @@ import org.jspecify.annotations.Nullable;
  */
 class CompositeHandler implements Handler {
 
-  private final ImmutableList<Handler> handlers;
+  // For each hook, the handlers that override it, in registration order. Most handlers only
+  // override a few hooks, and some hooks are called for every node of every CFG, so we skip the
+  // calls to the no-op implementations in BaseNoOpHandler.
+  private final Handler[] onMatchTopLevelClassHandlers;
+  private final Handler[] onMatchMethodHandlers;
+  private final Handler[] onMatchLambdaExpressionHandlers;
+  private final Handler[] onMatchMethodReferenceHandlers;
+  private final Handler[] onMatchMethodInvocationHandlers;
+  private final Handler[] onMatchReturnHandlers;
+  private final Handler[] onOverrideMethodReturnNullabilityHandlers;
+  private final Handler[] onOverrideFieldNullabilityHandlers;
+  private final Handler[] onOverrideMethodInvocationParametersNullabilityHandlers;
+  private final Handler[] onOverrideMayBeNullExprHandlers;
+  private final Handler[] onDataflowInitialStoreHandlers;
+  private final Handler[] onDataflowVisitFieldAccessHandlers;
+  private final Handler[] onDataflowVisitReturnHandlers;
+  private final Handler[] onDataflowVisitLambdaResultExpressionHandlers;
+  private final Handler[] onExpressionDereferenceHandlers;
+  private final Handler[] getAccessPathPredicateForNestedMethodHandlers;
+  private final Handler[] onRegisterImmutableTypesHandlers;
+  private final Handler[] onNonNullFieldAssignmentHandlers;
+  private final Handler[] onCFGBuildPhase1AfterVisitMethodInvocationHandlers;
+  private final Handler[] castToNonNullArgumentPositionsForMethodHandlers;
+  private final Handler[] onOverrideTypeParameterUpperBoundHandlers;
+  private final Handler[] onOverrideNullMarkedClassesHandlers;
+
+  /**
+   * For each method name registered by a handler of {@link #onDataflowVisitMethodInvocation}, the
+   * handlers to call on invocations of methods with that name: those that registered it, and those
+   * that act on any method.
+   */
+  private final ImmutableMap<String, Handler[]> dataflowMethodInvocationHandlersByName;
+
+  /** The handlers to call on invocations of methods with any other name. */
+  private final Handler[] dataflowMethodInvocationHandlersForAnyName;
+
+  /**
+   * {@link #dataflowMethodInvocationHandlersByName}, keyed by the names of {@link #nameTable}.
+   * Built on first use, as names are only available once we have a javac context.
+   */
+  private Map<Name, Handler[]> dataflowMethodInvocationHandlersByJavacName = new HashMap<>();
+
+  private Name.@Nullable Table nameTable;
 
   CompositeHandler(ImmutableList<Handler> handlers) {
-    // Attach default handlers
-    this.handlers = handlers;
+    onMatchTopLevelClassHandlers = overriding(handlers, "onMatchTopLevelClass");
+    onMatchMethodHandlers = overriding(handlers, "onMatchMethod");
+    onMatchLambdaExpressionHandlers = overriding(handlers, "onMatchLambdaExpression");
+    onMatchMethodReferenceHandlers = overriding(handlers, "onMatchMethodReference");
+    onMatchMethodInvocationHandlers = overriding(handlers, "onMatchMethodInvocation");
+    onMatchReturnHandlers = overriding(handlers, "onMatchReturn");
+    onOverrideMethodReturnNullabilityHandlers =
+        overriding(handlers, "onOverrideMethodReturnNullability");
+    onOverrideFieldNullabilityHandlers = overriding(handlers, "onOverrideFieldNullability");
+    onOverrideMethodInvocationParametersNullabilityHandlers =
+        overriding(handlers, "onOverrideMethodInvocationParametersNullability");
+    onOverrideMayBeNullExprHandlers = overriding(handlers, "onOverrideMayBeNullExpr");
+    onDataflowInitialStoreHandlers = overriding(handlers, "onDataflowInitialStore");
+    onDataflowVisitFieldAccessHandlers = overriding(handlers, "onDataflowVisitFieldAccess");
+    onDataflowVisitReturnHandlers = overriding(handlers, "onDataflowVisitReturn");
+    onDataflowVisitLambdaResultExpressionHandlers =
+        overriding(handlers, "onDataflowVisitLambdaResultExpression");
+    onExpressionDereferenceHandlers = overriding(handlers, "onExpressionDereference");
+    getAccessPathPredicateForNestedMethodHandlers =
+        overriding(handlers, "getAccessPathPredicateForNestedMethod");
+    onRegisterImmutableTypesHandlers = overriding(handlers, "onRegisterImmutableTypes");
+    onNonNullFieldAssignmentHandlers = overriding(handlers, "onNonNullFieldAssignment");
+    onCFGBuildPhase1AfterVisitMethodInvocationHandlers =
+        overriding(handlers, "onCFGBuildPhase1AfterVisitMethodInvocation");
+    castToNonNullArgumentPositionsForMethodHandlers =
+        overriding(handlers, "castToNonNullArgumentPositionsForMethod");
+    onOverrideTypeParameterUpperBoundHandlers =
+        overriding(handlers, "onOverrideTypeParameterUpperBound");
+    onOverrideNullMarkedClassesHandlers = overriding(handlers, "onOverrideNullMarkedClasses");
+    Handler[] dataflowMethodInvocationHandlers =
+        overriding(handlers, "onDataflowVisitMethodInvocation");
+    List<@Nullable ImmutableSet<String>> registeredNames = new ArrayList<>();
+    Set<String> allNames = new LinkedHashSet<>();
+    List<Handler> forAnyName = new ArrayList<>();
+    for (Handler h : dataflowMethodInvocationHandlers) {
+      ImmutableSet<String> names = h.onRegisterDataflowMethodInvocationNames();
+      registeredNames.add(names);
+      if (names == null) {
+        forAnyName.add(h);
+      } else {
+        allNames.addAll(names);
+      }
+    }
+    ImmutableMap.Builder<String, Handler[]> byName = ImmutableMap.builder();
+    for (String name : allNames) {
+      List<Handler> forName = new ArrayList<>();
+      for (int i = 0; i < dataflowMethodInvocationHandlers.length; i++) {
+        ImmutableSet<String> names = registeredNames.get(i);
+        if (names == null || names.contains(name)) {
+          forName.add(dataflowMethodInvocationHandlers[i]);
+        }
+      }
+      byName.put(name, forName.toArray(new Handler[0]));
+    }
+    dataflowMethodInvocationHandlersByName = byName.build();
+    dataflowMethodInvocationHandlersForAnyName = forAnyName.toArray(new Handler[0]);
+  }
+
+  /**
+   * Returns the handlers whose class overrides the given hook, i.e., all handlers except those
+   * inheriting its no-op implementation from {@link BaseNoOpHandler}, in their original order.
+   *
+   * @param handlers all handlers
+   * @param hookName name of a method of {@link Handler}
+   * @return the handlers that override {@code hookName}
+   */
+  private static Handler[] overriding(ImmutableList<Handler> handlers, String hookName) {
+    Method hook = null;
+    for (Method method : Handler.class.getMethods()) {
+      if (method.getName().equals(hookName)) {
+        hook = method;
+        break;
+      }
+    }
+    if (hook == null) {
+      throw new IllegalStateException("no handler hook named " + hookName);
+    }
+    List<Handler> result = new ArrayList<>();
+    for (Handler h : handlers) {
+      Method implementation;
+      try {
+        implementation = h.getClass().getMethod(hookName, hook.getParameterTypes());
+      } catch (NoSuchMethodException e) {
+        // cannot happen, as h implements Handler
+        throw new IllegalStateException(e);
+      }
+      if (!implementation.getDeclaringClass().equals(BaseNoOpHandler.class)) {
+        result.add(h);
+      }
+    }
+    return result.toArray(new Handler[0]);
   }
 
   @Override
   public void onMatchTopLevelClass(
       NullAway analysis, ClassTree tree, VisitorState state, Symbol.ClassSymbol classSymbol) {
-    for (Handler h : handlers) {
+    for (Handler h : onMatchTopLevelClassHandlers) {
       h.onMatchTopLevelClass(analysis, tree, state, classSymbol);
     }
   }
 
   @Override
   public void onMatchMethod(MethodTree tree, MethodAnalysisContext methodAnalysisContext) {
-    for (Handler h : handlers) {
+    for (Handler h : onMatchMethodHandlers) {
       h.onMatchMethod(tree, methodAnalysisContext);
     }
   }
@@ -89,7 +228,7 @@ class CompositeHandler implements Handler {
   @Override
   public void onMatchLambdaExpression(
       LambdaExpressionTree tree, MethodAnalysisContext methodAnalysisContext) {
-    for (Handler h : handlers) {
+    for (Handler h : onMatchLambdaExpressionHandlers) {
       h.onMatchLambdaExpression(tree, methodAnalysisContext);
     }
   }
@@ -97,7 +236,7 @@ class CompositeHandler implements Handler {
   @Override
   public void onMatchMethodReference(
       MemberReferenceTree tree, MethodAnalysisContext methodAnalysisContext) {
-    for (Handler h : handlers) {
+    for (Handler h : onMatchMethodReferenceHandlers) {
       h.onMatchMethodReference(tree, methodAnalysisContext);
     }
   }
@@ -105,14 +244,14 @@ class CompositeHandler implements Handler {
   @Override
   public void onMatchMethodInvocation(
       MethodInvocationTree tree, MethodAnalysisContext methodAnalysisContext) {
-    for (Handler h : handlers) {
+    for (Handler h : onMatchMethodInvocationHandlers) {
       h.onMatchMethodInvocation(tree, methodAnalysisContext);
     }
   }
 
   @Override
   public void onMatchReturn(NullAway analysis, ReturnTree tree, VisitorState state) {
-    for (Handler h : handlers) {
+    for (Handler h : onMatchReturnHandlers) {
       h.onMatchReturn(analysis, tree, state);
     }
   }
@@ -123,7 +262,7 @@ class CompositeHandler implements Handler {
       VisitorState state,
       boolean isAnnotated,
       Nullness returnNullness) {
-    for (Handler h : handlers) {
+    for (Handler h : onOverrideMethodReturnNullabilityHandlers) {
       returnNullness =
           h.onOverrideMethodReturnNullability(methodSymbol, state, isAnnotated, returnNullness);
     }
@@ -132,7 +271,7 @@ class CompositeHandler implements Handler {
 
   @Override
   public boolean onOverrideFieldNullability(Symbol field) {
-    for (Handler h : handlers) {
+    for (Handler h : onOverrideFieldNullabilityHandlers) {
       if (h.onOverrideFieldNullability(field)) {
         // If any handler determines that the field is @Nullable, we should acknowledge that and
         // treat it as such.
@@ -148,7 +287,7 @@ class CompositeHandler implements Handler {
       Symbol.MethodSymbol methodSymbol,
       boolean isAnnotated,
       @Nullable Nullness[] argumentPositionNullness) {
-    for (Handler h : handlers) {
+    for (Handler h : onOverrideMethodInvocationParametersNullabilityHandlers) {
       argumentPositionNullness =
           h.onOverrideMethodInvocationParametersNullability(
               context, methodSymbol, isAnnotated, argumentPositionNullness);
@@ -163,7 +302,7 @@ class CompositeHandler implements Handler {
       @Nullable Symbol exprSymbol,
       VisitorState state,
       boolean exprMayBeNull) {
-    for (Handler h : handlers) {
+    for (Handler h : onOverrideMayBeNullExprHandlers) {
       exprMayBeNull = h.onOverrideMayBeNullExpr(analysis, expr, exprSymbol, state, exprMayBeNull);
     }
     return exprMayBeNull;
@@ -174,7 +313,7 @@ class CompositeHandler implements Handler {
       UnderlyingAST underlyingAST,
       List<LocalVariableNode> parameters,
       NullnessStore.Builder result) {
-    for (Handler h : handlers) {
+    for (Handler h : onDataflowInitialStoreHandlers) {
       result = h.onDataflowInitialStore(underlyingAST, parameters, result);
     }
     return result;
@@ -191,7 +330,7 @@ class CompositeHandler implements Handler {
       AccessPathNullnessPropagation.Updates elseUpdates,
       AccessPathNullnessPropagation.Updates bothUpdates) {
     NullnessHint nullnessHint = NullnessHint.UNKNOWN;
-    for (Handler h : handlers) {
+    for (Handler h : dataflowMethodInvocationHandlersFor(symbol.name)) {
       NullnessHint n =
           h.onDataflowVisitMethodInvocation(
               node, symbol, state, apContext, inputs, thenUpdates, elseUpdates, bothUpdates);
@@ -200,6 +339,31 @@ class CompositeHandler implements Handler {
     return nullnessHint;
   }
 
+  private Handler[] dataflowMethodInvocationHandlersFor(Name methodName) {
+    if (methodName.table != nameTable) {
+      Name.Table table = methodName.table;
+      Map<Name, Handler[]> byJavacName = new HashMap<>();
+      for (Map.Entry<String, Handler[]> entry : dataflowMethodInvocationHandlersByName.entrySet()) {
+        byJavacName.put(table.fromString(entry.getKey()), entry.getValue());
+      }
+      dataflowMethodInvocationHandlersByJavacName = byJavacName;
+      nameTable = table;
+    }
+    Handler[] handlers = dataflowMethodInvocationHandlersByJavacName.get(methodName);
+    return handlers != null ? handlers : dataflowMethodInvocationHandlersForAnyName;
+  }
+
+  /**
+   * Returns the union of the names registered by all handlers, or {@code null} if any handler acts
+   * on invocations of any method.
+   */
+  @Override
+  public @Nullable ImmutableSet<String> onRegisterDataflowMethodInvocationNames() {
+    return dataflowMethodInvocationHandlersForAnyName.length > 0
+        ? null
+        : dataflowMethodInvocationHandlersByName.keySet();
+  }
+
   @Override
   public NullnessHint onDataflowVisitFieldAccess(
       FieldAccessNode node,
@@ -210,7 +374,7 @@ class CompositeHandler implements Handler {
       AccessPathNullnessPropagation.SubNodeValues inputs,
       AccessPathNullnessPropagation.Updates updates) {
     NullnessHint nullnessHint = NullnessHint.UNKNOWN;
-    for (Handler h : handlers) {
+    for (Handler h : onDataflowVisitFieldAccessHandlers) {
       NullnessHint n =
           h.onDataflowVisitFieldAccess(node, symbol, types, context, apContext, inputs, updates);
       nullnessHint = nullnessHint.merge(n);
@@ -221,7 +385,7 @@ class CompositeHandler implements Handler {
   @Override
   public void onDataflowVisitReturn(
       ReturnTree tree, VisitorState state, NullnessStore thenStore, NullnessStore elseStore) {
-    for (Handler h : handlers) {
+    for (Handler h : onDataflowVisitReturnHandlers) {
       h.onDataflowVisitReturn(tree, state, thenStore, elseStore);
     }
   }
@@ -229,7 +393,7 @@ class CompositeHandler implements Handler {
   @Override
   public void onDataflowVisitLambdaResultExpression(
       ExpressionTree tree, NullnessStore thenStore, NullnessStore elseStore) {
-    for (Handler h : handlers) {
+    for (Handler h : onDataflowVisitLambdaResultExpressionHandlers) {
       h.onDataflowVisitLambdaResultExpression(tree, thenStore, elseStore);
     }
   }
@@ -238,7 +402,7 @@ class CompositeHandler implements Handler {
   public Optional<ErrorMessage> onExpressionDereference(
       ExpressionTree expr, ExpressionTree baseExpr, VisitorState state) {
     Optional<ErrorMessage> optionalErrorMessage;
-    for (Handler h : handlers) {
+    for (Handler h : onExpressionDereferenceHandlers) {
       optionalErrorMessage = h.onExpressionDereference(expr, baseExpr, state);
       if (optionalErrorMessage.isPresent()) {
         return optionalErrorMessage;
@@ -251,7 +415,7 @@ class CompositeHandler implements Handler {
   public Predicate<AccessPath> getAccessPathPredicateForNestedMethod(
       TreePath path, VisitorState state) {
     Predicate<AccessPath> filter = FALSE_AP_PREDICATE;
-    for (Handler h : handlers) {
+    for (Handler h : getAccessPathPredicateForNestedMethodHandlers) {
       Predicate<AccessPath> curFilter = h.getAccessPathPredicateForNestedMethod(path, state);
       // here we do some optimization, to try to avoid unnecessarily returning a deeply nested
       // Predicate object (which would be more costly to test)
@@ -271,7 +435,7 @@ class CompositeHandler implements Handler {
   @Override
   public ImmutableSet<String> onRegisterImmutableTypes() {
     ImmutableSet.Builder<String> builder = ImmutableSet.<String>builder();
-    for (Handler h : handlers) {
+    for (Handler h : onRegisterImmutableTypesHandlers) {
       builder.addAll(h.onRegisterImmutableTypes());
     }
     return builder.build();
@@ -280,7 +444,7 @@ class CompositeHandler implements Handler {
   @Override
   public void onNonNullFieldAssignment(
       Symbol field, AccessPathNullnessAnalysis analysis, VisitorState state) {
-    for (Handler h : handlers) {
+    for (Handler h : onNonNullFieldAssignmentHandlers) {
       h.onNonNullFieldAssignment(field, analysis, state);
     }
   }
@@ -291,7 +455,7 @@ class CompositeHandler implements Handler {
       MethodInvocationTree tree,
       MethodInvocationNode originalNode) {
     MethodInvocationNode currentNode = originalNode;
-    for (Handler h : handlers) {
+    for (Handler h : onCFGBuildPhase1AfterVisitMethodInvocationHandlers) {
       currentNode = h.onCFGBuildPhase1AfterVisitMethodInvocation(phase, tree, currentNode);
     }
     return currentNode;
@@ -302,7 +466,7 @@ class CompositeHandler implements Handler {
       List<? extends ExpressionTree> actualParams,
       @Nullable Integer previousArgumentPosition,
       MethodAnalysisContext methodAnalysisContext) {
-    for (Handler h : handlers) {
+    for (Handler h : castToNonNullArgumentPositionsForMethodHandlers) {
       previousArgumentPosition =
           h.castToNonNullArgumentPositionsForMethod(
               actualParams, previousArgumentPosition, methodAnalysisContext);
@@ -314,7 +478,7 @@ class CompositeHandler implements Handler {
   @Override
   public boolean onOverrideTypeParameterUpperBound(String className, int index) {
     boolean result = false;
-    for (Handler h : handlers) {
+    for (Handler h : onOverrideTypeParameterUpperBoundHandlers) {
       result = h.onOverrideTypeParameterUpperBound(className, index);
       if (result) {
         break;
@@ -327,7 +491,7 @@ class CompositeHandler implements Handler {
   @Override
   public boolean onOverrideNullMarkedClasses(String className) {
     boolean result = false;
-    for (Handler h : handlers) {
+    for (Handler h : onOverrideNullMarkedClassesHandlers) {
       result = h.onOverrideNullMarkedClasses(className);
       if (result) {
         break;
@@ -241,6 +241,16 @@ public interface Handler {
       AccessPathNullnessPropagation.Updates elseUpdates,
       AccessPathNullnessPropagation.Updates bothUpdates);
 
+  /**
+   * Called once, when the handler is registered, to declare the invocations {@link
+   * #onDataflowVisitMethodInvocation} may act on. The handler is then only called for invocations
+   * of methods with one of these simple names.
+   *
+   * @return The simple names of all methods whose invocations the handler may act on, or {@code
+   *     null} if it may act on invocations of any method.
+   */
+  @Nullable ImmutableSet<String> onRegisterDataflowMethodInvocationNames();
+
   /**
    * Called when the Dataflow analysis visits each field access.
    *
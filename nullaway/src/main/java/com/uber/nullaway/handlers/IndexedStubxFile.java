@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2025 Uber Technologies, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.uber.nullaway.handlers;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A version 2 astubx file, decoded on demand. See {@code
+ * com.uber.nullaway.libmodel.StubxWriter#writeIndexed} for the layout. The file contents are kept
+ * in a {@link ByteBuffer}, which may be memory-mapped; strings are only decoded when first needed,
+ * and the method records of a class are found by binary search on the sorted class index.
+ *
+ * <p>Instances may be shared by concurrent compilations. The buffer is only read with absolute
+ * gets, and two threads decoding the same string just store equal strings in the same slot.
+ */
+final class IndexedStubxFile {
+
+  /**
+   * The file magic number for version 2 .astubx files. It should be the first four bytes of any
+   * compatible .astubx file.
+   */
+  static final int VERSION_2_FILE_MAGIC_NUMBER = 1329807701;
+
+  /** Argument position of the records for annotations on a method itself. */
+  private static final int RETURN = -1;
+
+  private static final int CLASS_ENTRY_SIZE = 3 * Integer.BYTES;
+
+  private static final int METHOD_RECORD_SIZE = 3 * Integer.BYTES;
+
+  /** The file contents following the magic number. */
+  private final ByteBuffer buffer;
+
+  private final String stubxLocation;
+
+  /** Position of the string offset table. */
+  private final int stringOffsetsPos;
+
+  /** Position of the string data, which the string offsets are relative to. */
+  private final int stringDataPos;
+
+  private final @Nullable String[] strings;
+
+  private final int numClasses;
+
+  private final int classIndexPos;
+
+  private final int methodRecordsPos;
+
+  private final int numNullMarkedClasses;
+
+  private final int nullMarkedClassesPos;
+
+  /** Position of the nullable upper bound records, which have the same layout as in version 1. */
+  private final int upperBoundsPos;
+
+  /**
+   * Reads the section sizes of a version 2 astubx file. Only the fixed-size headers of each section
+   * are read; no strings or records are decoded.
+   *
+   * @param buffer the file contents following the magic number
+   * @param stubxLocation the location of the file, for error messages
+   */
+  IndexedStubxFile(ByteBuffer buffer, String stubxLocation) {
+    this.buffer = buffer;
+    this.stubxLocation = stubxLocation;
+    int pos = 0;
+    int numStrings = buffer.getInt(pos);
+    stringOffsetsPos = pos + Integer.BYTES;
+    pos = stringOffsetsPos + numStrings * Integer.BYTES;
+    int stringDataSize = buffer.getInt(pos);
+    stringDataPos = pos + Integer.BYTES;
+    pos = stringDataPos + stringDataSize;
+    strings = new String[numStrings];
+    // skip the (package, annotation) and (type, annotation) records, which are not used
+    pos += Integer.BYTES + buffer.getInt(pos) * 2 * Integer.BYTES;
+    pos += Integer.BYTES + buffer.getInt(pos) * 2 * Integer.BYTES;
+    numClasses = buffer.getInt(pos);
+    classIndexPos = pos + Integer.BYTES;
+    pos = classIndexPos + numClasses * CLASS_ENTRY_SIZE;
+    int numMethodRecords = buffer.getInt(pos);
+    methodRecordsPos = pos + Integer.BYTES;
+    pos = methodRecordsPos + numMethodRecords * METHOD_RECORD_SIZE;
+    numNullMarkedClasses = buffer.getInt(pos);
+    nullMarkedClassesPos = pos + Integer.BYTES;
+    pos = nullMarkedClassesPos + numNullMarkedClasses * Integer.BYTES;
+    upperBoundsPos = pos;
+  }
+
+  private String string(int index) {
+    String result = strings[index];
+    if (result == null) {
+      int pos = stringDataPos + buffer.getInt(stringOffsetsPos + index * Integer.BYTES);
+      byte[] bytes = new byte[buffer.getInt(pos)];
+      ByteBuffer view = buffer.duplicate();
+      view.position(pos + Integer.BYTES);
+      view.get(bytes);
+      result = new String(bytes, StandardCharsets.UTF_8);
+      strings[index] = result;
+    }
+    return result;
+  }
+
+  private String stringAt(int pos) {
+    return string(buffer.getInt(pos));
+  }
+
+  /**
+   * Returns the annotations on the methods of a class and their arguments, in the same shape as
+   * {@link StubxCacheUtil#getArgAnnotCache()} does for all classes.
+   *
+   * @param className the name of the class, with {@code .} separating nested classes
+   * @return a map from method signature to a map from argument position (or -1 for annotations on
+   *     the method) to annotations, or {@code null} if the file has no method records for the class
+   */
+  @Nullable Map<String, Map<Integer, Set<String>>> getMethodAnnotations(String className) {
+    int low = 0;
+    int high = numClasses - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int entryPos = classIndexPos + mid * CLASS_ENTRY_SIZE;
+      int cmp = stringAt(entryPos).compareTo(className);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return decodeMethodRecords(entryPos);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Calls the given consumer with the name and method annotations of each class, decoding the whole
+   * file.
+   *
+   * @param consumer called with the class name and the result of {@link
+   *     #getMethodAnnotations(String)} for it
+   */
+  void forEachClass(BiConsumer<String, Map<String, Map<Integer, Set<String>>>> consumer) {
+    for (int i = 0; i < numClasses; i++) {
+      int entryPos = classIndexPos + i * CLASS_ENTRY_SIZE;
+      consumer.accept(stringAt(entryPos), decodeMethodRecords(entryPos));
+    }
+  }
+
+  private Map<String, Map<Integer, Set<String>>> decodeMethodRecords(int classEntryPos) {
+    int first = buffer.getInt(classEntryPos + Integer.BYTES);
+    int count = buffer.getInt(classEntryPos + 2 * Integer.BYTES);
+    Map<String, Map<Integer, Set<String>>> result = new LinkedHashMap<>();
+    for (int i = first; i < first + count; i++) {
+      int recordPos = methodRecordsPos + i * METHOD_RECORD_SIZE;
+      String methodSig = stringAt(recordPos);
+      int argNum = buffer.getInt(recordPos + Integer.BYTES);
+      if (argNum != RETURN
+          && (methodSig.lastIndexOf(':') == -1
+              || methodSig.split(":")[0].lastIndexOf('.') == -1)) {
+        throw new Error(
+            "Invalid method signature " + methodSig + " in stubx file " + stubxLocation);
+      }
+      result
+          .computeIfAbsent(methodSig, s -> new LinkedHashMap<>())
+          .computeIfAbsent(argNum, s -> new LinkedHashSet<>())
+          .add(stringAt(recordPos + 2 * Integer.BYTES));
+    }
+    return result;
+  }
+
+  /**
+   * Calls the given consumer with each null-marked class.
+   *
+   * @param consumer called with the name of each null-marked class
+   */
+  void forEachNullMarkedClass(Consumer<String> consumer) {
+    for (int i = 0; i < numNullMarkedClasses; i++) {
+      consumer.accept(stringAt(nullMarkedClassesPos + i * Integer.BYTES));
+    }
+  }
+
+  /**
+   * Calls the given consumer with each type parameter with a nullable upper bound.
+   *
+   * @param consumer called with the class name and the index of the type parameter
+   */
+  void forEachNullableUpperBound(BiConsumer<String, Integer> consumer) {
+    int numClasses = buffer.getInt(upperBoundsPos);
+    int pos = upperBoundsPos + Integer.BYTES;
+    for (int i = 0; i < numClasses; i++) {
+      int numParams = buffer.getInt(pos);
+      pos += Integer.BYTES;
+      for (int j = 0; j < numParams; j++) {
+        consumer.accept(stringAt(pos), buffer.getInt(pos + Integer.BYTES));
+        pos += 2 * Integer.BYTES;
+      }
+    }
+  }
+}
@@ -29,17 +29,23 @@ import static com.uber.nullaway.Nullness.NULLABLE;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Sets;
 import com.google.errorprone.VisitorState;
 import com.google.errorprone.util.ASTHelpers;
+import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.ExpressionTree;
 import com.sun.source.tree.MethodInvocationTree;
+import com.sun.tools.javac.code.Flags;
 import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Type;
 import com.sun.tools.javac.code.Types;
 import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.Name;
 import com.sun.tools.javac.util.Names;
+import com.uber.nullaway.CacheStatsReporter;
 import com.uber.nullaway.CodeAnnotationInfo;
 import com.uber.nullaway.Config;
 import com.uber.nullaway.LibraryModels;
@@ -50,14 +56,21 @@ import com.uber.nullaway.annotations.Initializer;
 import com.uber.nullaway.dataflow.AccessPath;
 import com.uber.nullaway.dataflow.AccessPathNullnessPropagation;
 import com.uber.nullaway.handlers.stream.StreamTypeRecord;
-import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import org.checkerframework.nullaway.dataflow.cfg.node.FieldAccessNode;
 import org.checkerframework.nullaway.dataflow.cfg.node.MethodInvocationNode;
@@ -75,14 +88,26 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
 
   private final Config config;
   private Handler mainHandler;
-  private final LibraryModels libraryModels;
+  private final CombinedLibraryModels libraryModels;
 
   private @Nullable OptimizedLibraryModels optLibraryModels;
 
+  private boolean registeredCacheStats = false;
+
+  /**
+   * The process-wide counts of reused astubx models when this handler was created, before loading
+   * its models, so that the stats of this compilation only count the reuses since then.
+   */
+  private final long sharedModelsHitsAtStart;
+
+  private final long sharedModelsNanosSavedAtStart;
+
   public LibraryModelsHandler(Config config) {
     super();
     this.config = config;
-    libraryModels = loadLibraryModels(config);
+    sharedModelsHitsAtStart = ExternalStubxLibraryModels.sharedModelsHits();
+    sharedModelsNanosSavedAtStart = ExternalStubxLibraryModels.sharedModelsNanosSaved();
+    libraryModels = loadLibraryModels(config, LibraryModels.class.getClassLoader());
   }
 
   @Initializer
@@ -90,6 +115,39 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
     this.mainHandler = mainHandler;
   }
 
+  @Override
+  public void onMatchTopLevelClass(
+      NullAway analysis, ClassTree tree, VisitorState state, Symbol.ClassSymbol classSymbol) {
+    // the models are loaded in the constructor, which has no access to the Context, so stats about
+    // loading them are registered when the first class is matched
+    if (!registeredCacheStats) {
+      registeredCacheStats = true;
+      if (config.recordCacheStats() && config.isJarInferEnabled() && config.useSharedStubxCache()) {
+        CacheStatsReporter.instance(state.context)
+            .addSummary("sharedStubxModels", this::sharedModelsStatsSummary);
+      }
+    }
+  }
+
+  /**
+   * Returns a one-line summary of the astubx models reused from earlier compilations since this
+   * handler was created, i.e., for this compilation, along with the totals for the process.
+   *
+   * @return the summary
+   */
+  private String sharedModelsStatsSummary() {
+    long hits = ExternalStubxLibraryModels.sharedModelsHits();
+    long nanosSaved = ExternalStubxLibraryModels.sharedModelsNanosSaved();
+    return String.format(
+        Locale.ROOT,
+        "NullAway shared astubx models: %d reuses, %d ms of parsing saved in this compilation"
+            + " (process-wide: %d reuses, %d ms saved)",
+        hits - sharedModelsHitsAtStart,
+        TimeUnit.NANOSECONDS.toMillis(nanosSaved - sharedModelsNanosSavedAtStart),
+        hits,
+        TimeUnit.NANOSECONDS.toMillis(nanosSaved));
+  }
+
   @Override
   public boolean onOverrideFieldNullability(Symbol field) {
     return isNullableFieldInLibraryModels(field);
@@ -146,9 +204,9 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
       boolean isAnnotated,
       Nullness returnNullness) {
     OptimizedLibraryModels optLibraryModels = getOptLibraryModels(state.context);
-    if (optLibraryModels.hasNonNullReturn(methodSymbol, state.getTypes(), !isAnnotated)) {
+    if (optLibraryModels.hasNonNullReturn(methodSymbol, !isAnnotated)) {
       return NONNULL;
-    } else if (optLibraryModels.hasNullableReturn(methodSymbol, state.getTypes(), !isAnnotated)) {
+    } else if (optLibraryModels.hasNullableReturn(methodSymbol, !isAnnotated)) {
       return NULLABLE;
     }
     return returnNullness;
@@ -179,10 +237,9 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
             .isSymbolUnannotated(methodSymbol, this.config, mainHandler);
     if (exprMayBeNull) {
       // This is the only case in which we may switch the result from @Nullable to @NonNull:
-      return !optLibraryModels.hasNonNullReturn(
-          methodSymbol, state.getTypes(), isMethodUnannotated);
+      return !optLibraryModels.hasNonNullReturn(methodSymbol, isMethodUnannotated);
     }
-    if (optLibraryModels.hasNullableReturn(methodSymbol, state.getTypes(), isMethodUnannotated)) {
+    if (optLibraryModels.hasNullableReturn(methodSymbol, isMethodUnannotated)) {
       return true;
     }
     if (!optLibraryModels.nullImpliesNullParameters(methodSymbol).isEmpty()) {
@@ -254,10 +311,9 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
       }
       return anyNull ? NullnessHint.HINT_NULLABLE : NullnessHint.FORCE_NONNULL;
     }
-    Types types = state.getTypes();
-    if (optLibraryModels.hasNonNullReturn(callee, types, !isMethodAnnotated)) {
+    if (optLibraryModels.hasNonNullReturn(callee, !isMethodAnnotated)) {
       return NullnessHint.FORCE_NONNULL;
-    } else if (optLibraryModels.hasNullableReturn(callee, types, !isMethodAnnotated)) {
+    } else if (optLibraryModels.hasNullableReturn(callee, !isMethodAnnotated)) {
       return NullnessHint.HINT_NULLABLE;
     } else {
       return NullnessHint.UNKNOWN;
@@ -382,13 +438,36 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
     return libraryModels.customStreamNullabilitySpecs();
   }
 
-  private static LibraryModels loadLibraryModels(Config config) {
-    Iterable<LibraryModels> externalLibraryModels =
-        ServiceLoader.load(LibraryModels.class, LibraryModels.class.getClassLoader());
+  /**
+   * Loads the default models, the {@link LibraryModels} implementations visible to the given class
+   * loader (from the up-to-date {@link LibraryModelsSnapshot}s where they cover them), and the
+   * astubx models.
+   *
+   * @param config NullAway config
+   * @param classLoader the class loader to find snapshots and implementations with
+   * @return the combined models
+   */
+  static CombinedLibraryModels loadLibraryModels(Config config, ClassLoader classLoader) {
+    ServiceLoader<LibraryModels> externalLibraryModels =
+        ServiceLoader.load(LibraryModels.class, classLoader);
     ImmutableSet.Builder<LibraryModels> libModelsBuilder = new ImmutableSet.Builder<>();
-    libModelsBuilder.add(new DefaultLibraryModels(config)).addAll(externalLibraryModels);
+    libModelsBuilder.add(new DefaultLibraryModels(config));
+    LibraryModelsSnapshot snapshot = LibraryModelsSnapshot.load(classLoader);
+    if (snapshot == null) {
+      libModelsBuilder.addAll(externalLibraryModels);
+    } else {
+      // the models of implementations covered by the snapshot are already merged into it, so only
+      // instantiate the remaining ones
+      libModelsBuilder.add(snapshot.getModels());
+      for (ServiceLoader.Provider<LibraryModels> provider :
+          externalLibraryModels.stream().collect(ImmutableList.toImmutableList())) {
+        if (!snapshot.covers(provider.type().getName())) {
+          libModelsBuilder.add(provider.get());
+        }
+      }
+    }
     if (config.isJarInferEnabled()) {
-      libModelsBuilder.add(new ExternalStubxLibraryModels());
+      libModelsBuilder.add(ExternalStubxLibraryModels.load(config.useSharedStubxCache()));
     }
     return new CombinedLibraryModels(libModelsBuilder.build(), config);
   }
@@ -982,10 +1061,16 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
     }
   }
 
-  private static class CombinedLibraryModels implements LibraryModels {
+  static class CombinedLibraryModels implements LibraryModels {
 
     private final Config config;
 
+    /**
+     * The astubx models with method models in version 2 files, which are looked up per class rather
+     * than merged into the tables below, or null if there are none.
+     */
+    private final @Nullable ExternalStubxLibraryModels indexedStubxModels;
+
     private final ImmutableSetMultimap<MethodRef, Integer> failIfNullParameters;
 
     private final ImmutableSetMultimap<MethodRef, Integer> explicitlyNullableParameters;
@@ -1036,7 +1121,12 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
       ImmutableList.Builder<StreamTypeRecord> customStreamNullabilitySpecsBuilder =
           new ImmutableList.Builder<>();
       ImmutableSet.Builder<FieldRef> nullableFieldsBuilder = new ImmutableSet.Builder<>();
+      ExternalStubxLibraryModels indexedStubxModels = null;
       for (LibraryModels libraryModels : models) {
+        if (libraryModels instanceof ExternalStubxLibraryModels
+            && ((ExternalStubxLibraryModels) libraryModels).hasIndexedFiles()) {
+          indexedStubxModels = (ExternalStubxLibraryModels) libraryModels;
+        }
         for (Map.Entry<MethodRef, Integer> entry : libraryModels.failIfNullParameters().entries()) {
           if (shouldSkipModel(entry.getKey())) {
             continue;
@@ -1120,12 +1210,30 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
       nullableFields = nullableFieldsBuilder.build();
       nullableVariableTypeUpperBounds = nullableVariableTypeUpperBoundsBuilder.build();
       nullMarkedClasses = nullMarkedClassesBuilder.build();
+      this.indexedStubxModels = indexedStubxModels;
     }
 
     private boolean shouldSkipModel(MethodRef key) {
       return config.isSkippedLibraryModel(key.enclosingClass + "." + key.methodName);
     }
 
+    boolean hasIndexedModels() {
+      return indexedStubxModels != null;
+    }
+
+    /**
+     * Returns the models of the methods declared by a class from version 2 astubx files, which are
+     * not included in the tables returned by the other methods. Skipped models are not removed.
+     *
+     * @param className the qualified name of the class
+     * @return the models of the methods of the class
+     */
+    ExternalStubxLibraryModels.ClassModels indexedModelsForClass(String className) {
+      return indexedStubxModels == null
+          ? ExternalStubxLibraryModels.ClassModels.NONE
+          : indexedStubxModels.modelsForClass(className);
+    }
+
     @Override
     public ImmutableSetMultimap<MethodRef, Integer> failIfNullParameters() {
       return failIfNullParameters;
@@ -1213,18 +1321,112 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
         this.state = state;
       }
 
-      @Nullable T get(Symbol.MethodSymbol symbol) {
+      @Nullable T get(Symbol.MethodSymbol symbol, MethodRef ref) {
         Map<MethodRef, T> methodRefTMap = state.get(symbol.name);
         if (methodRefTMap == null) {
           return null;
         }
-        MethodRef ref = MethodRef.fromSymbol(symbol);
         return methodRefTMap.get(ref);
       }
 
       boolean nameNotPresent(Symbol.MethodSymbol symbol) {
         return state.get(symbol.name) == null;
       }
+
+      Set<Name> names() {
+        return state.keySet();
+      }
+    }
+
+    /**
+     * The models of the methods declared by one class that come from version 2 astubx files, which
+     * are only looked up for the classes NullAway asks about.
+     */
+    private static final class IndexedClassModels {
+
+      static final IndexedClassModels NONE =
+          new IndexedClassModels(
+              new NameIndexedMap<>(ImmutableMap.of()),
+              new NameIndexedMap<>(ImmutableMap.of()),
+              new NameIndexedMap<>(ImmutableMap.of()),
+              ImmutableSet.of());
+
+      final NameIndexedMap<ImmutableSet<Integer>> explicitlyNullableParams;
+      final NameIndexedMap<ImmutableSet<Integer>> nonNullParams;
+      final NameIndexedMap<Boolean> nullableRet;
+      /** Names of all methods of the class with at least one model. */
+      final Set<Name> methodNames;
+
+      IndexedClassModels(
+          NameIndexedMap<ImmutableSet<Integer>> explicitlyNullableParams,
+          NameIndexedMap<ImmutableSet<Integer>> nonNullParams,
+          NameIndexedMap<Boolean> nullableRet,
+          Set<Name> methodNames) {
+        this.explicitlyNullableParams = explicitlyNullableParams;
+        this.nonNullParams = nonNullParams;
+        this.nullableRet = nullableRet;
+        this.methodNames = methodNames;
+      }
+    }
+
+    /** All library models for a single method, including models inherited from super methods. */
+    private static final class ModelResult {
+
+      static final ModelResult NONE =
+          new ModelResult(
+              false,
+              false,
+              false,
+              false,
+              ImmutableSet.of(),
+              ImmutableSet.of(),
+              ImmutableSet.of(),
+              ImmutableSet.of(),
+              ImmutableSet.of(),
+              ImmutableSet.of(),
+              ImmutableSet.of());
+
+      /** Whether there is a non-null return model for the method itself. */
+      final boolean nonNullRet;
+      /** Whether there is a non-null return model for the method or a method it overrides. */
+      final boolean nonNullRetIncludingSupers;
+      /** Whether there is a nullable return model for the method itself. */
+      final boolean nullableRet;
+      /** Whether there is a nullable return model for the method or a method it overrides. */
+      final boolean nullableRetIncludingSupers;
+
+      final ImmutableSet<Integer> failIfNullParams;
+      final ImmutableSet<Integer> explicitlyNullableParams;
+      final ImmutableSet<Integer> nonNullParams;
+      final ImmutableSet<Integer> nullImpliesTrueParams;
+      final ImmutableSet<Integer> nullImpliesFalseParams;
+      final ImmutableSet<Integer> nullImpliesNullParams;
+      final ImmutableSet<Integer> castToNonNullParams;
+
+      ModelResult(
+          boolean nonNullRet,
+          boolean nonNullRetIncludingSupers,
+          boolean nullableRet,
+          boolean nullableRetIncludingSupers,
+          ImmutableSet<Integer> failIfNullParams,
+          ImmutableSet<Integer> explicitlyNullableParams,
+          ImmutableSet<Integer> nonNullParams,
+          ImmutableSet<Integer> nullImpliesTrueParams,
+          ImmutableSet<Integer> nullImpliesFalseParams,
+          ImmutableSet<Integer> nullImpliesNullParams,
+          ImmutableSet<Integer> castToNonNullParams) {
+        this.nonNullRet = nonNullRet;
+        this.nonNullRetIncludingSupers = nonNullRetIncludingSupers;
+        this.nullableRet = nullableRet;
+        this.nullableRetIncludingSupers = nullableRetIncludingSupers;
+        this.failIfNullParams = failIfNullParams;
+        this.explicitlyNullableParams = explicitlyNullableParams;
+        this.nonNullParams = nonNullParams;
+        this.nullImpliesTrueParams = nullImpliesTrueParams;
+        this.nullImpliesFalseParams = nullImpliesFalseParams;
+        this.nullImpliesNullParams = nullImpliesNullParams;
+        this.castToNonNullParams = castToNonNullParams;
+      }
     }
 
     private final NameIndexedMap<ImmutableSet<Integer>> failIfNullParams;
@@ -1237,8 +1439,45 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
     private final NameIndexedMap<Boolean> nonNullRet;
     private final NameIndexedMap<ImmutableSet<Integer>> castToNonNullMethods;
 
-    OptimizedLibraryModels(LibraryModels models, Context context) {
-      Names names = Names.instance(context);
+    /** Names of all methods with at least one model, to rule out other methods quickly. */
+    private final Set<Name> modeledMethodNames = new HashSet<>();
+
+    /**
+     * Resolved models for every method looked up so far that has a modeled name. Symbols are
+     * unique within a compilation, so this is keyed by identity.
+     */
+    private final Map<Symbol.MethodSymbol, ModelResult> resolvedModels = new IdentityHashMap<>();
+
+    /**
+     * Simple names of the methods with a return model, indexed by the class declaring them. Used to
+     * find the models a method may inherit from the methods it overrides.
+     */
+    private final Map<String, Set<Name>> returnModelNamesByOwner = new HashMap<>();
+
+    /**
+     * For every class whose methods were checked for inherited return models, its supertypes that
+     * declare methods with return models, and the simple names of those methods.
+     */
+    private final Map<Symbol.ClassSymbol, ImmutableMap<Symbol.ClassSymbol, Set<Name>>>
+        modeledSupertypes = new IdentityHashMap<>();
+
+    /**
+     * The models from version 2 astubx files of every class looked up so far, when there are such
+     * files.
+     */
+    private final Map<Symbol.ClassSymbol, IndexedClassModels> indexedClassModels =
+        new IdentityHashMap<>();
+
+    private final CombinedLibraryModels models;
+
+    private final Names names;
+
+    private final Types types;
+
+    OptimizedLibraryModels(CombinedLibraryModels models, Context context) {
+      this.models = models;
+      names = Names.instance(context);
+      types = Types.instance(context);
       failIfNullParams = makeOptimizedIntSetLookup(names, models.failIfNullParameters());
       explicitlyNullableParams =
           makeOptimizedIntSetLookup(names, models.explicitlyNullableParameters());
@@ -1250,47 +1489,165 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
       nullableRet = makeOptimizedBoolLookup(names, models.nullableReturns());
       nonNullRet = makeOptimizedBoolLookup(names, models.nonNullReturns());
       castToNonNullMethods = makeOptimizedIntSetLookup(names, models.castToNonNullMethods());
+      for (MethodRef ref : Sets.union(models.nullableReturns(), models.nonNullReturns())) {
+        returnModelNamesByOwner
+            .computeIfAbsent(ref.enclosingClass, k -> new HashSet<>())
+            .add(names.fromString(ref.methodName));
+      }
     }
 
-    boolean hasNonNullReturn(Symbol.MethodSymbol symbol, Types types, boolean checkSuper) {
-      return lookupHandlingOverrides(symbol, types, nonNullRet, checkSuper) != null;
+    boolean hasNonNullReturn(Symbol.MethodSymbol symbol, boolean checkSuper) {
+      ModelResult result = resolve(symbol);
+      return checkSuper ? result.nonNullRetIncludingSupers : result.nonNullRet;
     }
 
-    boolean hasNullableReturn(Symbol.MethodSymbol symbol, Types types, boolean checkSuper) {
-      return lookupHandlingOverrides(symbol, types, nullableRet, checkSuper) != null;
+    boolean hasNullableReturn(Symbol.MethodSymbol symbol, boolean checkSuper) {
+      ModelResult result = resolve(symbol);
+      return checkSuper ? result.nullableRetIncludingSupers : result.nullableRet;
     }
 
     ImmutableSet<Integer> failIfNullParameters(Symbol.MethodSymbol symbol) {
-      return lookupImmutableSet(symbol, failIfNullParams);
+      return resolve(symbol).failIfNullParams;
     }
 
     ImmutableSet<Integer> explicitlyNullableParameters(Symbol.MethodSymbol symbol) {
-      return lookupImmutableSet(symbol, explicitlyNullableParams);
+      return resolve(symbol).explicitlyNullableParams;
     }
 
     ImmutableSet<Integer> nonNullParameters(Symbol.MethodSymbol symbol) {
-      return lookupImmutableSet(symbol, nonNullParams);
+      return resolve(symbol).nonNullParams;
     }
 
     ImmutableSet<Integer> nullImpliesTrueParameters(Symbol.MethodSymbol symbol) {
-      return lookupImmutableSet(symbol, nullImpliesTrueParams);
+      return resolve(symbol).nullImpliesTrueParams;
     }
 
     ImmutableSet<Integer> nullImpliesFalseParameters(Symbol.MethodSymbol symbol) {
-      return lookupImmutableSet(symbol, nullImpliesFalseParams);
+      return resolve(symbol).nullImpliesFalseParams;
     }
 
     ImmutableSet<Integer> nullImpliesNullParameters(Symbol.MethodSymbol symbol) {
-      return lookupImmutableSet(symbol, nullImpliesNullParams);
+      return resolve(symbol).nullImpliesNullParams;
     }
 
     ImmutableSet<Integer> castToNonNullMethod(Symbol.MethodSymbol symbol) {
-      return lookupImmutableSet(symbol, castToNonNullMethods);
+      return resolve(symbol).castToNonNullParams;
+    }
+
+    /**
+     * Returns all models for the given method, computing them on the first lookup of the method.
+     */
+    private ModelResult resolve(Symbol.MethodSymbol symbol) {
+      if (!modeledMethodNames.contains(symbol.name) && !hasIndexedModelForName(symbol)) {
+        // no model matching the method name, so we don't need to build a MethodRef or check for
+        // overridden methods
+        return ModelResult.NONE;
+      }
+      ModelResult result = resolvedModels.get(symbol);
+      if (result == null) {
+        MethodRef ref = MethodRef.fromSymbol(symbol);
+        IndexedClassModels indexed = indexedClassModels(symbol.enclClass());
+        boolean hasNonNullRet = nonNullRet.get(symbol, ref) != null;
+        boolean hasNullableRet =
+            nullableRet.get(symbol, ref) != null || indexed.nullableRet.get(symbol, ref) != null;
+        result =
+            new ModelResult(
+                hasNonNullRet,
+                hasNonNullRet || overridesModeledMethod(symbol, nonNullRet, false),
+                hasNullableRet,
+                hasNullableRet || overridesModeledMethod(symbol, nullableRet, true),
+                lookupImmutableSet(symbol, ref, failIfNullParams),
+                union(
+                    lookupImmutableSet(symbol, ref, explicitlyNullableParams),
+                    lookupImmutableSet(symbol, ref, indexed.explicitlyNullableParams)),
+                union(
+                    lookupImmutableSet(symbol, ref, nonNullParams),
+                    lookupImmutableSet(symbol, ref, indexed.nonNullParams)),
+                lookupImmutableSet(symbol, ref, nullImpliesTrueParams),
+                lookupImmutableSet(symbol, ref, nullImpliesFalseParams),
+                lookupImmutableSet(symbol, ref, nullImpliesNullParams),
+                lookupImmutableSet(symbol, ref, castToNonNullMethods));
+        resolvedModels.put(symbol, result);
+      }
+      return result;
+    }
+
+    /**
+     * Checks if a version 2 astubx file has a model for a method with the same name as the given
+     * one, in its class or in a supertype it may inherit a return model from.
+     */
+    private boolean hasIndexedModelForName(Symbol.MethodSymbol symbol) {
+      if (!models.hasIndexedModels()) {
+        return false;
+      }
+      Symbol.ClassSymbol owner = symbol.enclClass();
+      if (indexedClassModels(owner).methodNames.contains(symbol.name)) {
+        return true;
+      }
+      if (symbol.isStatic()) {
+        return false;
+      }
+      for (Set<Name> modeledNames : modeledSupertypes(owner).values()) {
+        if (modeledNames.contains(symbol.name)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Returns the models of the methods of a class from version 2 astubx files, decoding them on
+     * the first lookup of the class.
+     */
+    private IndexedClassModels indexedClassModels(Symbol.ClassSymbol classSymbol) {
+      if (!models.hasIndexedModels()) {
+        return IndexedClassModels.NONE;
+      }
+      IndexedClassModels result = indexedClassModels.get(classSymbol);
+      if (result == null) {
+        ExternalStubxLibraryModels.ClassModels classModels =
+            models.indexedModelsForClass(classSymbol.getQualifiedName().toString());
+        if (classModels == ExternalStubxLibraryModels.ClassModels.NONE) {
+          result = IndexedClassModels.NONE;
+        } else {
+          Set<Name> methodNames = new HashSet<>();
+          result =
+              new IndexedClassModels(
+                  makeOptimizedLookup(
+                      names,
+                      withoutSkippedModels(classModels.explicitlyNullableParameters.keySet()),
+                      classModels.explicitlyNullableParameters::get,
+                      methodNames),
+                  makeOptimizedLookup(
+                      names,
+                      withoutSkippedModels(classModels.nonNullParameters.keySet()),
+                      classModels.nonNullParameters::get,
+                      methodNames),
+                  makeOptimizedLookup(
+                      names,
+                      withoutSkippedModels(classModels.nullableReturns),
+                      (ref) -> true,
+                      methodNames),
+                  methodNames);
+        }
+        indexedClassModels.put(classSymbol, result);
+      }
+      return result;
+    }
+
+    private Set<MethodRef> withoutSkippedModels(Set<MethodRef> refs) {
+      return Sets.filter(refs, ref -> !models.shouldSkipModel(ref));
+    }
+
+    private static ImmutableSet<Integer> union(ImmutableSet<Integer> a, ImmutableSet<Integer> b) {
+      return b.isEmpty() ? a : Sets.union(a, b).immutableCopy();
     }
 
-    private ImmutableSet<Integer> lookupImmutableSet(
-        Symbol.MethodSymbol symbol, NameIndexedMap<ImmutableSet<Integer>> lookup) {
-      ImmutableSet<Integer> result = lookup.get(symbol);
+    private static ImmutableSet<Integer> lookupImmutableSet(
+        Symbol.MethodSymbol symbol,
+        MethodRef ref,
+        NameIndexedMap<ImmutableSet<Integer>> lookup) {
+      ImmutableSet<Integer> result = lookup.get(symbol, ref);
       return (result == null) ? ImmutableSet.of() : result;
     }
 
@@ -1306,9 +1663,18 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
 
     private <T> NameIndexedMap<T> makeOptimizedLookup(
         Names names, Set<MethodRef> refs, Function<MethodRef, T> getValForRef) {
+      return makeOptimizedLookup(names, refs, getValForRef, modeledMethodNames);
+    }
+
+    private static <T> NameIndexedMap<T> makeOptimizedLookup(
+        Names names,
+        Set<MethodRef> refs,
+        Function<MethodRef, T> getValForRef,
+        Set<Name> methodNames) {
       Map<Name, Map<MethodRef, T>> nameMapping = new LinkedHashMap<>();
       for (MethodRef ref : refs) {
         Name methodName = names.fromString(ref.methodName);
+        methodNames.add(methodName);
         Map<MethodRef, T> mapForName =
             nameMapping.computeIfAbsent(methodName, k -> new LinkedHashMap<>());
         mapForName.put(ref, getValForRef.apply(ref));
@@ -1317,38 +1683,76 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
     }
 
     /**
-     * checks if symbol is present in the NameIndexedMap or if it overrides some method in the
-     * NameIndexedMap
+     * checks if symbol overrides some method in the NameIndexedMap. For unannotated code, we allow
+     * a single model to cover all overriding implementations / subtypes. Only the supertypes that
+     * declare modeled methods are searched. If {@code checkIndexedNullableReturns} is set, the
+     * nullable return models of version 2 astubx files are checked as well.
      */
-    private static Symbol.@Nullable MethodSymbol lookupHandlingOverrides(
+    private boolean overridesModeledMethod(
         Symbol.MethodSymbol symbol,
-        Types types,
         NameIndexedMap<Boolean> optLookup,
-        boolean checkSuperTypes) {
-      if (optLookup.nameNotPresent(symbol)) {
+        boolean checkIndexedNullableReturns) {
+      boolean checkIndexed = checkIndexedNullableReturns && models.hasIndexedModels();
+      if ((optLookup.nameNotPresent(symbol) && !checkIndexed) || symbol.isStatic()) {
         // no model matching the method name, so we don't need to check for overridden methods
-        return null;
-      }
-      if (optLookup.get(symbol) != null) {
-        return symbol;
+        return false;
       }
-      if (checkSuperTypes == false) {
-        // Consider only a model on the exact class and method, used when checking annotated code
-        return null;
+      Symbol.ClassSymbol owner = symbol.enclClass();
+      for (Map.Entry<Symbol.ClassSymbol, Set<Name>> entry : modeledSupertypes(owner).entrySet()) {
+        if (!entry.getValue().contains(symbol.name)) {
+          continue;
+        }
+        for (Symbol m : entry.getKey().members().getSymbolsByName(symbol.name)) {
+          if (!(m instanceof Symbol.MethodSymbol)
+              || m.isStatic()
+              || (m.flags() & Flags.SYNTHETIC) != 0) {
+            continue;
+          }
+          Symbol.MethodSymbol superSymbol = (Symbol.MethodSymbol) m;
+          if (symbol.overrides(superSymbol, owner, types, /*checkResult*/ true)) {
+            MethodRef superRef = MethodRef.fromSymbol(superSymbol);
+            if (optLookup.get(superSymbol, superRef) != null
+                || (checkIndexed
+                    && indexedClassModels(entry.getKey()).nullableRet.get(superSymbol, superRef)
+                        != null)) {
+              return true;
+            }
+          }
+        }
       }
-      // For unannotated code, we allow a single model to cover all overriding implementations /
-      // subtypes
-      for (Symbol.MethodSymbol superSymbol : ASTHelpers.findSuperMethods(symbol, types)) {
-        if (optLookup.get(superSymbol) != null) {
-          return superSymbol;
+      return false;
+    }
+
+    private ImmutableMap<Symbol.ClassSymbol, Set<Name>> modeledSupertypes(
+        Symbol.ClassSymbol classSymbol) {
+      ImmutableMap<Symbol.ClassSymbol, Set<Name>> result = modeledSupertypes.get(classSymbol);
+      if (result == null) {
+        ImmutableMap.Builder<Symbol.ClassSymbol, Set<Name>> builder = ImmutableMap.builder();
+        for (Type supertype : types.closure(classSymbol.type)) {
+          if (!(supertype.tsym instanceof Symbol.ClassSymbol) || supertype.tsym == classSymbol) {
+            continue;
+          }
+          Set<Name> modeledNames =
+              returnModelNamesByOwner.get(supertype.tsym.getQualifiedName().toString());
+          Set<Name> indexedNames =
+              indexedClassModels((Symbol.ClassSymbol) supertype.tsym).nullableRet.names();
+          if (!indexedNames.isEmpty()) {
+            modeledNames =
+                modeledNames == null ? indexedNames : Sets.union(modeledNames, indexedNames);
+          }
+          if (modeledNames != null) {
+            builder.put((Symbol.ClassSymbol) supertype.tsym, modeledNames);
+          }
         }
+        result = builder.build();
+        modeledSupertypes.put(classSymbol, result);
       }
-      return null;
+      return result;
     }
   }
 
   /** Constructs Library Models from stubx files */
-  private static class ExternalStubxLibraryModels implements LibraryModels {
+  static class ExternalStubxLibraryModels implements LibraryModels {
 
     /** astubx file name used in our Android SDK JarInfer models */
     private static final String ANDROID_ASTUBX_LOCATION = "jarinfer.astubx";
@@ -1357,22 +1761,149 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
     private static final String ANDROID_MODEL_CLASS =
         "com.uber.nullaway.jarinfer.AndroidJarInferModels";
 
-    private final Map<String, Map<String, Map<Integer, Set<String>>>> argAnnotCache;
-    private final Set<String> nullMarkedClassesCache;
-    private final Map<String, Integer> upperBoundsCache;
+    /**
+     * Models parsed from astubx files, shared by all compilations in this process (e.g., in a
+     * Gradle daemon or a Bazel persistent worker) that load NullAway with the same class loader.
+     * Only the models of the last set of astubx files loaded are kept; they are only reused if the
+     * locations and contents of all astubx files are unchanged, and are softly referenced, so they
+     * can be dropped under memory pressure. Guarded by the lock of this class.
+     */
+    private static @Nullable SoftReference<SharedModels> sharedModels;
+
+    /** Number of compilations that reused shared models. */
+    private static final AtomicLong sharedModelsHits = new AtomicLong();
 
-    ExternalStubxLibraryModels() {
-      String libraryModelLogName = "LM";
-      StubxCacheUtil cacheUtil = new StubxCacheUtil(libraryModelLogName);
+    /** Total time it took to parse the shared models that were reused. */
+    private static final AtomicLong sharedModelsNanosSaved = new AtomicLong();
+
+    private static final class SharedModels {
+      /** The location and content hash of each astubx file the models were parsed from. */
+      final ImmutableList<String> stubxFiles;
+
+      final ExternalStubxLibraryModels models;
+
+      final long loadNanos;
+
+      SharedModels(
+          ImmutableList<String> stubxFiles, ExternalStubxLibraryModels models, long loadNanos) {
+        this.stubxFiles = stubxFiles;
+        this.models = models;
+        this.loadNanos = loadNanos;
+      }
+    }
+
+    /** The models of the methods declared by a single class, from version 2 astubx files. */
+    static final class ClassModels {
+
+      static final ClassModels NONE =
+          new ClassModels(ImmutableSetMultimap.of(), ImmutableSetMultimap.of(), ImmutableSet.of());
+
+      final ImmutableSetMultimap<MethodRef, Integer> explicitlyNullableParameters;
+      final ImmutableSetMultimap<MethodRef, Integer> nonNullParameters;
+      final ImmutableSet<MethodRef> nullableReturns;
+
+      ClassModels(
+          ImmutableSetMultimap<MethodRef, Integer> explicitlyNullableParameters,
+          ImmutableSetMultimap<MethodRef, Integer> nonNullParameters,
+          ImmutableSet<MethodRef> nullableReturns) {
+        this.explicitlyNullableParameters = explicitlyNullableParameters;
+        this.nonNullParameters = nonNullParameters;
+        this.nullableReturns = nullableReturns;
+      }
+    }
+
+    private final ImmutableSet<String> nullMarkedClasses;
+    private final ImmutableSetMultimap<String, Integer> typeVariablesWithNullableUpperBounds;
+    private final ImmutableSetMultimap<MethodRef, Integer> explicitlyNullableParameters;
+    private final ImmutableSetMultimap<MethodRef, Integer> nonNullParameters;
+    private final ImmutableSet<MethodRef> nullableReturns;
+
+    /**
+     * Version 2 astubx files, whose method models are not in the tables above but decoded per class
+     * by {@link #modelsForClass(String)}.
+     */
+    private final ImmutableList<IndexedStubxFile> indexedFiles;
+
+    /**
+     * The method models decoded from {@link #indexedFiles} so far, by class name. The models may be
+     * shared by concurrent compilations, so this map is concurrent.
+     */
+    private final Map<String, ClassModels> indexedClassModels = new ConcurrentHashMap<>();
+
+    /**
+     * Loads the models from all astubx files in the classpath, reusing models parsed by an earlier
+     * compilation in this process if possible.
+     *
+     * @param useSharedCache whether models may be shared with other compilations
+     * @return the models
+     */
+    static ExternalStubxLibraryModels load(boolean useSharedCache) {
+      return load(StubxCacheUtil.findStubxResources(), findAndroidModels(), useSharedCache);
+    }
+
+    /**
+     * Loads the models from the given astubx files, reusing the models parsed by the previous call
+     * if it was given the same files with the same contents.
+     *
+     * @param providerResources the astubx files found through {@code JarInferStubxProvider}s
+     * @param androidResource the astubx file with the Android SDK models, if any
+     * @param useSharedCache whether models may be shared with other compilations
+     * @return the models
+     */
+    static ExternalStubxLibraryModels load(
+        List<StubxCacheUtil.StubxResource> providerResources,
+        StubxCacheUtil.@Nullable StubxResource androidResource,
+        boolean useSharedCache) {
+      if (!useSharedCache) {
+        return new ExternalStubxLibraryModels(providerResources, androidResource);
+      }
+      ImmutableList.Builder<String> stubxFilesBuilder = ImmutableList.builder();
+      for (StubxCacheUtil.StubxResource resource : providerResources) {
+        stubxFilesBuilder.add(resource.getLocation() + "#" + resource.contentHash());
+      }
+      if (androidResource != null) {
+        stubxFilesBuilder.add(androidResource.getLocation() + "#" + androidResource.contentHash());
+      }
+      ImmutableList<String> stubxFiles = stubxFilesBuilder.build();
+      synchronized (ExternalStubxLibraryModels.class) {
+        SoftReference<SharedModels> ref = sharedModels;
+        SharedModels shared = ref == null ? null : ref.get();
+        if (shared != null && shared.stubxFiles.equals(stubxFiles)) {
+          sharedModelsHits.incrementAndGet();
+          sharedModelsNanosSaved.addAndGet(shared.loadNanos);
+          return shared.models;
+        }
+      }
+      long start = System.nanoTime();
+      ExternalStubxLibraryModels models =
+          new ExternalStubxLibraryModels(providerResources, androidResource);
+      long loadNanos = System.nanoTime() - start;
+      synchronized (ExternalStubxLibraryModels.class) {
+        sharedModels = new SoftReference<>(new SharedModels(stubxFiles, models, loadNanos));
+      }
+      return models;
+    }
+
+    /** Returns the number of compilations in this process that reused shared models. */
+    static long sharedModelsHits() {
+      return sharedModelsHits.get();
+    }
+
+    /** Returns the total time it took to parse the shared models that were reused, in nanos. */
+    static long sharedModelsNanosSaved() {
+      return sharedModelsNanosSaved.get();
+    }
+
+    private static StubxCacheUtil.@Nullable StubxResource findAndroidModels() {
       // hardcoded loading of stubx files from android-jarinfer-models-sdkXX artifacts
       try {
-        InputStream androidStubxIS =
+        URL androidStubxURL =
             Class.forName(ANDROID_MODEL_CLASS)
                 .getClassLoader()
-                .getResourceAsStream(ANDROID_ASTUBX_LOCATION);
-        if (androidStubxIS != null) {
-          cacheUtil.parseStubStream(androidStubxIS, "android.jar: " + ANDROID_ASTUBX_LOCATION);
-          astubxLoadLog("Loaded Android RT models.");
+                .getResource(ANDROID_ASTUBX_LOCATION);
+        if (androidStubxURL != null) {
+          return StubxCacheUtil.StubxResource.open(
+              androidStubxURL, "android.jar: " + ANDROID_ASTUBX_LOCATION);
         }
       } catch (ClassNotFoundException e) {
         astubxLoadLog(
@@ -1382,25 +1913,81 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
       } catch (Exception e) {
         astubxLoadLog("Cannot load Android RT models.");
       }
+      return null;
+    }
+
+    private ExternalStubxLibraryModels(
+        List<StubxCacheUtil.StubxResource> providerResources,
+        StubxCacheUtil.@Nullable StubxResource androidResource) {
+      String libraryModelLogName = "LM";
+      StubxCacheUtil cacheUtil = new StubxCacheUtil(libraryModelLogName, providerResources);
+      if (androidResource != null) {
+        try {
+          cacheUtil.parseStubResource(androidResource);
+          astubxLoadLog("Loaded Android RT models.");
+        } catch (Exception e) {
+          astubxLoadLog("Cannot load Android RT models.");
+        }
+      }
+      // The method models of version 2 files are decoded per class when needed; all other models
+      // are computed here, so that they can be shared between compilations
+      indexedFiles = ImmutableList.copyOf(cacheUtil.takeIndexedFiles());
+      Map<String, Map<String, Map<Integer, Set<String>>>> argAnnotCache =
+          cacheUtil.getArgAnnotCache();
+      nullMarkedClasses = ImmutableSet.copyOf(cacheUtil.getNullMarkedClassesCache());
+      typeVariablesWithNullableUpperBounds =
+          ImmutableSetMultimap.copyOf(cacheUtil.getUpperBoundCache().entrySet());
+      explicitlyNullableParameters = buildExplicitlyNullableParameters(argAnnotCache);
+      nonNullParameters = buildNonNullParameters(argAnnotCache);
+      nullableReturns = buildNullableReturns(argAnnotCache);
+    }
 
-      argAnnotCache = cacheUtil.getArgAnnotCache();
-      nullMarkedClassesCache = cacheUtil.getNullMarkedClassesCache();
-      upperBoundsCache = cacheUtil.getUpperBoundCache();
+    boolean hasIndexedFiles() {
+      return !indexedFiles.isEmpty();
+    }
+
+    /**
+     * Returns the models of the methods declared by a class from version 2 astubx files, decoding
+     * the records of the class on its first lookup.
+     *
+     * @param className the qualified name of the class
+     * @return the models of the methods of the class
+     */
+    ClassModels modelsForClass(String className) {
+      if (indexedFiles.isEmpty()) {
+        return ClassModels.NONE;
+      }
+      return indexedClassModels.computeIfAbsent(className, this::decodeModelsForClass);
+    }
+
+    private ClassModels decodeModelsForClass(String className) {
+      Map<String, Map<Integer, Set<String>>> methodAnnotations = new LinkedHashMap<>();
+      for (IndexedStubxFile file : indexedFiles) {
+        Map<String, Map<Integer, Set<String>>> fileAnnotations =
+            file.getMethodAnnotations(className);
+        if (fileAnnotations != null) {
+          StubxCacheUtil.mergeMethodAnnotations(methodAnnotations, fileAnnotations);
+        }
+      }
+      if (methodAnnotations.isEmpty()) {
+        return ClassModels.NONE;
+      }
+      Map<String, Map<String, Map<Integer, Set<String>>>> argAnnotCache =
+          ImmutableMap.of(className, methodAnnotations);
+      return new ClassModels(
+          buildExplicitlyNullableParameters(argAnnotCache),
+          buildNonNullParameters(argAnnotCache),
+          buildNullableReturns(argAnnotCache));
     }
 
     @Override
     public ImmutableSet<String> nullMarkedClasses() {
-      return new ImmutableSet.Builder<String>().addAll(nullMarkedClassesCache).build();
+      return nullMarkedClasses;
     }
 
     @Override
     public ImmutableSetMultimap<String, Integer> typeVariablesWithNullableUpperBounds() {
-      ImmutableSetMultimap.Builder<String, Integer> mapBuilder =
-          new ImmutableSetMultimap.Builder<>();
-      for (Map.Entry<String, Integer> entry : upperBoundsCache.entrySet()) {
-        mapBuilder.put(entry.getKey(), entry.getValue());
-      }
-      return mapBuilder.build();
+      return typeVariablesWithNullableUpperBounds;
     }
 
     @Override
@@ -1410,6 +1997,11 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
 
     @Override
     public ImmutableSetMultimap<MethodRef, Integer> explicitlyNullableParameters() {
+      return explicitlyNullableParameters;
+    }
+
+    private static ImmutableSetMultimap<MethodRef, Integer> buildExplicitlyNullableParameters(
+        Map<String, Map<String, Map<Integer, Set<String>>>> argAnnotCache) {
       ImmutableSetMultimap.Builder<MethodRef, Integer> mapBuilder =
           new ImmutableSetMultimap.Builder<>();
       for (Map.Entry<String, Map<String, Map<Integer, Set<String>>>> outerEntry :
@@ -1434,6 +2026,11 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
 
     @Override
     public ImmutableSetMultimap<MethodRef, Integer> nonNullParameters() {
+      return nonNullParameters;
+    }
+
+    private static ImmutableSetMultimap<MethodRef, Integer> buildNonNullParameters(
+        Map<String, Map<String, Map<Integer, Set<String>>>> argAnnotCache) {
       ImmutableSetMultimap.Builder<MethodRef, Integer> mapBuilder =
           new ImmutableSetMultimap.Builder<>();
       for (String className : argAnnotCache.keySet()) {
@@ -1484,6 +2081,11 @@ public class LibraryModelsHandler extends BaseNoOpHandler {
 
     @Override
     public ImmutableSet<MethodRef> nullableReturns() {
+      return nullableReturns;
+    }
+
+    private static ImmutableSet<MethodRef> buildNullableReturns(
+        Map<String, Map<String, Map<Integer, Set<String>>>> argAnnotCache) {
       ImmutableSet.Builder<MethodRef> builder = new ImmutableSet.Builder<>();
       for (String className : argAnnotCache.keySet()) {
         for (Map.Entry<String, Map<Integer, Set<String>>> methodEntry :
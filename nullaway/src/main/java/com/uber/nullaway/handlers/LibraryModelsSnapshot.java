@@ -0,0 +1,528 @@
+/*
+ * Copyright (c) 2025 Uber Technologies, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.uber.nullaway.handlers;
+
+import static com.uber.nullaway.LibraryModels.FieldRef.fieldRef;
+import static com.uber.nullaway.LibraryModels.MethodRef.methodRef;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.hash.Hashing;
+import com.uber.nullaway.LibraryModels;
+import com.uber.nullaway.LibraryModels.MethodRef;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The merged tables of a set of {@link LibraryModels} implementations, precomputed at build time
+ * and stored as a single binary resource.
+ *
+ * <p>When snapshots are found on the processor path at {@link #RESOURCE_NAME}, {@link
+ * LibraryModelsHandler} loads the merged tables from them and does not instantiate the service
+ * implementations they cover. Implementations not listed in any snapshot are still loaded through
+ * {@link java.util.ServiceLoader} as usual.
+ *
+ * <p>A snapshot records a fingerprint of the class file of each implementation it covers. If the
+ * class file visible to NullAway differs from the one the snapshot was built from, or is missing,
+ * the snapshot is stale and is ignored as a whole, so the implementations it covers are loaded
+ * through the service loader instead.
+ *
+ * <p>Custom stream specifications ({@link LibraryModels#customStreamNullabilitySpecs()}) hold
+ * arbitrary predicates and cannot be serialized, so models providing them cannot be snapshotted.
+ */
+public final class LibraryModelsSnapshot {
+
+  /** Location of the snapshot resource on the processor path. */
+  public static final String RESOURCE_NAME = "META-INF/nullaway/library-models.snapshot";
+
+  /** The file magic number for snapshot files. It should be the first four bytes of the file. */
+  private static final int FILE_MAGIC_NUMBER = 1314606420;
+
+  /**
+   * Names of the {@link LibraryModels} implementations merged into the snapshot, each with the
+   * fingerprint of the class file the snapshot was built from.
+   */
+  private final ImmutableMap<String, String> coveredModelClasses;
+
+  private final LibraryModels models;
+
+  private LibraryModelsSnapshot(
+      ImmutableMap<String, String> coveredModelClasses, LibraryModels models) {
+    this.coveredModelClasses = coveredModelClasses;
+    this.models = models;
+  }
+
+  /**
+   * Returns whether the snapshot includes the models of the given class.
+   *
+   * @param modelClassName fully-qualified name of a {@link LibraryModels} implementation
+   * @return true if the models of the class are part of {@link #getModels()}
+   */
+  public boolean covers(String modelClassName) {
+    return coveredModelClasses.containsKey(modelClassName);
+  }
+
+  /**
+   * Returns the names of the {@link LibraryModels} implementations merged into the snapshot.
+   *
+   * @return fully-qualified class names
+   */
+  public ImmutableSet<String> getCoveredModelClasses() {
+    return coveredModelClasses.keySet();
+  }
+
+  /**
+   * Returns the merged models of all covered implementations.
+   *
+   * @return the merged models
+   */
+  public LibraryModels getModels() {
+    return models;
+  }
+
+  /**
+   * Checks that the class file of every covered implementation visible to the given class loader
+   * is the one the snapshot was built from.
+   *
+   * @param classLoader the class loader the implementations would be loaded with
+   * @return false if any covered class file is missing or has changed
+   * @throws IOException if a class file cannot be read
+   */
+  public boolean isUpToDate(ClassLoader classLoader) throws IOException {
+    for (Map.Entry<String, String> entry : coveredModelClasses.entrySet()) {
+      URL classFile = classLoader.getResource(classFileName(entry.getKey()));
+      if (classFile == null) {
+        return false;
+      }
+      try (InputStream in = classFile.openStream()) {
+        if (!fingerprint(in).equals(entry.getValue())) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Loads all snapshot resources visible to the given class loader that are up to date, and merges
+   * them into one snapshot covering the implementations covered by any of them.
+   *
+   * @param classLoader the class loader to search
+   * @return the snapshot, or {@code null} if there is no up-to-date snapshot resource
+   * @see #isUpToDate(ClassLoader)
+   */
+  public static @Nullable LibraryModelsSnapshot load(ClassLoader classLoader) {
+    List<URL> urls;
+    try {
+      urls = Collections.list(classLoader.getResources(RESOURCE_NAME));
+    } catch (IOException e) {
+      throw new RuntimeException("could not find library models snapshots", e);
+    }
+    List<LibraryModelsSnapshot> snapshots = new ArrayList<>();
+    for (URL url : urls) {
+      try (InputStream in = url.openStream()) {
+        LibraryModelsSnapshot snapshot = read(in, url.toString());
+        if (snapshot.isUpToDate(classLoader)) {
+          snapshots.add(snapshot);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException("could not read library models snapshot " + url, e);
+      }
+    }
+    if (snapshots.isEmpty()) {
+      return null;
+    }
+    if (snapshots.size() == 1) {
+      return snapshots.get(0);
+    }
+    Map<String, String> coveredModelClasses = new LinkedHashMap<>();
+    List<LibraryModels> models = new ArrayList<>();
+    for (LibraryModelsSnapshot snapshot : snapshots) {
+      coveredModelClasses.putAll(snapshot.coveredModelClasses);
+      models.add(snapshot.models);
+    }
+    return new LibraryModelsSnapshot(ImmutableMap.copyOf(coveredModelClasses), merge(models));
+  }
+
+  /**
+   * Reads a snapshot written by {@link #write(Iterable, OutputStream)}.
+   *
+   * @param in the snapshot contents
+   * @param location the location of the snapshot, for error messages
+   * @return the snapshot
+   * @throws IOException if reading fails
+   */
+  public static LibraryModelsSnapshot read(InputStream in, String location) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+    if (data.readInt() != FILE_MAGIC_NUMBER) {
+      throw new Error("Invalid file version/magic number for library models snapshot " + location);
+    }
+    String[] strings = new String[data.readInt()];
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = data.readUTF();
+    }
+    ImmutableMap.Builder<String, String> coveredModelClasses = ImmutableMap.builder();
+    for (int i = data.readInt(); i > 0; i--) {
+      coveredModelClasses.put(strings[data.readInt()], strings[data.readInt()]);
+    }
+    SnapshotLibraryModels models = new SnapshotLibraryModels();
+    models.failIfNullParameters = readMethodTable(data, strings);
+    models.explicitlyNullableParameters = readMethodTable(data, strings);
+    models.nonNullParameters = readMethodTable(data, strings);
+    models.nullImpliesTrueParameters = readMethodTable(data, strings);
+    models.nullImpliesFalseParameters = readMethodTable(data, strings);
+    models.nullImpliesNullParameters = readMethodTable(data, strings);
+    models.castToNonNullMethods = readMethodTable(data, strings);
+    models.nullableReturns = readMethodSet(data, strings);
+    models.nonNullReturns = readMethodSet(data, strings);
+    ImmutableSetMultimap.Builder<String, Integer> upperBounds = ImmutableSetMultimap.builder();
+    for (int i = data.readInt(); i > 0; i--) {
+      String className = strings[data.readInt()];
+      for (int j = data.readInt(); j > 0; j--) {
+        upperBounds.put(className, data.readInt());
+      }
+    }
+    models.typeVariablesWithNullableUpperBounds = upperBounds.build();
+    ImmutableSet.Builder<String> nullMarkedClasses = ImmutableSet.builder();
+    for (int i = data.readInt(); i > 0; i--) {
+      nullMarkedClasses.add(strings[data.readInt()]);
+    }
+    models.nullMarkedClasses = nullMarkedClasses.build();
+    ImmutableSet.Builder<LibraryModels.FieldRef> nullableFields = ImmutableSet.builder();
+    for (int i = data.readInt(); i > 0; i--) {
+      nullableFields.add(fieldRef(strings[data.readInt()], strings[data.readInt()]));
+    }
+    models.nullableFields = nullableFields.build();
+    return new LibraryModelsSnapshot(coveredModelClasses.build(), models);
+  }
+
+  private static ImmutableSetMultimap<MethodRef, Integer> readMethodTable(
+      DataInputStream data, String[] strings) throws IOException {
+    ImmutableSetMultimap.Builder<MethodRef, Integer> result = ImmutableSetMultimap.builder();
+    for (int i = data.readInt(); i > 0; i--) {
+      MethodRef ref = readMethodRef(data, strings);
+      for (int j = data.readInt(); j > 0; j--) {
+        result.put(ref, data.readInt());
+      }
+    }
+    return result.build();
+  }
+
+  private static ImmutableSet<MethodRef> readMethodSet(DataInputStream data, String[] strings)
+      throws IOException {
+    ImmutableSet.Builder<MethodRef> result = ImmutableSet.builder();
+    for (int i = data.readInt(); i > 0; i--) {
+      result.add(readMethodRef(data, strings));
+    }
+    return result.build();
+  }
+
+  private static MethodRef readMethodRef(DataInputStream data, String[] strings)
+      throws IOException {
+    return methodRef(strings[data.readInt()], strings[data.readInt()]);
+  }
+
+  /**
+   * Merges the given models and writes them as a snapshot.
+   *
+   * @param modelsToMerge the models to merge; each implementation class is recorded as covered by
+   *     the snapshot, with a fingerprint of its class file
+   * @param out the stream to write the snapshot to
+   * @throws IOException if writing fails
+   * @throws IllegalArgumentException if any of the models provides custom stream specifications,
+   *     or its class file cannot be found
+   */
+  public static void write(Iterable<? extends LibraryModels> modelsToMerge, OutputStream out)
+      throws IOException {
+    StringTable strings = new StringTable();
+    ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+    DataOutputStream body = new DataOutputStream(bodyBytes);
+    Map<String, String> coveredModelClasses = new LinkedHashMap<>();
+    for (LibraryModels models : modelsToMerge) {
+      String className = models.getClass().getName();
+      if (!models.customStreamNullabilitySpecs().isEmpty()) {
+        throw new IllegalArgumentException(
+            "cannot snapshot " + className + ", which provides custom stream specifications");
+      }
+      String fingerprint;
+      try (InputStream in =
+          models.getClass().getResourceAsStream("/" + classFileName(className))) {
+        if (in == null) {
+          throw new IllegalArgumentException(
+              "cannot snapshot " + className + ", whose class file cannot be found");
+        }
+        fingerprint = fingerprint(in);
+      }
+      coveredModelClasses.put(className, fingerprint);
+    }
+    body.writeInt(coveredModelClasses.size());
+    for (Map.Entry<String, String> entry : coveredModelClasses.entrySet()) {
+      body.writeInt(strings.index(entry.getKey()));
+      body.writeInt(strings.index(entry.getValue()));
+    }
+    SnapshotLibraryModels merged = merge(modelsToMerge);
+    writeMethodTable(body, strings, merged.failIfNullParameters);
+    writeMethodTable(body, strings, merged.explicitlyNullableParameters);
+    writeMethodTable(body, strings, merged.nonNullParameters);
+    writeMethodTable(body, strings, merged.nullImpliesTrueParameters);
+    writeMethodTable(body, strings, merged.nullImpliesFalseParameters);
+    writeMethodTable(body, strings, merged.nullImpliesNullParameters);
+    writeMethodTable(body, strings, merged.castToNonNullMethods);
+    writeMethodSet(body, strings, merged.nullableReturns);
+    writeMethodSet(body, strings, merged.nonNullReturns);
+    Map<String, Collection<Integer>> upperBoundsByClass =
+        merged.typeVariablesWithNullableUpperBounds.asMap();
+    body.writeInt(upperBoundsByClass.size());
+    for (Map.Entry<String, Collection<Integer>> entry : upperBoundsByClass.entrySet()) {
+      body.writeInt(strings.index(entry.getKey()));
+      writeInts(body, entry.getValue());
+    }
+    body.writeInt(merged.nullMarkedClasses.size());
+    for (String className : merged.nullMarkedClasses) {
+      body.writeInt(strings.index(className));
+    }
+    body.writeInt(merged.nullableFields.size());
+    for (LibraryModels.FieldRef field : merged.nullableFields) {
+      body.writeInt(strings.index(field.getEnclosingClassName()));
+      body.writeInt(strings.index(field.getFieldName()));
+    }
+    body.flush();
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(FILE_MAGIC_NUMBER);
+    data.writeInt(strings.indices.size());
+    for (String s : strings.indices.keySet()) {
+      data.writeUTF(s);
+    }
+    bodyBytes.writeTo(data);
+    data.flush();
+  }
+
+  /** Merges the tables of the given models, other than their custom stream specifications. */
+  private static SnapshotLibraryModels merge(Iterable<? extends LibraryModels> modelsToMerge) {
+    ImmutableSetMultimap.Builder<MethodRef, Integer> failIfNullParameters =
+        ImmutableSetMultimap.builder();
+    ImmutableSetMultimap.Builder<MethodRef, Integer> explicitlyNullableParameters =
+        ImmutableSetMultimap.builder();
+    ImmutableSetMultimap.Builder<MethodRef, Integer> nonNullParameters =
+        ImmutableSetMultimap.builder();
+    ImmutableSetMultimap.Builder<MethodRef, Integer> nullImpliesTrueParameters =
+        ImmutableSetMultimap.builder();
+    ImmutableSetMultimap.Builder<MethodRef, Integer> nullImpliesFalseParameters =
+        ImmutableSetMultimap.builder();
+    ImmutableSetMultimap.Builder<MethodRef, Integer> nullImpliesNullParameters =
+        ImmutableSetMultimap.builder();
+    ImmutableSetMultimap.Builder<MethodRef, Integer> castToNonNullMethods =
+        ImmutableSetMultimap.builder();
+    ImmutableSet.Builder<MethodRef> nullableReturns = ImmutableSet.builder();
+    ImmutableSet.Builder<MethodRef> nonNullReturns = ImmutableSet.builder();
+    ImmutableSetMultimap.Builder<String, Integer> upperBounds = ImmutableSetMultimap.builder();
+    ImmutableSet.Builder<String> nullMarkedClasses = ImmutableSet.builder();
+    ImmutableSet.Builder<LibraryModels.FieldRef> nullableFields = ImmutableSet.builder();
+    for (LibraryModels models : modelsToMerge) {
+      failIfNullParameters.putAll(models.failIfNullParameters());
+      explicitlyNullableParameters.putAll(models.explicitlyNullableParameters());
+      nonNullParameters.putAll(models.nonNullParameters());
+      nullImpliesTrueParameters.putAll(models.nullImpliesTrueParameters());
+      nullImpliesFalseParameters.putAll(models.nullImpliesFalseParameters());
+      nullImpliesNullParameters.putAll(models.nullImpliesNullParameters());
+      castToNonNullMethods.putAll(models.castToNonNullMethods());
+      nullableReturns.addAll(models.nullableReturns());
+      nonNullReturns.addAll(models.nonNullReturns());
+      upperBounds.putAll(models.typeVariablesWithNullableUpperBounds());
+      nullMarkedClasses.addAll(models.nullMarkedClasses());
+      nullableFields.addAll(models.nullableFields());
+    }
+    SnapshotLibraryModels merged = new SnapshotLibraryModels();
+    merged.failIfNullParameters = failIfNullParameters.build();
+    merged.explicitlyNullableParameters = explicitlyNullableParameters.build();
+    merged.nonNullParameters = nonNullParameters.build();
+    merged.nullImpliesTrueParameters = nullImpliesTrueParameters.build();
+    merged.nullImpliesFalseParameters = nullImpliesFalseParameters.build();
+    merged.nullImpliesNullParameters = nullImpliesNullParameters.build();
+    merged.castToNonNullMethods = castToNonNullMethods.build();
+    merged.nullableReturns = nullableReturns.build();
+    merged.nonNullReturns = nonNullReturns.build();
+    merged.typeVariablesWithNullableUpperBounds = upperBounds.build();
+    merged.nullMarkedClasses = nullMarkedClasses.build();
+    merged.nullableFields = nullableFields.build();
+    return merged;
+  }
+
+  private static String classFileName(String className) {
+    return className.replace('.', '/') + ".class";
+  }
+
+  private static String fingerprint(InputStream classFile) throws IOException {
+    return Hashing.murmur3_128().hashBytes(classFile.readAllBytes()).toString();
+  }
+
+  private static void writeMethodTable(
+      DataOutputStream body, StringTable strings, ImmutableSetMultimap<MethodRef, Integer> table)
+      throws IOException {
+    body.writeInt(table.keySet().size());
+    for (Map.Entry<MethodRef, Collection<Integer>> entry : table.asMap().entrySet()) {
+      writeMethodRef(body, strings, entry.getKey());
+      writeInts(body, entry.getValue());
+    }
+  }
+
+  private static void writeMethodSet(
+      DataOutputStream body, StringTable strings, ImmutableSet<MethodRef> refs) throws IOException {
+    body.writeInt(refs.size());
+    for (MethodRef ref : refs) {
+      writeMethodRef(body, strings, ref);
+    }
+  }
+
+  private static void writeMethodRef(DataOutputStream body, StringTable strings, MethodRef ref)
+      throws IOException {
+    body.writeInt(strings.index(ref.enclosingClass));
+    body.writeInt(strings.index(ref.fullMethodSig));
+  }
+
+  private static void writeInts(DataOutputStream body, Collection<Integer> values)
+      throws IOException {
+    body.writeInt(values.size());
+    for (int value : values) {
+      body.writeInt(value);
+    }
+  }
+
+  /** Assigns each distinct string an index in order of first use. */
+  private static final class StringTable {
+
+    private final Map<String, Integer> indices = new LinkedHashMap<>();
+
+    int index(String s) {
+      return indices.computeIfAbsent(s, k -> indices.size());
+    }
+  }
+
+  /** {@link LibraryModels} read from a snapshot. */
+  private static final class SnapshotLibraryModels implements LibraryModels {
+
+    private ImmutableSetMultimap<MethodRef, Integer> failIfNullParameters =
+        ImmutableSetMultimap.of();
+
+    private ImmutableSetMultimap<MethodRef, Integer> explicitlyNullableParameters =
+        ImmutableSetMultimap.of();
+
+    private ImmutableSetMultimap<MethodRef, Integer> nonNullParameters = ImmutableSetMultimap.of();
+
+    private ImmutableSetMultimap<MethodRef, Integer> nullImpliesTrueParameters =
+        ImmutableSetMultimap.of();
+
+    private ImmutableSetMultimap<MethodRef, Integer> nullImpliesFalseParameters =
+        ImmutableSetMultimap.of();
+
+    private ImmutableSetMultimap<MethodRef, Integer> nullImpliesNullParameters =
+        ImmutableSetMultimap.of();
+
+    private ImmutableSetMultimap<MethodRef, Integer> castToNonNullMethods =
+        ImmutableSetMultimap.of();
+
+    private ImmutableSet<MethodRef> nullableReturns = ImmutableSet.of();
+
+    private ImmutableSet<MethodRef> nonNullReturns = ImmutableSet.of();
+
+    private ImmutableSetMultimap<String, Integer> typeVariablesWithNullableUpperBounds =
+        ImmutableSetMultimap.of();
+
+    private ImmutableSet<String> nullMarkedClasses = ImmutableSet.of();
+
+    private ImmutableSet<FieldRef> nullableFields = ImmutableSet.of();
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> failIfNullParameters() {
+      return failIfNullParameters;
+    }
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> explicitlyNullableParameters() {
+      return explicitlyNullableParameters;
+    }
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> nonNullParameters() {
+      return nonNullParameters;
+    }
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> nullImpliesTrueParameters() {
+      return nullImpliesTrueParameters;
+    }
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> nullImpliesFalseParameters() {
+      return nullImpliesFalseParameters;
+    }
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> nullImpliesNullParameters() {
+      return nullImpliesNullParameters;
+    }
+
+    @Override
+    public ImmutableSet<MethodRef> nullableReturns() {
+      return nullableReturns;
+    }
+
+    @Override
+    public ImmutableSet<MethodRef> nonNullReturns() {
+      return nonNullReturns;
+    }
+
+    @Override
+    public ImmutableSetMultimap<String, Integer> typeVariablesWithNullableUpperBounds() {
+      return typeVariablesWithNullableUpperBounds;
+    }
+
+    @Override
+    public ImmutableSet<String> nullMarkedClasses() {
+      return nullMarkedClasses;
+    }
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> castToNonNullMethods() {
+      return castToNonNullMethods;
+    }
+
+    @Override
+    public ImmutableSet<FieldRef> nullableFields() {
+      return nullableFields;
+    }
+  }
+}
@@ -22,6 +22,7 @@ package com.uber.nullaway.handlers;
  * THE SOFTWARE.
  */
 
+import com.google.common.collect.ImmutableSet;
 import com.google.errorprone.VisitorState;
 import com.google.errorprone.suppliers.Supplier;
 import com.google.errorprone.suppliers.Suppliers;
@@ -85,6 +86,28 @@ class MethodNameUtil {
   private static final Supplier<Type> ASSERTJ_ASSERT_TYPE_SUPPLIER =
       Suppliers.typeFromString("org.assertj.core.api.Assert");
 
+  /** Simple names of all methods whose invocations {@link AssertionHandler} acts on. */
+  static final ImmutableSet<String> ASSERTION_METHOD_NAMES =
+      ImmutableSet.of(
+          IS_NOT_NULL_METHOD,
+          IS_HAS_SIZE_METHOD,
+          IS_INSTANCE_OF_METHOD,
+          IS_INSTANCE_OF_ANY_METHOD,
+          ASSERT_THAT_METHOD);
+
+  /**
+   * Simple names of all methods whose invocations {@link OptionalEmptinessHandler} acts on when
+   * handling test assertions.
+   */
+  static final ImmutableSet<String> OPTIONAL_ASSERTION_METHOD_NAMES =
+      ImmutableSet.of(
+          ASSERT_TRUE_METHOD,
+          ASSERT_FALSE_METHOD,
+          IS_TRUE_METHOD,
+          IS_FALSE_METHOD,
+          IS_PRESENT_METHOD,
+          IS_NOT_EMPTY_METHOD);
+
   // Names of the methods (and their owners) used to identify assertions in this handler. Name used
   // here refers to com.sun.tools.javac.util.Name. Comparing methods using Names is faster than
   // comparing using strings.
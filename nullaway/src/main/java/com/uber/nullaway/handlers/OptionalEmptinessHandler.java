@@ -79,6 +79,18 @@ public class OptionalEmptinessHandler extends BaseNoOpHandler {
     this.methodNameUtil = methodNameUtil;
   }
 
+  @Override
+  public ImmutableSet<String> onRegisterDataflowMethodInvocationNames() {
+    ImmutableSet<String> optionalMethodNames = ImmutableSet.of("isPresent", "isEmpty");
+    if (!config.handleTestAssertionLibraries()) {
+      return optionalMethodNames;
+    }
+    return ImmutableSet.<String>builder()
+        .addAll(optionalMethodNames)
+        .addAll(MethodNameUtil.OPTIONAL_ASSERTION_METHOD_NAMES)
+        .build();
+  }
+
   @Override
   public boolean onOverrideMayBeNullExpr(
       NullAway analysis,
@@ -168,6 +180,10 @@ public class OptionalEmptinessHandler extends BaseNoOpHandler {
       AccessPathNullnessPropagation.Updates bothUpdates,
       MethodInvocationNode node,
       Symbol.MethodSymbol symbol) {
+    // the names are usually initialized by AssertionHandler, but it is not called for all methods
+    if (!methodNameUtil.isUtilInitialized()) {
+      methodNameUtil.initializeMethodNames(symbol.name.table);
+    }
 
     Consumer<Node> nonNullMarker =
         nonNullNode ->
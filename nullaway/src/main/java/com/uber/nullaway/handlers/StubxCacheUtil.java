@@ -22,14 +22,27 @@ package com.uber.nullaway.handlers;
  * THE SOFTWARE.
  */
 
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.uber.nullaway.jarinfer.JarInferStubxProvider;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.Set;
@@ -41,6 +54,11 @@ import java.util.Set;
  * It uses a nested map structure to store annotations, which are indexed by class name, method
  * signature, and argument index. It also stores a Map containing the indices for Nullable upper
  * bounds for generic type parameters.
+ *
+ * <p>Both version 1 and version 2 stubx files can be read. Version 2 files are not decoded when
+ * loaded; see {@link IndexedStubxFile}. Their contents are only decoded into the caches when one of
+ * the caches is requested, unless they are taken with {@link #takeIndexedFiles()} to be looked up
+ * per class instead.
  */
 public class StubxCacheUtil {
 
@@ -67,6 +85,9 @@ public class StubxCacheUtil {
 
   private final Set<String> nullMarkedClassesCache;
 
+  /** Loaded version 2 stubx files that have not been decoded into the caches yet. */
+  private final List<IndexedStubxFile> indexedFiles = new ArrayList<>();
+
   /**
    * Initializes a new {@code StubxCacheUtil} instance.
    *
@@ -76,55 +97,227 @@ public class StubxCacheUtil {
    * @param logCaller Identifier for logging purposes.
    */
   public StubxCacheUtil(String logCaller) {
+    this(logCaller, findStubxResources());
+  }
+
+  /**
+   * Initializes a new {@code StubxCacheUtil} instance from stubx files that have already been
+   * found.
+   *
+   * @param logCaller Identifier for logging purposes.
+   * @param resources The stubx files to load, e.g., as returned by {@link #findStubxResources()}.
+   */
+  public StubxCacheUtil(String logCaller, List<StubxResource> resources) {
     argAnnotCache = new LinkedHashMap<>();
     upperBoundCache = new HashMap<>();
     nullMarkedClassesCache = new HashSet<>();
     this.logCaller = logCaller;
-    loadStubxFiles();
+    for (StubxResource resource : resources) {
+      try {
+        parseStubResource(resource);
+        LOG(DEBUG, "DEBUG", "loaded stubx file " + resource.getLocation());
+      } catch (IOException e) {
+        throw new RuntimeException("could not parse stubx file " + resource.getLocation(), e);
+      }
+    }
+  }
+
+  /** The contents of a stubx file, which have been read or memory-mapped but not parsed. */
+  public static final class StubxResource {
+
+    private final String location;
+
+    private final ByteBuffer contents;
+
+    private StubxResource(String location, ByteBuffer contents) {
+      this.location = location;
+      this.contents = contents;
+    }
+
+    /**
+     * Reads the stubx file at the given URL. Version 2 files on the file system are memory-mapped,
+     * since they are decoded on demand; all other files are read into memory, as they are parsed
+     * in full right away.
+     *
+     * @param url the URL of the stubx file
+     * @param location a description of the location of the stubx file, for logging and errors
+     * @return the contents of the stubx file
+     * @throws IOException if the stubx file cannot be read
+     */
+    public static StubxResource open(URL url, String location) throws IOException {
+      if ("file".equals(url.getProtocol())) {
+        Path path;
+        try {
+          path = Paths.get(url.toURI());
+        } catch (URISyntaxException e) {
+          throw new IOException(e);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+          ByteBuffer magicNumber = ByteBuffer.allocate(Integer.BYTES);
+          while (magicNumber.hasRemaining()) {
+            if (channel.read(magicNumber) < 0) {
+              break;
+            }
+          }
+          if (!magicNumber.hasRemaining()
+              && magicNumber.getInt(0) == IndexedStubxFile.VERSION_2_FILE_MAGIC_NUMBER) {
+            return new StubxResource(
+                location, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+          }
+        }
+        return new StubxResource(location, ByteBuffer.wrap(Files.readAllBytes(path)));
+      }
+      try (InputStream stubxInputStream = url.openStream()) {
+        return new StubxResource(location, ByteBuffer.wrap(stubxInputStream.readAllBytes()));
+      }
+    }
+
+    public String getLocation() {
+      return location;
+    }
+
+    /**
+     * Returns a hash of the contents of the stubx file, to detect whether a file at the same
+     * location has changed.
+     *
+     * @return a hash of the file contents
+     */
+    public HashCode contentHash() {
+      return Hashing.murmur3_128().hashBytes(contents.duplicate());
+    }
   }
 
   public Map<String, Integer> getUpperBoundCache() {
+    decodeIndexedFiles();
     return upperBoundCache;
   }
 
   public Set<String> getNullMarkedClassesCache() {
+    decodeIndexedFiles();
     return nullMarkedClassesCache;
   }
 
   public Map<String, Map<String, Map<Integer, Set<String>>>> getArgAnnotCache() {
+    decodeIndexedFiles();
     return argAnnotCache;
   }
 
   /**
-   * Loads all stubx files discovered in the classpath. Stubx files are discovered via
+   * Returns the version 2 stubx files loaded so far without decoding their method records, so the
+   * caller can look up the records of each class when needed. Only their null-marked classes and
+   * nullable upper bounds, which are small, are decoded into the caches. The returned files are
+   * removed from this object, so {@link #getArgAnnotCache()} no longer includes their records.
+   *
+   * @return the version 2 stubx files loaded so far
+   */
+  List<IndexedStubxFile> takeIndexedFiles() {
+    List<IndexedStubxFile> result = new ArrayList<>(indexedFiles);
+    for (IndexedStubxFile file : result) {
+      file.forEachNullMarkedClass(nullMarkedClassesCache::add);
+      file.forEachNullableUpperBound(this::cacheUpperBounds);
+    }
+    indexedFiles.clear();
+    return result;
+  }
+
+  private void decodeIndexedFiles() {
+    for (IndexedStubxFile file : indexedFiles) {
+      file.forEachClass(
+          (className, methodAnnotations) ->
+              mergeMethodAnnotations(
+                  argAnnotCache.computeIfAbsent(className, s -> new LinkedHashMap<>()),
+                  methodAnnotations));
+      file.forEachNullMarkedClass(nullMarkedClassesCache::add);
+      file.forEachNullableUpperBound(this::cacheUpperBounds);
+    }
+    indexedFiles.clear();
+  }
+
+  /**
+   * Adds the method annotations in {@code source} to {@code target}, both in the shape of the
+   * values of {@link #getArgAnnotCache()}.
+   */
+  static void mergeMethodAnnotations(
+      Map<String, Map<Integer, Set<String>>> target,
+      Map<String, Map<Integer, Set<String>>> source) {
+    for (Map.Entry<String, Map<Integer, Set<String>>> methodEntry : source.entrySet()) {
+      Map<Integer, Set<String>> cacheForMethod =
+          target.computeIfAbsent(methodEntry.getKey(), s -> new LinkedHashMap<>());
+      for (Map.Entry<Integer, Set<String>> argEntry : methodEntry.getValue().entrySet()) {
+        cacheForMethod
+            .computeIfAbsent(argEntry.getKey(), s -> new LinkedHashSet<>())
+            .addAll(argEntry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Finds all stubx files in the classpath, without parsing them. Stubx files are discovered via
    * implementations of {@link JarInferStubxProvider} loaded using a {@link ServiceLoader}
+   *
+   * @return the contents of the stubx files
    */
-  private void loadStubxFiles() {
+  public static List<StubxResource> findStubxResources() {
+    List<StubxResource> resources = new ArrayList<>();
     Iterable<JarInferStubxProvider> astubxProviders =
         ServiceLoader.load(JarInferStubxProvider.class, StubxCacheUtil.class.getClassLoader());
     for (JarInferStubxProvider provider : astubxProviders) {
       for (String astubxPath : provider.pathsToStubxFiles()) {
         Class<? extends JarInferStubxProvider> providerClass = provider.getClass();
-        InputStream stubxInputStream = providerClass.getResourceAsStream(astubxPath);
+        URL stubxURL = providerClass.getResource(astubxPath);
         String stubxLocation = providerClass + ":" + astubxPath;
+        if (stubxURL == null) {
+          throw new RuntimeException("could not find stubx file " + stubxLocation);
+        }
         try {
-          parseStubStream(stubxInputStream, stubxLocation);
-          LOG(DEBUG, "DEBUG", "loaded stubx file " + stubxLocation);
+          resources.add(StubxResource.open(stubxURL, stubxLocation));
         } catch (IOException e) {
-          throw new RuntimeException("could not parse stubx file " + stubxLocation, e);
+          throw new RuntimeException("could not read stubx file " + stubxLocation, e);
         }
       }
     }
+    return resources;
+  }
+
+  /**
+   * Parses a stubx file that has already been read. Version 2 files are not decoded until needed.
+   *
+   * @param resource the stubx file
+   * @throws IOException if the stubx file cannot be parsed
+   */
+  public void parseStubResource(StubxResource resource) throws IOException {
+    ByteBuffer contents = resource.contents.duplicate();
+    if (contents.remaining() >= Integer.BYTES
+        && contents.getInt(contents.position()) == IndexedStubxFile.VERSION_2_FILE_MAGIC_NUMBER) {
+      contents.position(contents.position() + Integer.BYTES);
+      indexedFiles.add(new IndexedStubxFile(contents.slice(), resource.getLocation()));
+      return;
+    }
+    // only version 2 files are memory-mapped, so the contents of other files are in an array
+    parseStubStream(
+        new ByteArrayInputStream(
+            contents.array(), contents.arrayOffset() + contents.position(), contents.remaining()),
+        resource.getLocation());
   }
 
   public void parseStubStream(InputStream stubxInputStream, String stubxLocation)
       throws IOException {
-    String[] strings;
     DataInputStream in = new DataInputStream(stubxInputStream);
     // Read and check the magic version number
-    if (in.readInt() != VERSION_1_FILE_MAGIC_NUMBER) {
+    int magicNumber = in.readInt();
+    if (magicNumber == IndexedStubxFile.VERSION_2_FILE_MAGIC_NUMBER) {
+      // Version 2 files are decoded on demand
+      indexedFiles.add(new IndexedStubxFile(ByteBuffer.wrap(in.readAllBytes()), stubxLocation));
+      return;
+    }
+    if (magicNumber != VERSION_1_FILE_MAGIC_NUMBER) {
       throw new Error("Invalid file version/magic number for stubx file!" + stubxLocation);
     }
+    parseVersion1Stream(in, stubxLocation);
+  }
+
+  private void parseVersion1Stream(DataInputStream in, String stubxLocation) throws IOException {
+    String[] strings;
     // Read the number of strings in the string dictionary
     int numStrings = in.readInt();
     // Populate the string dictionary {idx => value}, where idx is encoded by the string position
@@ -24,6 +24,7 @@ package com.uber.nullaway.handlers.stream;
 import static com.uber.nullaway.NullabilityUtil.castToNonNull;
 
 import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
@@ -31,8 +32,15 @@ import com.google.errorprone.VisitorState;
 import com.google.errorprone.predicates.TypePredicate;
 import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.util.Name;
+import org.jspecify.annotations.Nullable;
 
-/** An immutable model describing a class from a stream-based API such as RxJava. */
+/**
+ * A model describing a class from a stream-based API such as RxJava. The methods it lists are
+ * fixed at construction; the only mutable state is {@link #nameIndex}, a cache of those method
+ * names as javac {@link Name}s, which is rebuilt whenever a method from a different compilation's
+ * name table is looked up.
+ */
 public class StreamTypeRecord {
 
   private final TypePredicate typePredicate;
@@ -59,6 +67,54 @@ public class StreamTypeRecord {
   private final ImmutableSet<String> passthroughMethodSigs;
   private final ImmutableSet<String> passthroughMethodSimpleNames;
 
+  // The method names above, resolved against the name table of the current compilation. Lookups
+  // first check the javac Name of the method, so that invocations of methods not mentioned in this
+  // record are ruled out without building their signature strings.
+  private @Nullable NameIndex nameIndex;
+
+  /** Simple names of the methods in a {@link StreamTypeRecord}, as javac names. */
+  private static final class NameIndex {
+    final Name.Table table;
+    final ImmutableSet<Name> filterMethodSigNames;
+    final ImmutableSet<Name> filterMethodSimpleNames;
+    final ImmutableSet<Name> mapMethodSigNames;
+    final ImmutableMap<Name, MapLikeMethodRecord> mapMethodSimpleNameToRecord;
+    final ImmutableSet<Name> collectMethodSigNames;
+    final ImmutableSet<Name> passthroughMethodSigNames;
+    final ImmutableSet<Name> passthroughMethodSimpleNames;
+
+    NameIndex(Name.Table table, StreamTypeRecord record) {
+      this.table = table;
+      filterMethodSigNames = namesOfSignatures(table, record.filterMethodSigs);
+      filterMethodSimpleNames = names(table, record.filterMethodSimpleNames);
+      mapMethodSigNames = namesOfSignatures(table, record.mapMethodSigToRecord.keySet());
+      ImmutableMap.Builder<Name, MapLikeMethodRecord> mapBuilder = ImmutableMap.builder();
+      record.mapMethodSimpleNameToRecord.forEach(
+          (name, mapRecord) -> mapBuilder.put(table.fromString(name), mapRecord));
+      mapMethodSimpleNameToRecord = mapBuilder.build();
+      collectMethodSigNames = namesOfSignatures(table, record.collectMethodSigToRecords.keySet());
+      passthroughMethodSigNames = namesOfSignatures(table, record.passthroughMethodSigs);
+      passthroughMethodSimpleNames = names(table, record.passthroughMethodSimpleNames);
+    }
+
+    private static ImmutableSet<Name> names(Name.Table table, ImmutableSet<String> simpleNames) {
+      ImmutableSet.Builder<Name> builder = ImmutableSet.builder();
+      for (String simpleName : simpleNames) {
+        builder.add(table.fromString(simpleName));
+      }
+      return builder.build();
+    }
+
+    private static ImmutableSet<Name> namesOfSignatures(
+        Name.Table table, ImmutableSet<String> signatures) {
+      ImmutableSet.Builder<Name> builder = ImmutableSet.builder();
+      for (String signature : signatures) {
+        builder.add(table.fromString(simpleNameOfSignature(signature)));
+      }
+      return builder.build();
+    }
+  }
+
   public StreamTypeRecord(
       TypePredicate typePredicate,
       ImmutableSet<String> filterMethodSigs,
@@ -83,32 +139,69 @@ public class StreamTypeRecord {
   }
 
   public boolean isFilterMethod(Symbol.MethodSymbol methodSymbol) {
-    return filterMethodSigs.contains(methodSymbol.toString())
-        || filterMethodSimpleNames.contains(methodSymbol.getQualifiedName().toString());
+    NameIndex index = nameIndex(methodSymbol.name);
+    return index.filterMethodSimpleNames.contains(methodSymbol.name)
+        || (index.filterMethodSigNames.contains(methodSymbol.name)
+            && filterMethodSigs.contains(methodSymbol.toString()));
   }
 
   public boolean isMapMethod(Symbol.MethodSymbol methodSymbol) {
-    return mapMethodSigToRecord.containsKey(methodSymbol.toString())
-        || mapMethodSimpleNameToRecord.containsKey(methodSymbol.getQualifiedName().toString());
+    NameIndex index = nameIndex(methodSymbol.name);
+    return index.mapMethodSimpleNameToRecord.containsKey(methodSymbol.name)
+        || (index.mapMethodSigNames.contains(methodSymbol.name)
+            && mapMethodSigToRecord.containsKey(methodSymbol.toString()));
   }
 
   public MapLikeMethodRecord getMaplikeMethodRecord(Symbol.MethodSymbol methodSymbol) {
-    MapLikeMethodRecord record = mapMethodSigToRecord.get(methodSymbol.toString());
+    NameIndex index = nameIndex(methodSymbol.name);
+    MapLikeMethodRecord record = null;
+    if (index.mapMethodSigNames.contains(methodSymbol.name)) {
+      record = mapMethodSigToRecord.get(methodSymbol.toString());
+    }
     if (record == null) {
-      record =
-          castToNonNull(
-              mapMethodSimpleNameToRecord.get(methodSymbol.getQualifiedName().toString()));
+      record = castToNonNull(index.mapMethodSimpleNameToRecord.get(methodSymbol.name));
     }
     return record;
   }
 
   public ImmutableCollection<CollectLikeMethodRecord> getCollectlikeMethodRecords(
       Symbol.MethodSymbol methodSymbol) {
+    if (!nameIndex(methodSymbol.name).collectMethodSigNames.contains(methodSymbol.name)) {
+      return ImmutableList.of();
+    }
     return collectMethodSigToRecords.get(methodSymbol.toString());
   }
 
   public boolean isPassthroughMethod(Symbol.MethodSymbol methodSymbol) {
-    return passthroughMethodSigs.contains(methodSymbol.toString())
-        || passthroughMethodSimpleNames.contains(methodSymbol.getQualifiedName().toString());
+    NameIndex index = nameIndex(methodSymbol.name);
+    return index.passthroughMethodSimpleNames.contains(methodSymbol.name)
+        || (index.passthroughMethodSigNames.contains(methodSymbol.name)
+            && passthroughMethodSigs.contains(methodSymbol.toString()));
+  }
+
+  private NameIndex nameIndex(Name methodName) {
+    NameIndex index = nameIndex;
+    if (index == null || index.table != methodName.table) {
+      index = new NameIndex(methodName.table, this);
+      nameIndex = index;
+    }
+    return index;
+  }
+
+  /**
+   * Returns the simple name of the method with the given signature, as produced by {@link
+   * Symbol.MethodSymbol#toString()}, e.g., {@code map} for {@code
+   * <R>map(java.util.function.Function<? super T,? extends R>)}.
+   */
+  private static String simpleNameOfSignature(String signature) {
+    int end = signature.indexOf('(');
+    if (end < 0) {
+      end = signature.length();
+    }
+    int start = end;
+    while (start > 0 && Character.isJavaIdentifierPart(signature.charAt(start - 1))) {
+      start--;
+    }
+    return signature.substring(start, end);
   }
 }
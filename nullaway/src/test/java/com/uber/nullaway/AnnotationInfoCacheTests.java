@@ -0,0 +1,56 @@
+package com.uber.nullaway;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+/** Checks that marking is computed correctly when the class annotation info cache evicts. */
+public class AnnotationInfoCacheTests extends NullAwayTestsBase {
+
+  @Test
+  public void tinyClassCache() {
+    makeTestHelperWithArgs(
+            Arrays.asList(
+                "-d",
+                temporaryFolder.getRoot().getAbsolutePath(),
+                "-XepOpt:NullAway:AnnotatedPackages=com.uber",
+                "-XepOpt:NullAway:AnnotationInfoCacheMaxSize=1"))
+        .addSourceLines(
+            "package-info.java",
+            "@NullMarked package com.example.marked;",
+            "import org.jspecify.annotations.NullMarked;")
+        .addSourceLines(
+            "Lib.java",
+            "package com.example.marked;",
+            "import org.jspecify.annotations.Nullable;",
+            "public class Lib {",
+            "  public static @Nullable Object get() { return null; }",
+            "  public static class Inner {",
+            "    public static @Nullable Object get() { return null; }",
+            "  }",
+            "}")
+        .addSourceLines(
+            "Unmarked.java",
+            "package com.example.unmarked;",
+            "public class Unmarked {",
+            "  public static Object get() { return null; }",
+            "}")
+        .addSourceLines(
+            "Test.java",
+            "package com.uber;",
+            "import com.example.marked.Lib;",
+            "import com.example.unmarked.Unmarked;",
+            "class Test {",
+            "  void m() {",
+            "    Unmarked.get().toString();",
+            "    // BUG: Diagnostic contains: dereferenced expression Lib.get() is @Nullable",
+            "    Lib.get().toString();",
+            "    Unmarked.get().toString();",
+            "    // BUG: Diagnostic contains: dereferenced expression Lib.Inner.get() is @Nullable",
+            "    Lib.Inner.get().toString();",
+            "    // BUG: Diagnostic contains: dereferenced expression Lib.get() is @Nullable",
+            "    Lib.get().toString();",
+            "  }",
+            "}")
+        .doTest();
+  }
+}
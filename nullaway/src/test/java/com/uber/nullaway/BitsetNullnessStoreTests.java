@@ -0,0 +1,121 @@
+package com.uber.nullaway;
+
+import com.google.errorprone.CompilationTestHelper;
+import java.util.Arrays;
+import org.junit.Test;
+
+/** Checks that dataflow computes the same facts with {@code BitsetNullnessStores} enabled. */
+public class BitsetNullnessStoreTests extends NullAwayTestsBase {
+
+  private CompilationTestHelper makeHelper() {
+    return makeTestHelperWithArgs(
+        Arrays.asList(
+            "-d",
+            temporaryFolder.getRoot().getAbsolutePath(),
+            "-XepOpt:NullAway:AnnotatedPackages=com.uber",
+            "-XepOpt:NullAway:BitsetNullnessStores=true"));
+  }
+
+  @Test
+  public void joinsAndLoops() {
+    makeHelper()
+        .addSourceLines(
+            "Test.java",
+            "package com.uber;",
+            "import org.jspecify.annotations.Nullable;",
+            "class Test {",
+            "  @Nullable Object f;",
+            "  void branches(@Nullable Object a, @Nullable Object b, boolean c) {",
+            "    if (a == null) {",
+            "      a = new Object();",
+            "    }",
+            "    if (c) {",
+            "      b = new Object();",
+            "    }",
+            "    a.toString();",
+            "    // BUG: Diagnostic contains: dereferenced expression b is @Nullable",
+            "    b.toString();",
+            "  }",
+            "  void loop(int n) {",
+            "    Object x = new Object();",
+            "    @Nullable Object y = null;",
+            "    for (int i = 0; i < n; i++) {",
+            "      x.toString();",
+            "      // BUG: Diagnostic contains: dereferenced expression y is @Nullable",
+            "      y.toString();",
+            "      y = x;",
+            "    }",
+            "  }",
+            "  void fields() {",
+            "    if (this.f != null) {",
+            "      this.f.toString();",
+            "    }",
+            "    // BUG: Diagnostic contains: dereferenced expression this.f is @Nullable",
+            "    this.f.toString();",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  public void manyAccessPaths() {
+    // more than 64 access paths, so that the bitsets span several words
+    StringBuilder decls = new StringBuilder();
+    StringBuilder checks = new StringBuilder();
+    for (int i = 0; i < 80; i++) {
+      decls.append("  @Nullable Object f").append(i).append(";\n");
+      checks.append("    if (f").append(i).append(" == null) { return; }\n");
+    }
+    makeHelper()
+        .addSourceLines(
+            "Test.java",
+            "package com.uber;",
+            "import org.jspecify.annotations.Nullable;",
+            "class Test {",
+            decls.toString(),
+            "  void m(boolean b) {",
+            checks.toString(),
+            "    while (b) {",
+            "      f79.toString();",
+            "      f0.toString();",
+            "      f40 = null;",
+            "    }",
+            "    // BUG: Diagnostic contains: dereferenced expression f40 is @Nullable",
+            "    f40.toString();",
+            "    f65.toString();",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  public void lambdasAndMapGet() {
+    makeHelper()
+        .addSourceLines(
+            "Test.java",
+            "package com.uber;",
+            "import java.util.Map;",
+            "import java.util.function.Supplier;",
+            "import org.jspecify.annotations.Nullable;",
+            "class Test {",
+            "  void m(Map<String, Object> map, @Nullable Object o) {",
+            "    if (map.get(\"k\") != null) {",
+            "      map.get(\"k\").toString();",
+            "    }",
+            "    if (o != null) {",
+            "      Runnable r = new Runnable() {",
+            "        @Override",
+            "        public void run() {",
+            "          o.toString();",
+            "        }",
+            "      };",
+            "    }",
+            "    Supplier<String> s = () -> {",
+            "      // BUG: Diagnostic contains: dereferenced expression o is @Nullable",
+            "      return o.toString();",
+            "    };",
+            "  }",
+            "}")
+        .doTest();
+  }
+}
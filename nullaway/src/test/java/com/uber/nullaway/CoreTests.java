@@ -1164,4 +1164,89 @@ public class CoreTests extends NullAwayTestsBase {
             "}")
         .doTest();
   }
+
+  @Test
+  public void localsNonNullFromDeclarationsAlone() {
+    // these locals are answered by a syntactic pre-pass instead of dataflow; check that the
+    // pre-pass gives up whenever dataflow could find a local to be null
+    defaultCompilationHelper
+        .addSourceLines(
+            "Test.java",
+            "package com.uber;",
+            "import org.jspecify.annotations.Nullable;",
+            "class Test {",
+            "  @Nullable Object get() { return null; }",
+            "  void trivial(boolean b) {",
+            "    Object o = new Object();",
+            "    String s;",
+            "    if (b) {",
+            "      s = \"a\";",
+            "    } else {",
+            "      s = \"b\" + o;",
+            "    }",
+            "    o.toString();",
+            "    s.length();",
+            "  }",
+            "  void reassigned() {",
+            "    Object o = new Object();",
+            "    o = get();",
+            "    // BUG: Diagnostic contains: dereferenced expression o is @Nullable",
+            "    o.toString();",
+            "  }",
+            "  void compared() {",
+            "    String s = \"a\";",
+            "    if (s == null) {",
+            "      // BUG: Diagnostic contains: dereferenced expression s is @Nullable",
+            "      s.length();",
+            "    }",
+            "  }",
+            "  void inLambda(@Nullable Object p) {",
+            "    Object o = new Object();",
+            "    Runnable r =",
+            "        () -> {",
+            "          Object q = \"q\";",
+            "          q.toString();",
+            "          o.toString();",
+            "          // BUG: Diagnostic contains: dereferenced expression p is @Nullable",
+            "          p.toString();",
+            "        };",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  public void localsComparedThroughParenthesesCastsOrAssignments() {
+    // dataflow refines a local compared with null through parentheses or an assignment, so the
+    // syntactic pre-pass must not answer for it; it also gives up on casts, which dataflow does not
+    // refine through
+    defaultCompilationHelper
+        .addSourceLines(
+            "Test.java",
+            "package com.uber;",
+            "class Test {",
+            "  void parenthesized() {",
+            "    String s = \"a\";",
+            "    if ((s) == null) {",
+            "      // BUG: Diagnostic contains: dereferenced expression s is @Nullable",
+            "      s.length();",
+            "    }",
+            "  }",
+            "  void cast() {",
+            "    String s = \"a\";",
+            "    if ((Object) s == null) {",
+            "      return;",
+            "    }",
+            "    s.length();",
+            "  }",
+            "  void assigned() {",
+            "    String s;",
+            "    if ((s = \"a\") == null) {",
+            "      // BUG: Diagnostic contains: dereferenced expression s is @Nullable",
+            "      s.length();",
+            "    }",
+            "  }",
+            "}")
+        .doTest();
+  }
 }
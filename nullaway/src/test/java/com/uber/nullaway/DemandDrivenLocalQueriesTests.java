@@ -0,0 +1,119 @@
+package com.uber.nullaway;
+
+import com.google.errorprone.CompilationTestHelper;
+import java.util.Arrays;
+import org.junit.Test;
+
+/** Checks that dataflow gives the same results with {@code DemandDrivenLocalQueries} enabled. */
+public class DemandDrivenLocalQueriesTests extends NullAwayTestsBase {
+
+  private CompilationTestHelper makeHelper() {
+    return makeTestHelperWithArgs(
+        Arrays.asList(
+            "-d",
+            temporaryFolder.getRoot().getAbsolutePath(),
+            "-XepOpt:NullAway:AnnotatedPackages=com.uber",
+            "-XepOpt:NullAway:DemandDrivenLocalQueries=true"));
+  }
+
+  @Test
+  public void definitionsAcrossBranchesAndLoops() {
+    makeHelper()
+        .addSourceLines(
+            "Test.java",
+            "package com.uber;",
+            "import org.jspecify.annotations.Nullable;",
+            "class Test {",
+            "  @Nullable Object make() { return null; }",
+            "  void branches(boolean b) {",
+            "    Object x = null;",
+            "    if (b) {",
+            "      x = new Object();",
+            "    }",
+            "    // BUG: Diagnostic contains: dereferenced expression x is @Nullable",
+            "    x.toString();",
+            "    x.toString();",
+            "    Object y = b ? null : \"s\";",
+            "    // BUG: Diagnostic contains: dereferenced expression y is @Nullable",
+            "    y.hashCode();",
+            "  }",
+            "  void copies(boolean b) {",
+            "    Object x = \"s\";",
+            "    Object y = x;",
+            "    y.toString();",
+            "    Object z = null;",
+            "    Object w = z;",
+            "    // BUG: Diagnostic contains: dereferenced expression w is @Nullable",
+            "    w.toString();",
+            "  }",
+            "  void loop(int n) {",
+            "    Object x = new Object();",
+            "    for (int i = 0; i < n; i++) {",
+            "      // BUG: Diagnostic contains: dereferenced expression x is @Nullable",
+            "      x.toString();",
+            "      x = null;",
+            "    }",
+            "  }",
+            "  void checks() {",
+            "    Object x = make();",
+            "    if (x != null) {",
+            "      x.toString();",
+            "    }",
+            "    // BUG: Diagnostic contains: dereferenced expression x is @Nullable",
+            "    x.toString();",
+            "    Object y = null;",
+            "    if (y instanceof String) {",
+            "      y.toString();",
+            "    }",
+            "  }",
+            "  void parameters(@Nullable Object p, Object q) {",
+            "    // BUG: Diagnostic contains: dereferenced expression p is @Nullable",
+            "    p.toString();",
+            "    q.toString();",
+            "  }",
+            "  void exceptions() {",
+            "    Object x = null;",
+            "    try {",
+            "      x = make();",
+            "      x = new Object();",
+            "      make();",
+            "    } catch (RuntimeException e) {",
+            "      e.toString();",
+            "      // BUG: Diagnostic contains: dereferenced expression x is @Nullable",
+            "      x.toString();",
+            "    }",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  public void capturedLocalsAndLongMethods() {
+    // many blocks between the read and its definition, so that the query gives up
+    StringBuilder branches = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      branches.append("    if (n == ").append(i).append(") { n++; }\n");
+    }
+    makeHelper()
+        .addSourceLines(
+            "Test.java",
+            "package com.uber;",
+            "import org.jspecify.annotations.Nullable;",
+            "class Test {",
+            "  void m(int n) {",
+            "    Object x = null;",
+            "    Object y = new Object();",
+            branches.toString(),
+            "    Runnable r = () -> {",
+            "      // BUG: Diagnostic contains: dereferenced expression x is @Nullable",
+            "      x.toString();",
+            "      y.toString();",
+            "    };",
+            "    // BUG: Diagnostic contains: dereferenced expression x is @Nullable",
+            "    x.toString();",
+            "    y.toString();",
+            "  }",
+            "}")
+        .doTest();
+  }
+}
@@ -59,6 +59,57 @@ public class ErrorProneCLIFlagsConfigTest extends NullAwayTestsBase {
     assertTrue(e.getMessage().contains(ANNOTATED_PACKAGES_ONLY_NULLMARKED_ERROR_MSG));
   }
 
+  @Test
+  public void nonPositiveDataflowCacheMaxWeightFails() {
+    CompilationTestHelper compilationTestHelper =
+        makeTestHelperWithArgs(
+                List.of(
+                    "-XepOpt:NullAway:OnlyNullMarked", "-XepOpt:NullAway:DataflowCacheMaxWeight=0"))
+            .addSourceLines("Stub.java", "package com.uber; class Stub {}");
+    AssertionError e = assertThrows(AssertionError.class, () -> compilationTestHelper.doTest());
+    assertTrue(e.getMessage().contains("DataflowCacheMaxWeight value. Must be positive."));
+  }
+
+  @Test
+  public void nonPositiveCfgCacheMaxWeightFails() {
+    CompilationTestHelper compilationTestHelper =
+        makeTestHelperWithArgs(
+                List.of("-XepOpt:NullAway:OnlyNullMarked", "-XepOpt:NullAway:CfgCacheMaxWeight=-1"))
+            .addSourceLines("Stub.java", "package com.uber; class Stub {}");
+    AssertionError e = assertThrows(AssertionError.class, () -> compilationTestHelper.doTest());
+    assertTrue(e.getMessage().contains("CfgCacheMaxWeight value. Must be positive."));
+  }
+
+  @Test
+  public void tinyDataflowCachesStillGiveSameResults() {
+    // entry weights are capped, so each cache holds a single entry, evicted by the next one
+    makeTestHelperWithArgs(
+            List.of(
+                "-XepOpt:NullAway:OnlyNullMarked",
+                "-XepOpt:NullAway:DataflowCacheMaxWeight=1",
+                "-XepOpt:NullAway:CfgCacheMaxWeight=1",
+                "-XepOpt:NullAway:CacheStats=true"))
+        .addSourceLines(
+            "Test.java",
+            "package com.uber;",
+            "import org.jspecify.annotations.NullMarked;",
+            "import org.jspecify.annotations.Nullable;",
+            "@NullMarked",
+            "class Test {",
+            "  @Nullable Object f;",
+            "  void m(@Nullable Object o) {",
+            "    if (o != null && f != null) {",
+            "      o.toString();",
+            "      f.toString();",
+            "      Runnable r = () -> o.toString();",
+            "    }",
+            "    // BUG: Diagnostic contains: dereferenced expression o is @Nullable",
+            "    o.toString();",
+            "  }",
+            "}")
+        .doTest();
+  }
+
   @Test
   public void missingTypeAnnotationSymbolFlagForJSpecifyModeOnOlderJDK() {
     Assume.assumeTrue(Runtime.version().feature() < 22);
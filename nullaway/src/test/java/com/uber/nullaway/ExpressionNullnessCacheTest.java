@@ -0,0 +1,105 @@
+package com.uber.nullaway;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.TreeVisitor;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.function.Predicate;
+import org.jspecify.annotations.Nullable;
+import org.junit.Test;
+
+/**
+ * Checks when {@link ExpressionNullnessCache}, used for {@link NullAway#mayBeNullExpr} and {@link
+ * NullAway#nullnessFromDataflow}, answers from its cache and when it runs the query again.
+ */
+public class ExpressionNullnessCacheTest {
+
+  /** A placeholder expression, only compared by identity. */
+  private static final class Expr implements ExpressionTree {
+    @Override
+    public Kind getKind() {
+      return Kind.IDENTIFIER;
+    }
+
+    @Override
+    public <R, D> @Nullable R accept(TreeVisitor<R, D> visitor, D data) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /** A query returning the given answers in order, which counts how many times it ran. */
+  private static final class Answers implements Predicate<ExpressionTree> {
+    private final Deque<Boolean> answers;
+    int runs = 0;
+
+    Answers(Boolean... answers) {
+      this.answers = new ArrayDeque<>(Arrays.asList(answers));
+    }
+
+    @Override
+    public boolean test(ExpressionTree expr) {
+      runs++;
+      return answers.removeFirst();
+    }
+  }
+
+  @Test
+  public void resultsDuringDataflowAreNotCached() {
+    ExpressionNullnessCache cache = new ExpressionNullnessCache();
+    ExpressionTree expr = new Expr();
+    // during dataflow, the expression looks non-null, based on a partial fixpoint; once dataflow
+    // reaches its fixpoint, it may be null
+    Answers query = new Answers(false, false, true);
+    assertFalse(cache.get(expr, query, () -> true));
+    assertFalse(cache.get(expr, query, () -> true));
+    assertTrue(cache.get(expr, query, () -> false));
+    assertEquals(3, query.runs);
+    // only the result computed after dataflow is cached
+    assertTrue(cache.get(expr, query, () -> false));
+    assertTrue(cache.get(expr, query, () -> true));
+    assertEquals(3, query.runs);
+    assertEquals(2, cache.hits());
+  }
+
+  @Test
+  public void invalidateDropsCachedResult() {
+    ExpressionNullnessCache cache = new ExpressionNullnessCache();
+    ExpressionTree expr = new Expr();
+    ExpressionTree other = new Expr();
+    Answers query = new Answers(true, true, false);
+    assertTrue(cache.get(expr, query, () -> false));
+    assertTrue(cache.get(other, query, () -> false));
+    // like setComputedNullness refining expr
+    cache.invalidate(expr);
+    assertFalse(cache.get(expr, query, () -> false));
+    assertTrue(cache.get(other, query, () -> false));
+    assertEquals(3, query.runs);
+    assertEquals(1, cache.hits());
+  }
+
+  @Test
+  public void countsRepeatedQueries() {
+    ExpressionNullnessCache cache = new ExpressionNullnessCache();
+    ExpressionTree expr = new Expr();
+    ExpressionTree other = new Expr();
+    Answers query = new Answers(true, false, true);
+    assertEquals(0, cache.hits());
+    cache.get(expr, query, () -> false);
+    cache.get(other, query, () -> false);
+    assertEquals(0, cache.hits());
+    cache.get(expr, query, () -> false);
+    cache.get(expr, query, () -> false);
+    cache.get(other, query, () -> false);
+    assertEquals(3, cache.hits());
+    // hits are counted across top-level classes
+    cache.clear();
+    assertTrue(cache.get(expr, query, () -> false));
+    assertEquals(3, cache.hits());
+    assertEquals(3, query.runs);
+  }
+}
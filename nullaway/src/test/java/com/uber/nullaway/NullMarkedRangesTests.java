@@ -0,0 +1,182 @@
+package com.uber.nullaway;
+
+import org.junit.Test;
+
+/**
+ * Tests for top-level classes with mixed null-markedness, for which NullAway decides whether a tree
+ * is within annotated code from the source ranges of the class (see {@link NullMarkedRanges}).
+ */
+public class NullMarkedRangesTests extends NullAwayTestsBase {
+
+  @Test
+  public void nestedMarkingInUnannotatedTopLevelClass() {
+    defaultCompilationHelper
+        .addSourceLines(
+            "Partial.java",
+            "package com.example;",
+            "import org.jspecify.annotations.NullMarked;",
+            "import org.jspecify.annotations.NullUnmarked;",
+            "import org.jspecify.annotations.Nullable;",
+            "public class Partial {",
+            "  Object unmarkedField;",
+            "  static void unmarked() {",
+            "    Object x = null;",
+            "    x.toString();",
+            "  }",
+            "  @NullMarked",
+            "  static class Marked {",
+            "    // synthetic default constructor, within the marked class",
+            "    // BUG: Diagnostic contains: @NonNull field f not initialized",
+            "    Object f;",
+            "    void deref(@Nullable Object o) {",
+            "      // BUG: Diagnostic contains: dereferenced expression o is @Nullable",
+            "      o.toString();",
+            "      Runnable r =",
+            "          new Runnable() {",
+            "            @Override",
+            "            public void run() {",
+            "              Object x = null;",
+            "              // BUG: Diagnostic contains: dereferenced expression x is @Nullable",
+            "              x.toString();",
+            "            }",
+            "          };",
+            "    }",
+            "    @NullUnmarked",
+            "    void unmarkedMethod() {",
+            "      Object x = null;",
+            "      x.toString();",
+            "      Runnable r =",
+            "          new Runnable() {",
+            "            @Override",
+            "            public void run() {",
+            "              Object y = null;",
+            "              y.toString();",
+            "            }",
+            "          };",
+            "    }",
+            "    @NullUnmarked",
+            "    static class Unmarked {",
+            "      // synthetic default constructor, within the unmarked class",
+            "      Object g;",
+            "      void m() {",
+            "        Object x = null;",
+            "        x.toString();",
+            "      }",
+            "      @NullMarked",
+            "      void marked() {",
+            "        Object x = null;",
+            "        // BUG: Diagnostic contains: dereferenced expression x is @Nullable",
+            "        x.toString();",
+            "      }",
+            "    }",
+            "    void afterUnmarked() {",
+            "      Object x = null;",
+            "      // BUG: Diagnostic contains: dereferenced expression x is @Nullable",
+            "      x.toString();",
+            "    }",
+            "  }",
+            "  static class AfterMarked {",
+            "    Object h;",
+            "    void m() {",
+            "      Object x = null;",
+            "      x.toString();",
+            "    }",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  public void nestedMarkingInAnnotatedTopLevelClass() {
+    defaultCompilationHelper
+        .addSourceLines(
+            "Partial.java",
+            "package com.uber;",
+            "import org.jspecify.annotations.NullMarked;",
+            "import org.jspecify.annotations.NullUnmarked;",
+            "public class Partial {",
+            "  static void marked() {",
+            "    Object x = null;",
+            "    // BUG: Diagnostic contains: dereferenced expression x is @Nullable",
+            "    x.toString();",
+            "  }",
+            "  @NullUnmarked",
+            "  static class Unmarked {",
+            "    Object g;",
+            "    void m() {",
+            "      Object x = null;",
+            "      x.toString();",
+            "      Runnable r =",
+            "          new Runnable() {",
+            "            @Override",
+            "            public void run() {",
+            "              Object y = null;",
+            "              y.toString();",
+            "            }",
+            "          };",
+            "    }",
+            "    @NullMarked",
+            "    static class Marked {",
+            "      // BUG: Diagnostic contains: @NonNull field f not initialized",
+            "      Object f;",
+            "    }",
+            "  }",
+            "  @NullUnmarked",
+            "  void unmarkedMethod() {",
+            "    Object x = null;",
+            "    x.toString();",
+            "  }",
+            "  static class AfterUnmarked {",
+            "    // BUG: Diagnostic contains: @NonNull field h not initialized",
+            "    Object h;",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  public void rangesAreNotReusedAcrossCompilationUnits() {
+    // the ranges of the first file must not be used for the package and imports of the second
+    defaultCompilationHelper
+        .addSourceLines(
+            "First.java",
+            "package com.example;",
+            "import org.jspecify.annotations.NullMarked;",
+            "public class First {",
+            "  void unmarked() {",
+            "    Object x = null;",
+            "    x.toString();",
+            "  }",
+            "  @NullMarked",
+            "  static class Marked {",
+            "    void m() {",
+            "      Object x = null;",
+            "      // BUG: Diagnostic contains: dereferenced expression x is @Nullable",
+            "      x.toString();",
+            "    }",
+            "  }",
+            "}")
+        .addSourceLines(
+            "Second.java",
+            "package com.example;",
+            "import static java.util.Collections.emptyList;",
+            "import java.util.List;",
+            "import org.jspecify.annotations.NullMarked;",
+            "public class Second {",
+            "  List<Object> unmarked() {",
+            "    Object x = null;",
+            "    x.toString();",
+            "    return emptyList();",
+            "  }",
+            "  @NullMarked",
+            "  static class Marked {",
+            "    void m() {",
+            "      Object x = null;",
+            "      // BUG: Diagnostic contains: dereferenced expression x is @Nullable",
+            "      x.toString();",
+            "    }",
+            "  }",
+            "}")
+        .doTest();
+  }
+}
@@ -0,0 +1,74 @@
+package com.uber.nullaway;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+/** Checks that {@link PackagePrefixMatcher} agrees with the regular expression it replaced. */
+public class PackagePrefixMatcherTest {
+
+  private static final ImmutableList<String> NAMES =
+      ImmutableList.of(
+          "",
+          ".",
+          ".x",
+          "com",
+          "com.",
+          "com.uber",
+          "com.uber.",
+          "com.uber..x",
+          "com.uber.Foo",
+          "com.uber.Foo$Bar",
+          "com.uberx.Foo",
+          "com.ube",
+          "com.uber.lib.unannotated",
+          "com.uber.lib.unannotated.Foo",
+          "com.uber.lib.unannotatedx",
+          "com.uber.nullaway.testdata.unannotated.Foo",
+          "com.uber.nullaway.a.b.unannotated",
+          "com.uber.nullaway.unannotated",
+          "io.reactivex.Observable",
+          "org.example.Foo");
+
+  private static Pattern oldPattern(ImmutableList<String> prefixes) {
+    String choiceRegexp =
+        Joiner.on("|")
+            .join(Iterables.transform(prefixes, input -> input.replaceAll("\\.", "\\\\.")));
+    return Pattern.compile("^(?:" + choiceRegexp + ")(?:\\..*)?");
+  }
+
+  private static void checkAgainstRegex(String... prefixes) {
+    ImmutableList<String> prefixList = ImmutableList.copyOf(prefixes);
+    Pattern pattern = oldPattern(prefixList);
+    PackagePrefixMatcher matcher = PackagePrefixMatcher.create(prefixList);
+    for (String name : NAMES) {
+      assertEquals(
+          prefixList + " / " + name, pattern.matcher(name).matches(), matcher.matches(name));
+    }
+  }
+
+  @Test
+  public void plainPrefixes() {
+    checkAgainstRegex("com.uber");
+    checkAgainstRegex("com.uber", "com.ubercab", "io.reactivex");
+    checkAgainstRegex("com", "com.uber.lib.unannotated");
+    checkAgainstRegex("com.uber.");
+    checkAgainstRegex("com.uber.Foo");
+  }
+
+  @Test
+  public void regexPrefixes() {
+    checkAgainstRegex("com.uber.nullaway.[a-zA-Z0-9.]+.unannotated");
+    checkAgainstRegex("com.uber.lib.unannotated", "com.uber.nullaway.[a-zA-Z0-9.]+.unannotated");
+    checkAgainstRegex("com.uber.Foo$Bar");
+  }
+
+  @Test
+  public void noPrefixes() {
+    checkAgainstRegex();
+  }
+}
@@ -0,0 +1,87 @@
+package com.uber.nullaway;
+
+import com.google.errorprone.CompilationTestHelper;
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * Checks that {@code SkipUnmarkedCompilationUnits} only skips compilation units with no annotated
+ * code.
+ */
+public class SkipUnmarkedCompilationUnitsTests extends NullAwayTestsBase {
+
+  private CompilationTestHelper makeHelper() {
+    return makeTestHelperWithArgs(
+        Arrays.asList(
+            "-d",
+            temporaryFolder.getRoot().getAbsolutePath(),
+            "-XepOpt:NullAway:AnnotatedPackages=com.uber",
+            "-XepOpt:NullAway:SkipUnmarkedCompilationUnits=true"));
+  }
+
+  @Test
+  public void unmarkedAndMarkedUnits() {
+    makeHelper()
+        .addSourceLines(
+            "Unmarked.java",
+            "package com.other;",
+            "class Unmarked {",
+            "  void m() {",
+            "    Object o = null;",
+            "    o.toString();",
+            "  }",
+            "}")
+        .addSourceLines(
+            "Marked.java",
+            "package com.uber;",
+            "class Marked {",
+            "  void m() {",
+            "    Object o = null;",
+            "    // BUG: Diagnostic contains: dereferenced expression o is @Nullable",
+            "    o.toString();",
+            "  }",
+            "}")
+        .addSourceLines(
+            "Unmarked2.java",
+            "package com.other;",
+            "class Unmarked2 {",
+            "  void m() {",
+            "    Object o = null;",
+            "    o.toString();",
+            "  }",
+            "}")
+        .doTest();
+  }
+
+  @Test
+  public void nullMarkedScopesWithinUnmarkedUnit() {
+    makeHelper()
+        .addSourceLines(
+            "Test.java",
+            "package com.other;",
+            "import org.jspecify.annotations.NullMarked;",
+            "class Test {",
+            "  void unmarked() {",
+            "    Object o = null;",
+            "    o.toString();",
+            "  }",
+            "  @NullMarked",
+            "  void marked() {",
+            "    Object o = null;",
+            "    // BUG: Diagnostic contains: dereferenced expression o is @Nullable",
+            "    o.toString();",
+            "  }",
+            "  void local() {",
+            "    @NullMarked",
+            "    class Local {",
+            "      void m() {",
+            "        Object o = null;",
+            "        // BUG: Diagnostic contains: dereferenced expression o is @Nullable",
+            "        o.toString();",
+            "      }",
+            "    }",
+            "  }",
+            "}")
+        .doTest();
+  }
+}
@@ -0,0 +1,129 @@
+package com.uber.nullaway.dataflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.jspecify.annotations.Nullable;
+import org.junit.Test;
+
+public class PersistentHashMapTest {
+
+  /** A key with a controllable hash code, to exercise deep tries and full hash collisions. */
+  private static final class Key {
+    private final int id;
+    private final int hash;
+
+    Key(int id, int hash) {
+      this.id = id;
+      this.hash = hash;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      return o instanceof Key && ((Key) o).id == id;
+    }
+
+    @Override
+    public String toString() {
+      return "k" + id;
+    }
+  }
+
+  private static Map<Key, Integer> toMap(PersistentHashMap<Key, Integer> map) {
+    Map<Key, Integer> result = new HashMap<>();
+    for (Map.Entry<Key, Integer> entry : map) {
+      result.put(entry.getKey(), entry.getValue());
+    }
+    assertEquals(map.size(), result.size());
+    return result;
+  }
+
+  @Test
+  public void putIsPersistent() {
+    Key k1 = new Key(1, 1);
+    Key k2 = new Key(2, 2);
+    PersistentHashMap<Key, Integer> empty = PersistentHashMap.empty();
+    PersistentHashMap<Key, Integer> m1 = empty.put(k1, 1);
+    PersistentHashMap<Key, Integer> m2 = m1.put(k2, 2);
+    assertEquals(0, empty.size());
+    assertEquals(1, m1.size());
+    assertNull(m1.get(k2));
+    assertEquals(Integer.valueOf(2), m2.get(k2));
+    // re-putting an equal value is a no-op
+    assertSame(m2, m2.put(k1, 1));
+  }
+
+  @Test
+  public void intersectReusesUnchangedMaps() {
+    PersistentHashMap<Key, Integer> base = PersistentHashMap.empty();
+    for (int i = 0; i < 100; i++) {
+      base = base.put(new Key(i, i * 7), 0);
+    }
+    PersistentHashMap<Key, Integer> larger = base.put(new Key(1000, 3), 0);
+    assertSame(base, base.intersect(base, Math::max));
+    assertSame(base, base.intersect(larger, Math::max));
+    assertSame(base, larger.intersect(base, Math::max));
+  }
+
+  @Test
+  public void randomizedAgainstHashMap() {
+    Random random = new Random(42);
+    for (int iter = 0; iter < 500; iter++) {
+      int keySpace = 1 + random.nextInt(200);
+      // a small hash space forces collision nodes, a large one forces deep tries
+      int hashSpace = random.nextBoolean() ? Integer.MAX_VALUE : 1 + random.nextInt(16);
+      List<Key> keys = new ArrayList<>();
+      for (int i = 0; i < keySpace; i++) {
+        keys.add(new Key(i, hashSpace == Integer.MAX_VALUE ? random.nextInt() : i % hashSpace));
+      }
+      PersistentHashMap<Key, Integer> m1 = PersistentHashMap.empty();
+      PersistentHashMap<Key, Integer> m2 = PersistentHashMap.empty();
+      Map<Key, Integer> r1 = new HashMap<>();
+      Map<Key, Integer> r2 = new HashMap<>();
+      for (int i = 0; i < 150; i++) {
+        Key k = keys.get(random.nextInt(keySpace));
+        int v = random.nextInt(3);
+        m1 = m1.put(k, v);
+        r1.put(k, v);
+        if (random.nextInt(4) != 0) {
+          m2 = m2.put(k, random.nextBoolean() ? v : random.nextInt(3));
+          r2.put(k, m2.get(k));
+        }
+      }
+      assertEquals(r1, toMap(m1));
+      assertEquals(r2, toMap(m2));
+      PersistentHashMap<Key, Integer> joined = m1.intersect(m2, Math::max);
+      Map<Key, Integer> expected = new HashMap<>();
+      for (Map.Entry<Key, Integer> entry : r1.entrySet()) {
+        Integer other = r2.get(entry.getKey());
+        if (other != null) {
+          expected.put(entry.getKey(), Math.max(entry.getValue(), other));
+        }
+      }
+      assertEquals(expected, toMap(joined));
+      // the trie shape is canonical, so a map built from scratch in any order is equal
+      List<Key> order = new ArrayList<>(expected.keySet());
+      Collections.shuffle(order, random);
+      PersistentHashMap<Key, Integer> rebuilt = PersistentHashMap.empty();
+      for (Key k : order) {
+        rebuilt = rebuilt.put(k, expected.get(k));
+      }
+      assertEquals(rebuilt, joined);
+      assertEquals(joined, rebuilt);
+      assertEquals(expected.hashCode(), joined.hashCode());
+      assertEquals(r1.equals(r2), m1.equals(m2));
+    }
+  }
+}
@@ -0,0 +1,191 @@
+package com.uber.nullaway.handlers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.errorprone.VisitorState;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Name;
+import com.sun.tools.javac.util.Names;
+import com.uber.nullaway.dataflow.AccessPath;
+import com.uber.nullaway.dataflow.AccessPathNullnessPropagation;
+import java.util.ArrayList;
+import java.util.List;
+import org.checkerframework.nullaway.dataflow.cfg.node.MethodInvocationNode;
+import org.jspecify.annotations.Nullable;
+import org.junit.Test;
+
+/** Checks that {@link CompositeHandler} dispatches each hook to the handlers overriding it. */
+public class CompositeHandlerTest {
+
+  @Test
+  public void dispatchesOnlyToOverridingHandlersInOrder() {
+    List<String> calls = new ArrayList<>();
+    Handler first =
+        new BaseNoOpHandler() {
+          @Override
+          public ImmutableSet<String> onRegisterImmutableTypes() {
+            calls.add("first");
+            return ImmutableSet.of("a.A");
+          }
+        };
+    Handler noOp = new BaseNoOpHandler() {};
+    Handler second =
+        new BaseNoOpHandler() {
+          @Override
+          public ImmutableSet<String> onRegisterImmutableTypes() {
+            calls.add("second");
+            return ImmutableSet.of("b.B");
+          }
+
+          @Override
+          public boolean onOverrideNullMarkedClasses(String className) {
+            return className.equals("b.B");
+          }
+        };
+    CompositeHandler composite = new CompositeHandler(ImmutableList.of(first, noOp, second));
+    assertEquals(ImmutableSet.of("a.A", "b.B"), composite.onRegisterImmutableTypes());
+    assertEquals(ImmutableList.of("first", "second"), calls);
+    assertTrue(composite.onOverrideNullMarkedClasses("b.B"));
+    assertFalse(composite.onOverrideNullMarkedClasses("a.A"));
+    assertFalse(composite.onOverrideTypeParameterUpperBound("a.A", 0));
+  }
+
+  @Test
+  public void registeredDataflowMethodInvocationNames() {
+    Handler isNotNull =
+        new BaseNoOpHandler() {
+          @Override
+          public ImmutableSet<String> onRegisterDataflowMethodInvocationNames() {
+            return ImmutableSet.of("isNotNull");
+          }
+        };
+    Handler isPresent =
+        new BaseNoOpHandler() {
+          @Override
+          public ImmutableSet<String> onRegisterDataflowMethodInvocationNames() {
+            return ImmutableSet.of("isPresent", "isNotNull");
+          }
+        };
+    assertEquals(
+        ImmutableSet.of("isNotNull", "isPresent"),
+        new CompositeHandler(ImmutableList.of(isNotNull, isPresent))
+            .onRegisterDataflowMethodInvocationNames());
+    // a handler acting on invocations of any method does not register names
+    Handler anyName =
+        new BaseNoOpHandler() {
+          @Override
+          public NullnessHint onDataflowVisitMethodInvocation(
+              MethodInvocationNode node,
+              Symbol.MethodSymbol symbol,
+              VisitorState state,
+              AccessPath.AccessPathContext apContext,
+              AccessPathNullnessPropagation.SubNodeValues inputs,
+              AccessPathNullnessPropagation.Updates thenUpdates,
+              AccessPathNullnessPropagation.Updates elseUpdates,
+              AccessPathNullnessPropagation.Updates bothUpdates) {
+            return NullnessHint.UNKNOWN;
+          }
+        };
+    assertNull(
+        new CompositeHandler(ImmutableList.of(isNotNull, anyName))
+            .onRegisterDataflowMethodInvocationNames());
+  }
+
+  /**
+   * Returns a handler of {@link Handler#onDataflowVisitMethodInvocation} which records its label in
+   * {@code calls}.
+   *
+   * @param label recorded for each call
+   * @param names the method names the handler registers, or {@code null} for any name
+   * @param calls the labels of the handlers called so far
+   */
+  private static Handler dataflowHandler(
+      String label, @Nullable ImmutableSet<String> names, List<String> calls) {
+    return new BaseNoOpHandler() {
+      @Override
+      public @Nullable ImmutableSet<String> onRegisterDataflowMethodInvocationNames() {
+        return names;
+      }
+
+      @Override
+      public NullnessHint onDataflowVisitMethodInvocation(
+          MethodInvocationNode node,
+          Symbol.MethodSymbol symbol,
+          VisitorState state,
+          AccessPath.AccessPathContext apContext,
+          AccessPathNullnessPropagation.SubNodeValues inputs,
+          AccessPathNullnessPropagation.Updates thenUpdates,
+          AccessPathNullnessPropagation.Updates elseUpdates,
+          AccessPathNullnessPropagation.Updates bothUpdates) {
+        calls.add(label);
+        return NullnessHint.UNKNOWN;
+      }
+    };
+  }
+
+  /**
+   * Dispatches an invocation of a method named {@code name}, with no other context, as the handlers
+   * under test only look at the method name.
+   */
+  private static void visitInvocation(CompositeHandler composite, Name name) {
+    Symbol.ClassSymbol owner = new Symbol.ClassSymbol(0, name.table.fromString("Test"), null);
+    composite.onDataflowVisitMethodInvocation(
+        null, new Symbol.MethodSymbol(0, name, null, owner), null, null, null, null, null, null);
+  }
+
+  @Test
+  public void dispatchesDataflowMethodInvocationsByName() {
+    List<String> calls = new ArrayList<>();
+    CompositeHandler composite =
+        new CompositeHandler(
+            ImmutableList.of(
+                dataflowHandler("anyFirst", null, calls),
+                dataflowHandler("isNotNull", ImmutableSet.of("isNotNull"), calls),
+                dataflowHandler("isPresent", ImmutableSet.of("isPresent", "isNotNull"), calls),
+                dataflowHandler("anyLast", null, calls)));
+    Names names = Names.instance(new Context());
+    visitInvocation(composite, names.fromString("isNotNull"));
+    assertEquals(ImmutableList.of("anyFirst", "isNotNull", "isPresent", "anyLast"), calls);
+    calls.clear();
+    visitInvocation(composite, names.fromString("isPresent"));
+    assertEquals(ImmutableList.of("anyFirst", "isPresent", "anyLast"), calls);
+    calls.clear();
+    // handlers that registered names are skipped for other names
+    visitInvocation(composite, names.fromString("get"));
+    assertEquals(ImmutableList.of("anyFirst", "anyLast"), calls);
+  }
+
+  @Test
+  public void rebuildsNameMapForNewNameTable() {
+    List<String> calls = new ArrayList<>();
+    CompositeHandler composite =
+        new CompositeHandler(
+            ImmutableList.of(dataflowHandler("isNotNull", ImmutableSet.of("isNotNull"), calls)));
+    Name first = Names.instance(new Context()).fromString("isNotNull");
+    visitInvocation(composite, first);
+    assertEquals(ImmutableList.of("isNotNull"), calls);
+    calls.clear();
+    // a later compilation has its own name table, whose names are distinct from the first one's
+    Name second = Names.instance(new Context()).fromString("isNotNull");
+    assertNotEquals(first, second);
+    visitInvocation(composite, second);
+    assertEquals(ImmutableList.of("isNotNull"), calls);
+    calls.clear();
+    visitInvocation(composite, first);
+    assertEquals(ImmutableList.of("isNotNull"), calls);
+  }
+
+  @Test
+  public void noHandlers() {
+    CompositeHandler composite = new CompositeHandler(ImmutableList.of());
+    assertEquals(ImmutableSet.of(), composite.onRegisterImmutableTypes());
+    assertFalse(composite.onOverrideNullMarkedClasses("a.A"));
+  }
+}
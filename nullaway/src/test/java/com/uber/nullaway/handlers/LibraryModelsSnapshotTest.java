@@ -0,0 +1,369 @@
+package com.uber.nullaway.handlers;
+
+import static com.uber.nullaway.LibraryModels.FieldRef.fieldRef;
+import static com.uber.nullaway.LibraryModels.MethodRef.methodRef;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.errorprone.ErrorProneFlags;
+import com.uber.nullaway.Config;
+import com.uber.nullaway.LibraryModels;
+import com.uber.nullaway.NullAway;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that a {@link LibraryModelsSnapshot} holds the merged tables of the models it covers, that
+ * only up-to-date snapshots are loaded, and that {@link LibraryModelsHandler} uses them in place of
+ * those models.
+ */
+public class LibraryModelsSnapshotTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void roundTrip() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    LibraryModelsSnapshot.write(ImmutableList.of(new FirstModels(), new SecondModels()), out);
+    LibraryModelsSnapshot snapshot =
+        LibraryModelsSnapshot.read(new ByteArrayInputStream(out.toByteArray()), "test");
+    assertTrue(snapshot.covers(FirstModels.class.getName()));
+    assertTrue(snapshot.covers(SecondModels.class.getName()));
+    assertFalse(snapshot.covers(LibraryModelsSnapshotTest.class.getName()));
+    LibraryModels models = snapshot.getModels();
+    assertEquals(
+        ImmutableSetMultimap.of(
+            methodRef("a.A", "check(java.lang.Object,java.lang.Object)"), 0,
+            methodRef("a.A", "check(java.lang.Object,java.lang.Object)"), 1,
+            methodRef("b.B", "<T>check(T)"), 0),
+        models.failIfNullParameters());
+    assertEquals(
+        ImmutableSetMultimap.of(methodRef("a.A", "A(java.lang.String)"), 0),
+        models.explicitlyNullableParameters());
+    assertEquals(ImmutableSetMultimap.of(), models.nonNullParameters());
+    assertEquals(
+        ImmutableSetMultimap.of(methodRef("b.B", "isEmpty(java.lang.String)"), 0),
+        models.nullImpliesTrueParameters());
+    assertEquals(
+        ImmutableSet.of(methodRef("a.A", "get()"), methodRef("b.B", "find(int)")),
+        models.nullableReturns());
+    assertEquals(ImmutableSet.of(methodRef("a.A", "name()")), models.nonNullReturns());
+    assertEquals(
+        ImmutableSetMultimap.of("a.A", 0, "a.A", 1, "b.B", 0),
+        models.typeVariablesWithNullableUpperBounds());
+    assertEquals(ImmutableSet.of("a.Marked", "b.Marked"), models.nullMarkedClasses());
+    assertEquals(ImmutableSet.of(fieldRef("b.B", "field")), models.nullableFields());
+    assertEquals(
+        ImmutableSetMultimap.of(methodRef("b.B", "<T>castToNonNull(T)"), 0),
+        models.castToNonNullMethods());
+  }
+
+  @Test
+  public void handlerSkipsModelsCoveredBySnapshot() throws IOException {
+    Config config =
+        new NullAway(
+                ErrorProneFlags.builder().putFlag("NullAway:AnnotatedPackages", "com.uber").build())
+            .getConfig();
+    String services = CoveredModels.class.getName() + "\n" + UncoveredModels.class.getName();
+    File withoutSnapshot = folder.newFolder("without-snapshot");
+    writeResource(withoutSnapshot, "META-INF/services/" + LibraryModels.class.getName(), services);
+    File withSnapshot = folder.newFolder("with-snapshot");
+    writeResource(withSnapshot, "META-INF/services/" + LibraryModels.class.getName(), services);
+    writeSnapshot(withSnapshot, ImmutableList.of(new CoveredModels()));
+    CoveredModels.instances.set(0);
+    UncoveredModels.instances.set(0);
+
+    LibraryModels fromSnapshot;
+    try (URLClassLoader loader = classLoaderFor(withSnapshot)) {
+      fromSnapshot = LibraryModelsHandler.loadLibraryModels(config, loader);
+    }
+    assertEquals(0, CoveredModels.instances.get());
+    assertEquals(1, UncoveredModels.instances.get());
+    LibraryModels fromServices;
+    try (URLClassLoader loader = classLoaderFor(withoutSnapshot)) {
+      fromServices = LibraryModelsHandler.loadLibraryModels(config, loader);
+    }
+    assertEquals(1, CoveredModels.instances.get());
+
+    // the models of both implementations, and of the uncovered TestLibraryModels from the test
+    // class path, are seen the same way, so NullAway reports the same diagnostics
+    assertTrue(fromSnapshot.nullableReturns().contains(methodRef("c.Covered", "get()")));
+    assertTrue(fromSnapshot.nullableReturns().contains(methodRef("u.Uncovered", "get()")));
+    assertEquals(fromServices.failIfNullParameters(), fromSnapshot.failIfNullParameters());
+    assertEquals(
+        fromServices.explicitlyNullableParameters(), fromSnapshot.explicitlyNullableParameters());
+    assertEquals(fromServices.nonNullParameters(), fromSnapshot.nonNullParameters());
+    assertEquals(
+        fromServices.nullImpliesTrueParameters(), fromSnapshot.nullImpliesTrueParameters());
+    assertEquals(
+        fromServices.nullImpliesFalseParameters(), fromSnapshot.nullImpliesFalseParameters());
+    assertEquals(
+        fromServices.nullImpliesNullParameters(), fromSnapshot.nullImpliesNullParameters());
+    assertEquals(fromServices.nullableReturns(), fromSnapshot.nullableReturns());
+    assertEquals(fromServices.nonNullReturns(), fromSnapshot.nonNullReturns());
+    assertEquals(
+        fromServices.typeVariablesWithNullableUpperBounds(),
+        fromSnapshot.typeVariablesWithNullableUpperBounds());
+    assertEquals(fromServices.nullMarkedClasses(), fromSnapshot.nullMarkedClasses());
+    assertEquals(fromServices.castToNonNullMethods(), fromSnapshot.castToNonNullMethods());
+    assertEquals(fromServices.nullableFields(), fromSnapshot.nullableFields());
+    assertEquals(
+        fromServices.customStreamNullabilitySpecs().size(),
+        fromSnapshot.customStreamNullabilitySpecs().size());
+  }
+
+  @Test
+  public void ignoresStaleSnapshots() throws IOException {
+    File root = folder.newFolder("stale");
+    writeSnapshot(root, ImmutableList.of(new CoveredModels()));
+    // without a parent, the class loader only sees the class files copied next to the snapshot
+    URL[] urls = {root.toURI().toURL()};
+    try (URLClassLoader loader = new URLClassLoader(urls, null)) {
+      // the covered class file is missing
+      assertNull(LibraryModelsSnapshot.load(loader));
+    }
+    String classFile = CoveredModels.class.getName().replace('.', '/') + ".class";
+    byte[] classBytes;
+    try (InputStream in = CoveredModels.class.getResourceAsStream("/" + classFile)) {
+      classBytes = in.readAllBytes();
+    }
+    writeResource(root, classFile, classBytes);
+    try (URLClassLoader loader = new URLClassLoader(urls, null)) {
+      LibraryModelsSnapshot snapshot = LibraryModelsSnapshot.load(loader);
+      assertNotNull(snapshot);
+      assertTrue(snapshot.covers(CoveredModels.class.getName()));
+    }
+    // the covered class changed after the snapshot was built
+    classBytes[classBytes.length - 1] ^= 1;
+    writeResource(root, classFile, classBytes);
+    try (URLClassLoader loader = new URLClassLoader(urls, null)) {
+      assertNull(LibraryModelsSnapshot.load(loader));
+    }
+  }
+
+  @Test
+  public void mergesAllSnapshots() throws IOException {
+    File first = folder.newFolder("first");
+    writeSnapshot(first, ImmutableList.of(new CoveredModels()));
+    File second = folder.newFolder("second");
+    writeSnapshot(second, ImmutableList.of(new UncoveredModels()));
+    LibraryModelsSnapshot snapshot;
+    try (URLClassLoader loader =
+        new URLClassLoader(
+            new URL[] {first.toURI().toURL(), second.toURI().toURL()},
+            LibraryModelsSnapshotTest.class.getClassLoader())) {
+      snapshot = LibraryModelsSnapshot.load(loader);
+    }
+    assertNotNull(snapshot);
+    assertEquals(
+        ImmutableSet.of(CoveredModels.class.getName(), UncoveredModels.class.getName()),
+        snapshot.getCoveredModelClasses());
+    LibraryModels models = snapshot.getModels();
+    assertEquals(
+        ImmutableSet.of(methodRef("c.Covered", "get()"), methodRef("u.Uncovered", "get()")),
+        models.nullableReturns());
+    assertEquals(
+        ImmutableSetMultimap.of(
+            methodRef("a.A", "check(java.lang.Object,java.lang.Object)"), 0,
+            methodRef("a.A", "check(java.lang.Object,java.lang.Object)"), 1,
+            methodRef("b.B", "<T>check(T)"), 0),
+        models.failIfNullParameters());
+    assertEquals(ImmutableSet.of("a.Marked", "b.Marked"), models.nullMarkedClasses());
+  }
+
+  private static void writeSnapshot(File root, List<? extends LibraryModels> models) throws IOException {
+    Path snapshotFile = root.toPath().resolve(LibraryModelsSnapshot.RESOURCE_NAME);
+    Files.createDirectories(snapshotFile.getParent());
+    try (OutputStream out = Files.newOutputStream(snapshotFile)) {
+      LibraryModelsSnapshot.write(models, out);
+    }
+  }
+
+  private static void writeResource(File root, String name, String contents) throws IOException {
+    writeResource(root, name, contents.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void writeResource(File root, String name, byte[] contents) throws IOException {
+    Path file = root.toPath().resolve(name);
+    Files.createDirectories(file.getParent());
+    Files.write(file, contents);
+  }
+
+  private static URLClassLoader classLoaderFor(File root) throws IOException {
+    return new URLClassLoader(
+        new URL[] {root.toURI().toURL()}, LibraryModelsSnapshotTest.class.getClassLoader());
+  }
+
+  /** Models that are covered by the snapshot, counting how often they are instantiated. */
+  public static class CoveredModels extends FirstModels {
+
+    static final AtomicInteger instances = new AtomicInteger();
+
+    public CoveredModels() {
+      instances.incrementAndGet();
+    }
+
+    @Override
+    public ImmutableSet<MethodRef> nullableReturns() {
+      return ImmutableSet.of(methodRef("c.Covered", "get()"));
+    }
+  }
+
+  /** Models that are not covered by the snapshot, counting how often they are instantiated. */
+  public static class UncoveredModels extends SecondModels {
+
+    static final AtomicInteger instances = new AtomicInteger();
+
+    public UncoveredModels() {
+      instances.incrementAndGet();
+    }
+
+    @Override
+    public ImmutableSet<MethodRef> nullableReturns() {
+      return ImmutableSet.of(methodRef("u.Uncovered", "get()"));
+    }
+  }
+
+  private static class FirstModels implements LibraryModels {
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> failIfNullParameters() {
+      return ImmutableSetMultimap.of(
+          methodRef("a.A", "check(java.lang.Object,java.lang.Object)"), 0,
+          methodRef("a.A", "check(java.lang.Object,java.lang.Object)"), 1);
+    }
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> explicitlyNullableParameters() {
+      return ImmutableSetMultimap.of(methodRef("a.A", "A(java.lang.String)"), 0);
+    }
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> nonNullParameters() {
+      return ImmutableSetMultimap.of();
+    }
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> nullImpliesTrueParameters() {
+      return ImmutableSetMultimap.of();
+    }
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> nullImpliesFalseParameters() {
+      return ImmutableSetMultimap.of();
+    }
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> nullImpliesNullParameters() {
+      return ImmutableSetMultimap.of();
+    }
+
+    @Override
+    public ImmutableSet<MethodRef> nullableReturns() {
+      return ImmutableSet.of(methodRef("a.A", "get()"));
+    }
+
+    @Override
+    public ImmutableSet<MethodRef> nonNullReturns() {
+      return ImmutableSet.of(methodRef("a.A", "name()"));
+    }
+
+    @Override
+    public ImmutableSetMultimap<String, Integer> typeVariablesWithNullableUpperBounds() {
+      return ImmutableSetMultimap.of("a.A", 0, "a.A", 1);
+    }
+
+    @Override
+    public ImmutableSet<String> nullMarkedClasses() {
+      return ImmutableSet.of("a.Marked");
+    }
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> castToNonNullMethods() {
+      return ImmutableSetMultimap.of();
+    }
+  }
+
+  private static class SecondModels implements LibraryModels {
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> failIfNullParameters() {
+      return ImmutableSetMultimap.of(methodRef("b.B", "<T>check(T)"), 0);
+    }
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> explicitlyNullableParameters() {
+      return ImmutableSetMultimap.of();
+    }
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> nonNullParameters() {
+      return ImmutableSetMultimap.of();
+    }
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> nullImpliesTrueParameters() {
+      return ImmutableSetMultimap.of(methodRef("b.B", "isEmpty(java.lang.String)"), 0);
+    }
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> nullImpliesFalseParameters() {
+      return ImmutableSetMultimap.of();
+    }
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> nullImpliesNullParameters() {
+      return ImmutableSetMultimap.of();
+    }
+
+    @Override
+    public ImmutableSet<MethodRef> nullableReturns() {
+      return ImmutableSet.of(methodRef("b.B", "find(int)"), methodRef("a.A", "get()"));
+    }
+
+    @Override
+    public ImmutableSet<MethodRef> nonNullReturns() {
+      return ImmutableSet.of();
+    }
+
+    @Override
+    public ImmutableSetMultimap<String, Integer> typeVariablesWithNullableUpperBounds() {
+      return ImmutableSetMultimap.of("b.B", 0);
+    }
+
+    @Override
+    public ImmutableSet<String> nullMarkedClasses() {
+      return ImmutableSet.of("b.Marked");
+    }
+
+    @Override
+    public ImmutableSetMultimap<MethodRef, Integer> castToNonNullMethods() {
+      return ImmutableSetMultimap.of(methodRef("b.B", "<T>castToNonNull(T)"), 0);
+    }
+
+    @Override
+    public ImmutableSet<FieldRef> nullableFields() {
+      return ImmutableSet.of(fieldRef("b.B", "field"));
+    }
+  }
+}
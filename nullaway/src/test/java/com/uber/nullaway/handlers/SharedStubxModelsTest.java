@@ -0,0 +1,78 @@
+package com.uber.nullaway.handlers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.uber.nullaway.libmodel.StubxWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that models parsed from astubx files are shared by later compilations, as long as the
+ * astubx files are unchanged.
+ */
+public class SharedStubxModelsTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static void writeStubx(File file, String nullMarkedClass) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file.toPath()))) {
+      StubxWriter.write(
+          out,
+          ImmutableMap.of(),
+          Collections.emptyMap(),
+          Collections.emptyMap(),
+          ImmutableMap.of(),
+          ImmutableSet.of(nullMarkedClass),
+          Collections.emptyMap());
+    }
+  }
+
+  private static List<StubxCacheUtil.StubxResource> open(File file) throws IOException {
+    return ImmutableList.of(
+        StubxCacheUtil.StubxResource.open(file.toURI().toURL(), file.getName()));
+  }
+
+  @Test
+  public void reusesModelsUntilStubxFileChanges() throws IOException {
+    File stubx = folder.newFile("models.astubx");
+    writeStubx(stubx, "a.First");
+    LibraryModelsHandler.ExternalStubxLibraryModels first =
+        LibraryModelsHandler.ExternalStubxLibraryModels.load(open(stubx), null, true);
+    assertEquals(ImmutableSet.of("a.First"), first.nullMarkedClasses());
+    long hits = LibraryModelsHandler.ExternalStubxLibraryModels.sharedModelsHits();
+    // a second compilation with the same astubx file reuses the parsed models
+    assertSame(
+        first, LibraryModelsHandler.ExternalStubxLibraryModels.load(open(stubx), null, true));
+    assertEquals(hits + 1, LibraryModelsHandler.ExternalStubxLibraryModels.sharedModelsHits());
+    // a changed file at the same location changes the content hash, forcing a re-parse
+    writeStubx(stubx, "b.Second");
+    LibraryModelsHandler.ExternalStubxLibraryModels second =
+        LibraryModelsHandler.ExternalStubxLibraryModels.load(open(stubx), null, true);
+    assertNotSame(first, second);
+    assertEquals(ImmutableSet.of("b.Second"), second.nullMarkedClasses());
+    assertSame(
+        second, LibraryModelsHandler.ExternalStubxLibraryModels.load(open(stubx), null, true));
+  }
+
+  @Test
+  public void doesNotShareModelsWhenDisabled() throws IOException {
+    File stubx = folder.newFile("models.astubx");
+    writeStubx(stubx, "a.First");
+    LibraryModelsHandler.ExternalStubxLibraryModels first =
+        LibraryModelsHandler.ExternalStubxLibraryModels.load(open(stubx), null, false);
+    assertNotSame(
+        first, LibraryModelsHandler.ExternalStubxLibraryModels.load(open(stubx), null, false));
+  }
+}
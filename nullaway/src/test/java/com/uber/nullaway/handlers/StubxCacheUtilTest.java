@@ -0,0 +1,217 @@
+package com.uber.nullaway.handlers;
+
+import static com.uber.nullaway.LibraryModels.MethodRef.methodRef;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.uber.nullaway.LibraryModels.MethodRef;
+import com.uber.nullaway.libmodel.MethodAnnotationsRecord;
+import com.uber.nullaway.libmodel.StubxWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that astubx files written by {@link StubxWriter} are read back the same way, from version
+ * 1 files, from version 2 files decoded as a whole, and from version 2 files looked up per class,
+ * as the library models do.
+ */
+public class StubxCacheUtilTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final String NULLABLE = "org.jspecify.annotations.Nullable";
+
+  private static final String NONNULL = "org.jspecify.annotations.NonNull";
+
+  private static final String GET_SIG = "p.Outer:java.lang.String get(java.lang.Object)";
+
+  private static final String PUT_SIG =
+      "p.Outer$Inner:void put(java.lang.Object, java.lang.Object)";
+
+  private static final String FIND_SIG = "q.Other:java.lang.Object find()";
+
+  private static final ImmutableMap<String, MethodAnnotationsRecord> METHOD_RECORDS =
+      ImmutableMap.of(
+          GET_SIG,
+          MethodAnnotationsRecord.create(
+              ImmutableSet.of("Nullable"), ImmutableMap.of(0, ImmutableSet.of("Nullable"))),
+          PUT_SIG,
+          MethodAnnotationsRecord.create(
+              ImmutableSet.of(),
+              ImmutableMap.of(0, ImmutableSet.of("NonNull"), 1, ImmutableSet.of("Nullable"))),
+          FIND_SIG,
+          MethodAnnotationsRecord.create(ImmutableSet.of("Nullable"), ImmutableMap.of()));
+
+  private static final ImmutableMap<String, Map<Integer, Set<String>>> OUTER_ANNOTATIONS =
+      ImmutableMap.of(GET_SIG, ImmutableMap.of(-1, Set.of(NULLABLE), 0, Set.of(NULLABLE)));
+
+  private static final ImmutableMap<String, Map<Integer, Set<String>>> INNER_ANNOTATIONS =
+      ImmutableMap.of(PUT_SIG, ImmutableMap.of(0, Set.of(NONNULL), 1, Set.of(NULLABLE)));
+
+  private static final ImmutableMap<String, Map<Integer, Set<String>>> OTHER_ANNOTATIONS =
+      ImmutableMap.of(FIND_SIG, ImmutableMap.of(-1, Set.of(NULLABLE)));
+
+  private static final ImmutableMap<String, Map<String, Map<Integer, Set<String>>>>
+      EXPECTED_ARG_ANNOT_CACHE =
+          ImmutableMap.of(
+              "p.Outer", OUTER_ANNOTATIONS,
+              "p.Outer.Inner", INNER_ANNOTATIONS,
+              "q.Other", OTHER_ANNOTATIONS);
+
+  private static final ImmutableMap<String, Integer> EXPECTED_UPPER_BOUNDS =
+      ImmutableMap.of("p.Outer$Inner", 0, "q.Other", 1);
+
+  private static final ImmutableSet<String> EXPECTED_NULL_MARKED =
+      ImmutableSet.of("p.Outer", "p.Outer$Inner");
+
+  private static byte[] writeStubx(boolean indexed) throws IOException {
+    ImmutableMap<String, String> importedAnnotations =
+        ImmutableMap.of("NonNull", NONNULL, "Nullable", NULLABLE);
+    Map<String, Set<Integer>> nullableUpperBounds = new LinkedHashMap<>();
+    EXPECTED_UPPER_BOUNDS.forEach(
+        (className, index) -> nullableUpperBounds.put(className, Set.of(index)));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      if (indexed) {
+        StubxWriter.writeIndexed(
+            out,
+            importedAnnotations,
+            Collections.emptyMap(),
+            Collections.emptyMap(),
+            METHOD_RECORDS,
+            EXPECTED_NULL_MARKED,
+            nullableUpperBounds);
+      } else {
+        StubxWriter.write(
+            out,
+            importedAnnotations,
+            Collections.emptyMap(),
+            Collections.emptyMap(),
+            METHOD_RECORDS,
+            EXPECTED_NULL_MARKED,
+            nullableUpperBounds);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private StubxCacheUtil.StubxResource openFile(boolean indexed) throws IOException {
+    File file = folder.newFile(indexed ? "v2.astubx" : "v1.astubx");
+    Files.write(file.toPath(), writeStubx(indexed));
+    return StubxCacheUtil.StubxResource.open(file.toURI().toURL(), file.getName());
+  }
+
+  private static void assertCachesMatch(StubxCacheUtil cacheUtil) {
+    assertEquals(EXPECTED_ARG_ANNOT_CACHE, cacheUtil.getArgAnnotCache());
+    assertEquals(EXPECTED_UPPER_BOUNDS, cacheUtil.getUpperBoundCache());
+    assertEquals(EXPECTED_NULL_MARKED, cacheUtil.getNullMarkedClassesCache());
+  }
+
+  @Test
+  public void readVersion1() throws IOException {
+    StubxCacheUtil cacheUtil = new StubxCacheUtil("test", Collections.emptyList());
+    cacheUtil.parseStubStream(new ByteArrayInputStream(writeStubx(false)), "v1.astubx");
+    assertCachesMatch(cacheUtil);
+  }
+
+  @Test
+  public void readVersion2DecodingAll() throws IOException {
+    StubxCacheUtil cacheUtil = new StubxCacheUtil("test", Collections.emptyList());
+    cacheUtil.parseStubStream(new ByteArrayInputStream(writeStubx(true)), "v2.astubx");
+    assertCachesMatch(cacheUtil);
+  }
+
+  @Test
+  public void readVersion2PerClass() throws IOException {
+    byte[] bytes = writeStubx(true);
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    assertEquals(IndexedStubxFile.VERSION_2_FILE_MAGIC_NUMBER, buffer.getInt());
+    IndexedStubxFile file = new IndexedStubxFile(buffer.slice(), "v2.astubx");
+    assertEquals(INNER_ANNOTATIONS, file.getMethodAnnotations("p.Outer.Inner"));
+    assertEquals(OUTER_ANNOTATIONS, file.getMethodAnnotations("p.Outer"));
+    assertEquals(OTHER_ANNOTATIONS, file.getMethodAnnotations("q.Other"));
+    assertNull(file.getMethodAnnotations("p.Outer$Inner"));
+    assertNull(file.getMethodAnnotations("a.Missing"));
+    assertNull(file.getMethodAnnotations("z.Missing"));
+    Map<String, Integer> upperBounds = new LinkedHashMap<>();
+    file.forEachNullableUpperBound(upperBounds::put);
+    assertEquals(EXPECTED_UPPER_BOUNDS, upperBounds);
+  }
+
+  @Test
+  public void openVersion1File() throws IOException {
+    assertCachesMatch(new StubxCacheUtil("test", ImmutableList.of(openFile(false))));
+  }
+
+  @Test
+  public void openVersion2File() throws IOException {
+    assertCachesMatch(new StubxCacheUtil("test", ImmutableList.of(openFile(true))));
+  }
+
+  @Test
+  public void libraryModelsDecodeVersion1FilesUpFront() throws IOException {
+    LibraryModelsHandler.ExternalStubxLibraryModels models =
+        LibraryModelsHandler.ExternalStubxLibraryModels.load(
+            ImmutableList.of(openFile(false)), null, false);
+    assertFalse(models.hasIndexedFiles());
+    assertEquals(
+        ImmutableSet.of(
+            methodRef("p.Outer", "get(java.lang.Object)"), methodRef("q.Other", "find()")),
+        models.nullableReturns());
+    assertSame(
+        LibraryModelsHandler.ExternalStubxLibraryModels.ClassModels.NONE,
+        models.modelsForClass("p.Outer"));
+  }
+
+  @Test
+  public void libraryModelsDecodeVersion2FilesPerClass() throws IOException {
+    LibraryModelsHandler.ExternalStubxLibraryModels models =
+        LibraryModelsHandler.ExternalStubxLibraryModels.load(
+            ImmutableList.of(openFile(true)), null, false);
+    assertTrue(models.hasIndexedFiles());
+    // only the class-level sections are decoded up front
+    assertEquals(EXPECTED_NULL_MARKED, models.nullMarkedClasses());
+    assertEquals(
+        ImmutableSetMultimap.of("p.Outer$Inner", 0, "q.Other", 1),
+        models.typeVariablesWithNullableUpperBounds());
+    assertTrue(models.nullableReturns().isEmpty());
+    assertTrue(models.explicitlyNullableParameters().isEmpty());
+    assertTrue(models.nonNullParameters().isEmpty());
+    // method models are decoded for each class looked up
+    MethodRef get = methodRef("p.Outer", "get(java.lang.Object)");
+    LibraryModelsHandler.ExternalStubxLibraryModels.ClassModels outer =
+        models.modelsForClass("p.Outer");
+    assertEquals(ImmutableSet.of(get), outer.nullableReturns);
+    assertEquals(ImmutableSetMultimap.of(get, 0), outer.explicitlyNullableParameters);
+    assertTrue(outer.nonNullParameters.isEmpty());
+    MethodRef put = methodRef("p.Outer.Inner", "put(java.lang.Object,java.lang.Object)");
+    LibraryModelsHandler.ExternalStubxLibraryModels.ClassModels inner =
+        models.modelsForClass("p.Outer.Inner");
+    assertTrue(inner.nullableReturns.isEmpty());
+    assertEquals(ImmutableSetMultimap.of(put, 1), inner.explicitlyNullableParameters);
+    assertEquals(ImmutableSetMultimap.of(put, 0), inner.nonNullParameters);
+    assertSame(outer, models.modelsForClass("p.Outer"));
+    assertSame(
+        LibraryModelsHandler.ExternalStubxLibraryModels.ClassModels.NONE,
+        models.modelsForClass("a.Missing"));
+  }
+}